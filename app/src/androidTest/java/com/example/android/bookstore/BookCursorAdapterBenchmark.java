@@ -0,0 +1,85 @@
+package com.example.android.bookstore;
+
+import android.content.Context;
+import android.database.MatrixCursor;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+import android.view.ContextThemeWrapper;
+import android.widget.FrameLayout;
+
+import com.example.android.bookstore.data.BookContract.BookEntry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Benchmark of the bind path of {@link BookCursorAdapter}, which will execute on an Android
+ * device. Binds every row of a large synthetic cursor to one list item and prints the binds
+ * per second to the log.
+ */
+@RunWith(AndroidJUnit4.class)
+public class BookCursorAdapterBenchmark {
+
+    // log tag for the results
+    private static final String TAG = BookCursorAdapterBenchmark.class.getSimpleName();
+
+    // number of rows in the synthetic cursor
+    private static final int BOOK_COUNT = 100000;
+
+    // binds run before the timed ones, so the code is warmed up
+    private static final int WARMUP_BINDS = 10000;
+
+    @Test
+    public void bindsPerSecond() {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                Context context = new ContextThemeWrapper(
+                        InstrumentationRegistry.getTargetContext(), R.style.AppTheme);
+
+                // the list projection of MainActivity
+                MatrixCursor cursor = new MatrixCursor(new String[] {
+                        BookEntry._ID,
+                        BookEntry.COLUMN_PRODUCT_NAME,
+                        BookEntry.COLUMN_PRICE,
+                        BookEntry.COLUMN_QUANTITY
+                }, BOOK_COUNT);
+                for (int i = 0; i < BOOK_COUNT; i++) {
+                    cursor.addRow(new Object[] { i + 1, "Book " + i, String.valueOf(i % 100), i % 50 });
+                }
+
+                long start = System.nanoTime();
+                List<Book> books = Book.fromCursor(cursor);
+                long copied = System.nanoTime();
+                Log.i(TAG, "copied " + BOOK_COUNT + " rows in " + (copied - start) / 1000000 + "ms");
+                assertEquals(BOOK_COUNT, books.size());
+
+                // the first list is taken over right away, without a diff
+                BookCursorAdapter adapter = new BookCursorAdapter(context);
+                adapter.submitList(books);
+                assertEquals(BOOK_COUNT, adapter.getItemCount());
+
+                BookCursorAdapter.BookViewHolder holder =
+                        adapter.onCreateViewHolder(new FrameLayout(context), 0);
+                for (int i = 0; i < WARMUP_BINDS; i++) {
+                    adapter.onBindViewHolder(holder, i);
+                }
+
+                long before = System.nanoTime();
+                for (int i = 0; i < BOOK_COUNT; i++) {
+                    adapter.onBindViewHolder(holder, i);
+                }
+                long after = System.nanoTime();
+
+                Log.i(TAG, "binds: " + BOOK_COUNT * 1000000000L / (after - before) + " per second");
+                assertEquals(String.valueOf(BOOK_COUNT - 1), holder.titleTextView.getText().toString()
+                        .substring("Book ".length()));
+            }
+        });
+    }
+}
@@ -0,0 +1,131 @@
+package com.example.android.bookstore;
+
+import android.app.Instrumentation;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.Intent;
+import android.database.Cursor;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.android.bookstore.data.BookContract.BookEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Benchmark of the time from {@link MainActivity#onCreate} to the first frame with books in
+ * the list, with and without the {@link CatalogSnapshot}, which will execute on an Android
+ * device. Prints the median of both to the log. The process and the provider are already
+ * running, so this is the time the activity itself takes to show its first rows.
+ */
+@RunWith(AndroidJUnit4.class)
+public class StartupBenchmark {
+
+    // log tag for the results
+    private static final String TAG = StartupBenchmark.class.getSimpleName();
+
+    // supplier of the books the benchmark adds, so it can remove them again
+    private static final String SUPPLIER = "StartupBenchmark";
+
+    // number of books added when the catalog is empty
+    private static final int BOOK_COUNT = 5000;
+
+    // launches timed per case
+    private static final int LAUNCHES = 5;
+
+    // longest wait for the first rows of one launch
+    private static final long TIMEOUT_MILLIS = 10000;
+
+    private Instrumentation mInstrumentation;
+    private Context mContext;
+
+    @Before
+    public void setUp() {
+        mInstrumentation = InstrumentationRegistry.getInstrumentation();
+        mContext = InstrumentationRegistry.getTargetContext();
+
+        // the list needs books to show
+        Cursor cursor = mContext.getContentResolver().query(BookEntry.buildPageUri(-1, 1),
+                new String[] { BookEntry._ID }, null, null, null);
+        int count = cursor.getCount();
+        cursor.close();
+        if (count == 0) {
+            ContentValues[] books = new ContentValues[BOOK_COUNT];
+            for (int i = 0; i < BOOK_COUNT; i++) {
+                books[i] = new ContentValues();
+                books[i].put(BookEntry.COLUMN_PRODUCT_NAME, "Book " + i);
+                books[i].put(BookEntry.COLUMN_PRICE, "9.99");
+                books[i].put(BookEntry.COLUMN_QUANTITY, i % 50);
+                books[i].put(BookEntry.COLUMN_SUPPLIER_NAME, SUPPLIER);
+                books[i].put(BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER, "555-5555");
+            }
+            mContext.getContentResolver().bulkInsert(BookEntry.CONTENT_URI, books);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        mContext.getContentResolver().delete(BookEntry.CONTENT_URI,
+                BookEntry.COLUMN_SUPPLIER_NAME + " = ?", new String[] { SUPPLIER });
+    }
+
+    @Test
+    public void firstRowsWithAndWithoutSnapshot() {
+        // the first launch writes the snapshot
+        launch();
+
+        long[] withSnapshot = new long[LAUNCHES];
+        long[] withoutSnapshot = new long[LAUNCHES];
+        for (int i = 0; i < LAUNCHES; i++) {
+            // give the snapshot write of the previous launch time to finish
+            SystemClock.sleep(500);
+            withSnapshot[i] = launch();
+
+            new File(mContext.getCacheDir(), CatalogSnapshot.FILE_NAME).delete();
+            withoutSnapshot[i] = launch();
+        }
+
+        Log.i(TAG, "first rows: " + median(withSnapshot) + "ms with the snapshot, "
+                + median(withoutSnapshot) + "ms without");
+    }
+
+    // start MainActivity, wait for its first rows and finish it again. returns how long
+    // the first rows took after onCreate.
+    private long launch() {
+        Intent intent = new Intent(mContext, MainActivity.class);
+        intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
+        final MainActivity activity = (MainActivity) mInstrumentation.startActivitySync(intent);
+        try {
+            long deadline = SystemClock.uptimeMillis() + TIMEOUT_MILLIS;
+            while (activity.getFirstRowsMillis() < 0) {
+                assertTrue("no rows were drawn", SystemClock.uptimeMillis() < deadline);
+                SystemClock.sleep(10);
+            }
+            return activity.getFirstRowsMillis();
+        } finally {
+            mInstrumentation.runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    activity.finish();
+                }
+            });
+            mInstrumentation.waitForIdleSync();
+        }
+    }
+
+    private static long median(long[] values) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+}
@@ -0,0 +1,119 @@
+package com.example.android.bookstore.data;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.io.Reader;
+
+import static org.junit.Assert.*;
+
+/**
+ * Benchmark of {@link BookCsvImporter} on a million-line file, which will execute on an
+ * Android device. The file is made up while it is read, so only the importer takes memory.
+ * Prints the books imported per second and the heap in use after every transaction to the
+ * log: it should stay flat from the first transaction to the last.
+ */
+@RunWith(AndroidJUnit4.class)
+public class BookCsvImportBenchmark {
+
+    // log tag for the results
+    private static final String TAG = BookCsvImportBenchmark.class.getSimpleName();
+
+    // name of the database file used by the benchmark
+    private static final String TEST_DATABASE = "bookstore_csv_benchmark.db";
+
+    // number of books in the file
+    private static final int BOOK_COUNT = 1000000;
+
+    // log the heap every this many transactions
+    private static final int REPORT_INTERVAL = 100;
+
+    private Context mContext;
+    private BookDbHelper mDbHelper;
+    private SQLiteDatabase mDb;
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getTargetContext();
+        mContext.deleteDatabase(TEST_DATABASE);
+        mDbHelper = new BookDbHelper(mContext, TEST_DATABASE);
+        mDb = mDbHelper.getWritableDatabase();
+    }
+
+    @After
+    public void tearDown() {
+        mDbHelper.close();
+        mContext.deleteDatabase(TEST_DATABASE);
+    }
+
+    @Test
+    public void importMillionBooks() throws IOException {
+        final Runtime runtime = Runtime.getRuntime();
+        final long[] heap = { Long.MAX_VALUE, 0 };
+        BookCsvImporter importer = new BookCsvImporter(mDb, BookCsvImporter.DEFAULT_CHUNK_SIZE);
+
+        long before = System.nanoTime();
+        importer.importFrom(new GeneratedCsv(BOOK_COUNT), new BookCsvImporter.ProgressListener() {
+            private int mTransactions;
+
+            @Override
+            public void onProgress(long lineNumber, int imported, int rejected) {
+                long used = runtime.totalMemory() - runtime.freeMemory();
+                heap[0] = Math.min(heap[0], used);
+                heap[1] = Math.max(heap[1], used);
+                if (++mTransactions % REPORT_INTERVAL == 0) {
+                    Log.i(TAG, "line " + lineNumber + ": " + used / 1024 + "KB heap in use");
+                }
+            }
+        });
+        long after = System.nanoTime();
+
+        assertEquals(BOOK_COUNT, importer.getImportedCount());
+        assertEquals(0, importer.getRejectedCount());
+        Log.i(TAG, "imported " + BOOK_COUNT * 1000000000L / (after - before) + " books per second, "
+                + "heap in use between " + heap[0] / 1024 + "KB and " + heap[1] / 1024 + "KB");
+    }
+
+    // a CSV file of made up books, written into the reader's buffer as it is read
+    private static final class GeneratedCsv extends Reader {
+        private final int mBookCount;
+        private final StringBuilder mLine = new StringBuilder();
+        private int mBook = -1;
+        private int mPosition;
+
+        GeneratedCsv(int bookCount) {
+            mBookCount = bookCount;
+            mLine.append("product,price,quantity,supplier,phone\r\n");
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) {
+            if (mPosition == mLine.length()) {
+                if (++mBook == mBookCount) {
+                    return -1;
+                }
+                mLine.setLength(0);
+                mLine.append("Book ").append(mBook).append(',').append(mBook % 100).append(".99,")
+                        .append(mBook % 50).append(",\"Penguin, House\",555-5555\r\n");
+                mPosition = 0;
+            }
+            int count = Math.min(length, mLine.length() - mPosition);
+            mLine.getChars(mPosition, mPosition + count, buffer, offset);
+            mPosition += count;
+            return count;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.example.android.bookstore.data;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented test for {@link BookCsvImporter} and {@link BookCsvExporter}, which will
+ * execute on an Android device.
+ */
+@RunWith(AndroidJUnit4.class)
+public class BookCsvImporterTest {
+
+    // name of the database file used by the test
+    private static final String TEST_DATABASE = "bookstore_csv_test.db";
+
+    private static final String HEADER = "product,price,quantity,supplier,phone\r\n";
+
+    private Context mContext;
+    private BookDbHelper mDbHelper;
+    private SQLiteDatabase mDb;
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getTargetContext();
+        mContext.deleteDatabase(TEST_DATABASE);
+        mDbHelper = new BookDbHelper(mContext, TEST_DATABASE);
+        mDb = mDbHelper.getWritableDatabase();
+    }
+
+    @After
+    public void tearDown() {
+        mDbHelper.close();
+        mContext.deleteDatabase(TEST_DATABASE);
+    }
+
+    @Test
+    public void exportedBooksImportTheSame() throws IOException {
+        String csv = HEADER
+                + "The Giver,9.99,4,\"Penguin, House\",555-5555\r\n"
+                + "\"Say \"\"hi\"\"\",10,0,Penguin,555-5555\r\n";
+        BookCsvImporter importer = new BookCsvImporter(mDb, BookCsvImporter.DEFAULT_CHUNK_SIZE);
+        importer.importFrom(new StringReader(csv), null);
+        assertEquals(2, importer.getImportedCount());
+        assertEquals(0, importer.getRejectedCount());
+
+        StringBuilder out = new StringBuilder();
+        assertEquals(2, BookCsvExporter.export(mDb, out));
+        assertEquals(csv, out.toString());
+    }
+
+    @Test
+    public void exportReadsEveryPage() throws IOException {
+        StringBuilder csv = new StringBuilder(HEADER);
+        int count = BookCsvExporter.PAGE_SIZE * 2 + 1;
+        for (int i = 0; i < count; i++) {
+            csv.append("Book ").append(i).append(",9,1,Penguin,555-5555\r\n");
+        }
+        new BookCsvImporter(mDb, 100).importFrom(new StringReader(csv.toString()), null);
+
+        StringBuilder out = new StringBuilder();
+        assertEquals(count, BookCsvExporter.export(mDb, out));
+        assertEquals(csv.toString(), out.toString());
+    }
+
+    @Test
+    public void badLinesAreRejectedWithTheirNumbers() throws IOException {
+        String csv = "phone,product,price,quantity,supplier,notes\n"
+                + "555-5555,The Giver,9.99,4,Penguin\n"
+                + "555-5555,,9.99,4,Penguin\n"
+                + "\n"
+                + "555-5555,Gathering Blue,10,many,Penguin\n"
+                + "555-5555,Messenger,10,,Penguin,signed\n";
+        BookCsvImporter importer = new BookCsvImporter(mDb, BookCsvImporter.DEFAULT_CHUNK_SIZE);
+        importer.importFrom(new StringReader(csv), null);
+
+        // no title on line 3, no number on line 5. the empty quantity of line 6 is 0
+        assertEquals(2, importer.getImportedCount());
+        assertEquals(2, importer.getRejectedCount());
+        assertArrayEquals(new long[] { 3, 5 }, importer.getRejectedLines());
+        assertEquals(0, mDb.compileStatement(
+                "SELECT quantity FROM books WHERE product = 'Messenger'").simpleQueryForLong());
+    }
+
+    @Test
+    public void progressFollowsEveryTransaction() throws IOException {
+        StringBuilder csv = new StringBuilder(HEADER);
+        for (int i = 0; i < 25; i++) {
+            csv.append("Book ").append(i).append(",9,1,Penguin,555-5555\r\n");
+        }
+        final List<Integer> progress = new ArrayList<>();
+        new BookCsvImporter(mDb, 10).importFrom(new StringReader(csv.toString()),
+                new BookCsvImporter.ProgressListener() {
+                    @Override
+                    public void onProgress(long lineNumber, int imported, int rejected) {
+                        progress.add(imported);
+                    }
+                });
+
+        assertEquals(3, progress.size());
+        assertEquals(10, (int) progress.get(0));
+        assertEquals(20, (int) progress.get(1));
+        assertEquals(25, (int) progress.get(2));
+    }
+}
@@ -0,0 +1,328 @@
+package com.example.android.bookstore.data;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.bookstore.core.BookQueries;
+import com.example.android.bookstore.core.BookSchema;
+import com.example.android.bookstore.data.BookContract.BookEntry;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented test for the {@link BookDbHelper} schema and its upgrades, which will
+ * execute on an Android device.
+ */
+@RunWith(AndroidJUnit4.class)
+public class BookDbHelperTest {
+
+    // name of the database file used by the test
+    private static final String TEST_DATABASE = "bookstore_test.db";
+
+    // the books table as version 1 of the app created it
+    private static final String SQL_CREATE_BOOKS_TABLE_V1 = "CREATE TABLE books ("
+            + "_id INTEGER PRIMARY KEY AUTOINCREMENT, "
+            + "product TEXT NOT NULL, "
+            + "price TEXT NOT NULL, "
+            + "quantity INTERGER NOT NULL DEFAULT 0, "
+            + "supplier TEXT NOT NULL, "
+            + "phone TEXT NOT NULL);";
+
+    // the list query of MainActivity, sorted by title
+    private static final String SQL_LIST_BY_TITLE = "SELECT _id, product, price, quantity"
+            + " FROM books ORDER BY product";
+
+    // the books of one supplier
+    private static final String SQL_BY_SUPPLIER = "SELECT _id FROM books WHERE supplier = 'Penguin'";
+
+    // the books that are running low
+    private static final String SQL_LOW_STOCK = "SELECT _id FROM books WHERE quantity < 5";
+
+    private Context mContext;
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getTargetContext();
+        mContext.deleteDatabase(TEST_DATABASE);
+    }
+
+    @After
+    public void tearDown() {
+        mContext.deleteDatabase(TEST_DATABASE);
+    }
+
+    @Test
+    public void upgradeFromVersion1AddsIndexes() {
+        // create a version 1 database with a few books in it
+        SQLiteDatabase v1 = mContext.openOrCreateDatabase(TEST_DATABASE, Context.MODE_PRIVATE, null);
+        v1.execSQL(SQL_CREATE_BOOKS_TABLE_V1);
+        for (int i = 0; i < 20; i++) {
+            v1.execSQL("INSERT INTO books (product, price, quantity, supplier, phone)"
+                    + " VALUES ('Book " + i + "', '9', " + i + ", 'Penguin', '555-5555')");
+        }
+        v1.execSQL("DELETE FROM books WHERE _id = 20");
+        v1.setVersion(1);
+
+        // before: every access path is a full scan
+        assertTrue(queryPlan(v1, SQL_LIST_BY_TITLE).contains("TEMP B-TREE"));
+        assertFalse(queryPlan(v1, SQL_BY_SUPPLIER).contains("INDEX"));
+        assertFalse(queryPlan(v1, SQL_LOW_STOCK).contains("INDEX"));
+        assertEquals("INTERGER", declaredType(v1, "quantity"));
+        v1.close();
+
+        // upgrade
+        BookDbHelper helper = new BookDbHelper(mContext, TEST_DATABASE);
+        SQLiteDatabase db = helper.getWritableDatabase();
+
+        // after: the list reads only the covering index, in title order
+        String listPlan = queryPlan(db, SQL_LIST_BY_TITLE);
+        assertTrue(listPlan, listPlan.contains("COVERING INDEX " + BookDbHelper.INDEX_BOOKS_LIST));
+        assertFalse(listPlan, listPlan.contains("TEMP B-TREE"));
+
+        String supplierPlan = queryPlan(db, SQL_BY_SUPPLIER);
+        assertTrue(supplierPlan, supplierPlan.contains(BookDbHelper.INDEX_BOOKS_SUPPLIER));
+
+        String lowStockPlan = queryPlan(db, SQL_LOW_STOCK);
+        assertTrue(lowStockPlan, lowStockPlan.contains(BookDbHelper.INDEX_BOOKS_QUANTITY));
+
+        // the rows, their ids and the AUTOINCREMENT counter survived the upgrade, the
+        // search table has all of them, and the rebuilt table declares quantity correctly.
+        // INTERGER already had integer affinity, so only the declared type tells them apart
+        assertEquals(19, count(db, "SELECT COUNT(*) FROM books"));
+        assertEquals(19, count(db, "SELECT COUNT(*) FROM books_fts WHERE books_fts MATCH 'book'"));
+        assertEquals("INTEGER", declaredType(db, "quantity"));
+
+        // and the statistics count them: books 0 to 18, with quantities 0 to 18
+        assertEquals(19, count(db, "SELECT title_count FROM book_stats"));
+        assertEquals(171, count(db, "SELECT total_units FROM book_stats"));
+        assertEquals(5, count(db, "SELECT low_stock_count FROM book_stats"));
+        db.execSQL("INSERT INTO books (product, price, quantity, supplier, phone)"
+                + " VALUES ('New', '9', 1, 'Penguin', '555-5555')");
+        assertEquals(21, count(db, "SELECT MAX(" + BookEntry._ID + ") FROM books"));
+        helper.close();
+    }
+
+    @Test
+    public void newDatabaseHasSameSchemaAsUpgraded() {
+        BookDbHelper helper = new BookDbHelper(mContext, null);
+        SQLiteDatabase db = helper.getWritableDatabase();
+
+        String listPlan = queryPlan(db, SQL_LIST_BY_TITLE);
+        assertTrue(listPlan, listPlan.contains("COVERING INDEX " + BookDbHelper.INDEX_BOOKS_LIST));
+        assertTrue(queryPlan(db, SQL_BY_SUPPLIER).contains(BookDbHelper.INDEX_BOOKS_SUPPLIER));
+        assertTrue(queryPlan(db, SQL_LOW_STOCK).contains(BookDbHelper.INDEX_BOOKS_QUANTITY));
+        helper.close();
+    }
+
+    @Test
+    public void lowStockReadsLowStockIndex() {
+        BookDbHelper helper = new BookDbHelper(mContext, null);
+        SQLiteDatabase db = helper.getWritableDatabase();
+
+        // the low-stock list, sorted like the provider sorts it
+        String lowStock = "SELECT _id, product, price, quantity FROM books WHERE "
+                + BookQueries.lowStockSelection(BookEntry.LOW_STOCK_THRESHOLD).replace("?", "5")
+                + " ORDER BY " + BookQueries.ORDER_BY_LOW_STOCK;
+
+        String plan = queryPlan(db, lowStock);
+        assertTrue(plan, plan.contains("COVERING INDEX " + BookDbHelper.INDEX_BOOKS_LOW_STOCK));
+        assertFalse(plan, plan.contains("TEMP B-TREE"));
+        helper.close();
+    }
+
+    @Test
+    public void sortedPagesReadTheirIndexInOrder() {
+        BookDbHelper helper = new BookDbHelper(mContext, null);
+        SQLiteDatabase db = helper.getWritableDatabase();
+
+        // a later page by title, with a quantity range that is only checked on its rows
+        String plan = queryPlan(db, page(BookQueries.KEYSET_AFTER_TITLE + " AND "
+                + BookQueries.quantityRange(true, true, false), BookQueries.ORDER_BY_TITLE));
+        assertTrue(plan, plan.contains(BookDbHelper.INDEX_BOOKS_TITLE));
+        assertFalse(plan, plan.contains("TEMP B-TREE"));
+
+        // a later page by quantity, with a price range
+        plan = queryPlan(db, page(BookQueries.KEYSET_AFTER_QUANTITY + " AND "
+                + BookQueries.priceRange(true, false, false), BookQueries.ORDER_BY_QUANTITY));
+        assertTrue(plan, plan.contains(BookDbHelper.INDEX_BOOKS_QUANTITY));
+        assertFalse(plan, plan.contains("TEMP B-TREE"));
+
+        // the price index is an expression index, which older versions of SQLite don't have
+        Assume.assumeTrue(BookDbHelper.supportsExpressionIndexes(db));
+        plan = queryPlan(db, page(BookQueries.KEYSET_AFTER_PRICE + " AND "
+                + BookQueries.priceRange(true, true, true), BookQueries.ORDER_BY_PRICE));
+        assertTrue(plan, plan.contains(BookDbHelper.INDEX_BOOKS_PRICE));
+        assertFalse(plan, plan.contains("TEMP B-TREE"));
+        helper.close();
+    }
+
+    @Test
+    public void pricePagesFollowEachOther() {
+        BookDbHelper helper = new BookDbHelper(mContext, null);
+        SQLiteDatabase db = helper.getWritableDatabase();
+        String[] prices = { "10", "9.99", "x", "2", "10", " 7.5 ", "10.0" };
+        for (String price : prices) {
+            db.execSQL("INSERT INTO books (product, price, quantity, supplier, phone)"
+                    + " VALUES ('Book', ?, 1, 'Penguin', '555-5555')", new Object[] { price });
+        }
+
+        // walk the pages by price, two books at a time, starting each page after the
+        // stored price and _id of the last book of the previous one. a price that isn't a
+        // number sorts as 0, and the books with the same price come by _id
+        StringBuilder ids = new StringBuilder();
+        Cursor cursor = db.rawQuery(page(null, BookQueries.ORDER_BY_PRICE) + " LIMIT 2", null);
+        while (cursor.getCount() > 0) {
+            String lastPrice = null;
+            String lastId = null;
+            while (cursor.moveToNext()) {
+                lastId = cursor.getString(0);
+                lastPrice = cursor.getString(2);
+                ids.append(lastId).append(' ');
+            }
+            cursor.close();
+            cursor = db.rawQuery(page(BookQueries.KEYSET_AFTER_PRICE, BookQueries.ORDER_BY_PRICE)
+                    + " LIMIT 2", new String[] { lastPrice, lastPrice, lastId });
+        }
+        cursor.close();
+        assertEquals("3 4 6 2 1 5 7 ", ids.toString());
+
+        // the bounds of a range are numbers, and are included
+        cursor = db.rawQuery(page(BookQueries.priceRange(true, true, true),
+                BookQueries.ORDER_BY_PRICE), new String[] { "7.5", "10.0" });
+        assertEquals(5, cursor.getCount());
+        cursor.close();
+        helper.close();
+    }
+
+    @Test
+    public void searchTableFollowsBooks() {
+        BookDbHelper helper = new BookDbHelper(mContext, null);
+        SQLiteDatabase db = helper.getWritableDatabase();
+
+        db.execSQL("INSERT INTO books (product, price, quantity, supplier, phone)"
+                + " VALUES ('The Giver', '9', 4, 'Penguin House', '555-5555')");
+        assertEquals(1, count(db, "SELECT COUNT(*) FROM books_fts WHERE books_fts MATCH 'giv*'"));
+        assertEquals(1, count(db, "SELECT COUNT(*) FROM books_fts WHERE books_fts MATCH 'supplier:peng*'"));
+
+        db.execSQL("UPDATE books SET product = 'Gathering Blue'");
+        assertEquals(0, count(db, "SELECT COUNT(*) FROM books_fts WHERE books_fts MATCH 'giv*'"));
+        assertEquals(1, count(db, "SELECT COUNT(*) FROM books_fts WHERE books_fts MATCH 'blue'"));
+
+        db.execSQL("DELETE FROM books");
+        assertEquals(0, count(db, "SELECT COUNT(*) FROM books_fts"));
+        helper.close();
+    }
+
+    @Test
+    public void statsFollowBooks() {
+        BookDbHelper helper = new BookDbHelper(mContext, null);
+        SQLiteDatabase db = helper.getWritableDatabase();
+        assertEquals(0, count(db, "SELECT title_count FROM book_stats"));
+
+        db.execSQL("INSERT INTO books (product, price, quantity, supplier, phone)"
+                + " VALUES ('The Giver', '9.99', 4, 'Penguin House', '555-5555')");
+        db.execSQL("INSERT INTO books (product, price, quantity, supplier, phone)"
+                + " VALUES ('Gathering Blue', '10', 20, 'Penguin House', '555-5555')");
+        assertEquals(2, count(db, "SELECT title_count FROM book_stats"));
+        assertEquals(24, count(db, "SELECT total_units FROM book_stats"));
+        assertEquals(4 * 999 + 20 * 1000, count(db, "SELECT total_value_cents FROM book_stats"));
+        assertEquals(1, count(db, "SELECT low_stock_count FROM book_stats"));
+
+        // selling the second book down to 2 makes it low on stock too
+        db.execSQL("UPDATE books SET quantity = 2 WHERE _id = 2");
+        assertEquals(6, count(db, "SELECT total_units FROM book_stats"));
+        assertEquals(2, count(db, "SELECT low_stock_count FROM book_stats"));
+
+        // a new price changes the value, not the units
+        db.execSQL("UPDATE books SET price = '5' WHERE _id = 1");
+        assertEquals(4 * 500 + 2 * 1000, count(db, "SELECT total_value_cents FROM book_stats"));
+
+        db.execSQL("DELETE FROM books WHERE _id = 1");
+        assertEquals(1, count(db, "SELECT title_count FROM book_stats"));
+        assertEquals(2, count(db, "SELECT total_units FROM book_stats"));
+        assertEquals(1, count(db, "SELECT low_stock_count FROM book_stats"));
+        assertEquals(0, count(db, BookSchema.SQL_CHECK_STATS));
+
+        // statistics that drifted are found by the check and repaired by the rebuild
+        db.execSQL("UPDATE book_stats SET total_units = 99");
+        assertEquals(1, count(db, BookSchema.SQL_CHECK_STATS));
+        db.execSQL(BookSchema.SQL_REBUILD_STATS);
+        assertEquals(0, count(db, BookSchema.SQL_CHECK_STATS));
+        assertEquals(2, count(db, "SELECT total_units FROM book_stats"));
+        helper.close();
+    }
+
+    @Test
+    public void quantityDeltasStopAtZero() {
+        BookDbHelper helper = new BookDbHelper(mContext, null);
+        SQLiteDatabase db = helper.getWritableDatabase();
+        db.execSQL("INSERT INTO books (product, price, quantity, supplier, phone)"
+                + " VALUES ('The Giver', '9.99', 4, 'Penguin House', '555-5555')");
+
+        BookStatements statements = helper.getStatements();
+        assertEquals(1, statements.adjustQuantity(1, -3));
+        assertEquals(1, statements.quantityById(1));
+        assertEquals(1, statements.adjustQuantity(1, -5));
+        assertEquals(0, statements.quantityById(1));
+        assertEquals(1, statements.adjustQuantity(1, 7));
+        assertEquals(7, statements.quantityById(1));
+        assertEquals(0, statements.adjustQuantity(2, -1));
+
+        // the statistics follow the relative updates too
+        assertEquals(7, count(db, "SELECT total_units FROM book_stats"));
+        assertEquals(0, count(db, BookSchema.SQL_CHECK_STATS));
+        helper.close();
+    }
+
+    // returns the list query of a page in the given order, like the provider builds it
+    private static String page(String selection, String orderBy) {
+        return "SELECT _id, product, price, quantity FROM books"
+                + (selection == null ? "" : " WHERE " + selection) + " ORDER BY " + orderBy;
+    }
+
+    // returns every line of the query plan of the given query, in one string
+    static String queryPlan(SQLiteDatabase db, String sql) {
+        Cursor cursor = db.rawQuery("EXPLAIN QUERY PLAN " + sql, null);
+        try {
+            StringBuilder plan = new StringBuilder();
+            int detailColumnIndex = cursor.getColumnIndex("detail");
+            while (cursor.moveToNext()) {
+                plan.append(cursor.getString(detailColumnIndex)).append('\n');
+            }
+            return plan.toString();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    // returns the type a column of the books table was declared with
+    private static String declaredType(SQLiteDatabase db, String column) {
+        Cursor cursor = db.rawQuery("PRAGMA table_info(books)", null);
+        try {
+            int nameColumnIndex = cursor.getColumnIndex("name");
+            int typeColumnIndex = cursor.getColumnIndex("type");
+            while (cursor.moveToNext()) {
+                if (column.equals(cursor.getString(nameColumnIndex))) {
+                    return cursor.getString(typeColumnIndex);
+                }
+            }
+            return null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static long count(SQLiteDatabase db, String sql) {
+        return DatabaseUtils.longForQuery(db, sql, null);
+    }
+}
@@ -0,0 +1,199 @@
+package com.example.android.bookstore.data;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.android.bookstore.data.BookContract.BookEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+/**
+ * Benchmark of the single-book operations with and without {@link BookStatements}, which will
+ * execute on an Android device. Prints the cost per operation of both to the log, after a
+ * warm up run of both.
+ */
+@RunWith(AndroidJUnit4.class)
+public class BookStatementsBenchmark {
+
+    // log tag for the results
+    private static final String TAG = BookStatementsBenchmark.class.getSimpleName();
+
+    // name of the database file used by the benchmark
+    private static final String TEST_DATABASE = "bookstore_statements_benchmark.db";
+
+    // number of books in the table, and operations timed per run
+    private static final int BOOK_COUNT = 1000;
+    private static final int OPERATIONS = 5000;
+
+    // operations run untimed first by each of the two ways
+    private static final int WARMUP_OPERATIONS = 1000;
+
+    private static final String[] EDITOR_PROJECTION = {
+            BookEntry._ID,
+            BookEntry.COLUMN_PRODUCT_NAME,
+            BookEntry.COLUMN_PRICE,
+            BookEntry.COLUMN_QUANTITY,
+            BookEntry.COLUMN_SUPPLIER_NAME,
+            BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER
+    };
+
+    private Context mContext;
+    private BookDbHelper mDbHelper;
+    private SQLiteDatabase mDb;
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getTargetContext();
+        mContext.deleteDatabase(TEST_DATABASE);
+        mDbHelper = new BookDbHelper(mContext, TEST_DATABASE);
+        mDb = mDbHelper.getWritableDatabase();
+
+        mDb.beginTransaction();
+        try {
+            for (int i = 0; i < BOOK_COUNT; i++) {
+                mDb.execSQL("INSERT INTO books (product, price, quantity, supplier, phone)"
+                        + " VALUES ('Book " + i + "', '9', 1000000, 'Penguin', '555-5555')");
+            }
+            mDb.setTransactionSuccessful();
+        } finally {
+            mDb.endTransaction();
+        }
+    }
+
+    @After
+    public void tearDown() {
+        mDbHelper.close();
+        mContext.deleteDatabase(TEST_DATABASE);
+    }
+
+    @Test
+    public void lookupById() {
+        final BookStatements statements = mDbHelper.getStatements();
+        compare("lookup by id", new Operation() {
+            @Override
+            public void run(int i) {
+                Cursor cursor = mDb.query(BookEntry.TABLE_NAME, EDITOR_PROJECTION,
+                        BookEntry._ID + "=?", new String[] { String.valueOf(id(i)) },
+                        null, null, null);
+                assertTrue(cursor.moveToFirst());
+                cursor.close();
+            }
+        }, new Operation() {
+            @Override
+            public void run(int i) {
+                Cursor cursor = statements.queryById(id(i), EDITOR_PROJECTION);
+                assertTrue(cursor.moveToFirst());
+                cursor.close();
+            }
+        });
+    }
+
+    @Test
+    public void updateById() {
+        final ContentValues values = new ContentValues();
+        values.put(BookEntry.COLUMN_PRODUCT_NAME, "The Giver");
+        values.put(BookEntry.COLUMN_PRICE, "9");
+        values.put(BookEntry.COLUMN_QUANTITY, 4);
+        values.put(BookEntry.COLUMN_SUPPLIER_NAME, "Penguin House");
+        values.put(BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER, "999-555-5555");
+
+        final BookStatements statements = mDbHelper.getStatements();
+        compare("update by id", new Operation() {
+            @Override
+            public void run(int i) {
+                assertEquals(1, mDb.update(BookEntry.TABLE_NAME, values, BookEntry._ID + "=?",
+                        new String[] { String.valueOf(id(i)) }));
+            }
+        }, new Operation() {
+            @Override
+            public void run(int i) {
+                assertEquals(1, statements.updateById(id(i), values));
+            }
+        });
+    }
+
+    @Test
+    public void sell() {
+        final BookStatements statements = mDbHelper.getStatements();
+        compare("sell", new Operation() {
+            @Override
+            public void run(int i) {
+                mDb.execSQL("UPDATE books SET quantity = quantity - 1"
+                        + " WHERE _id = ? AND quantity > 0", new Object[] { id(i) });
+            }
+        }, new Operation() {
+            @Override
+            public void run(int i) {
+                assertEquals(1, statements.sell(id(i)));
+            }
+        });
+    }
+
+    @Test
+    public void deleteById() {
+        // every book is deleted once: the first quarter warms up the generic API, the second
+        // one the compiled statement, and the last two halves are timed
+        final int quarter = BOOK_COUNT / 4;
+        final BookStatements statements = mDbHelper.getStatements();
+        Operation generic = new Operation() {
+            @Override
+            public void run(int id) {
+                assertEquals(1, mDb.delete(BookEntry.TABLE_NAME, BookEntry._ID + "=?",
+                        new String[] { String.valueOf(id) }));
+            }
+        };
+        Operation compiled = new Operation() {
+            @Override
+            public void run(int id) {
+                assertEquals(1, statements.deleteById(id));
+            }
+        };
+
+        time(generic, 1, quarter);
+        time(compiled, quarter + 1, quarter);
+        long before = time(generic, 2 * quarter + 1, quarter);
+        long with = time(compiled, 3 * quarter + 1, quarter);
+        Log.i(TAG, "delete by id: " + before / quarter + " ns/op before, "
+                + with / quarter + " ns/op with compiled statements");
+    }
+
+    // one operation of a run, given its number
+    private interface Operation {
+        void run(int i);
+    }
+
+    // runs both operations untimed first, so the JIT and the page cache are warm for both,
+    // then times them one after the other and prints the cost per operation of both
+    private static void compare(String name, Operation generic, Operation compiled) {
+        time(generic, 0, WARMUP_OPERATIONS);
+        time(compiled, 0, WARMUP_OPERATIONS);
+        long before = time(generic, 0, OPERATIONS);
+        long with = time(compiled, 0, OPERATIONS);
+        Log.i(TAG, name + ": " + before / OPERATIONS + " ns/op before, "
+                + with / OPERATIONS + " ns/op with compiled statements");
+    }
+
+    // returns how long it took to run the operations from first on, in nanoseconds
+    private static long time(Operation operation, int first, int count) {
+        long start = System.nanoTime();
+        for (int i = first; i < first + count; i++) {
+            operation.run(i);
+        }
+        return System.nanoTime() - start;
+    }
+
+    // spread the operations over all the books
+    private static long id(int operation) {
+        return operation % BOOK_COUNT + 1;
+    }
+}
@@ -0,0 +1,191 @@
+package com.example.android.bookstore.data;
+
+import android.content.ContentResolver;
+import android.os.Looper;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented test for {@link BookWriter}, which will execute on an Android device. The
+ * writes only record the thread they ran on, and the stock changes go to a book that
+ * doesn't exist, so the test doesn't change the database.
+ */
+@RunWith(AndroidJUnit4.class)
+public class BookWriterTest {
+
+    private static final int WRITE_COUNT = 50;
+
+    // rounds of a window ending while a write is submitted
+    private static final int RACE_COUNT = 100;
+
+    private BookWriter mWriter;
+
+    @Before
+    public void setUp() {
+        mWriter = new BookWriter(InstrumentationRegistry.getTargetContext().getContentResolver(),
+                Looper.getMainLooper());
+    }
+
+    @Test
+    public void writesAndCallbacksKeepTheirOrder() throws InterruptedException {
+        final List<Integer> written = Collections.synchronizedList(new ArrayList<Integer>());
+        final List<Integer> delivered = Collections.synchronizedList(new ArrayList<Integer>());
+        final CountDownLatch done = new CountDownLatch(WRITE_COUNT);
+
+        for (int i = 0; i < WRITE_COUNT; i++) {
+            final int write = i;
+            mWriter.submit(new BookWriter.Write<Integer>() {
+                @Override
+                public Integer run(ContentResolver resolver) {
+                    assertNotSame(Looper.getMainLooper().getThread(), Thread.currentThread());
+                    written.add(write);
+                    return write;
+                }
+            }, -1, new BookWriter.Callback<Integer>() {
+                @Override
+                public void onWriteDone(Integer result) {
+                    assertSame(Looper.getMainLooper().getThread(), Thread.currentThread());
+                    delivered.add(result);
+                    done.countDown();
+                }
+            });
+        }
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        for (int i = 0; i < WRITE_COUNT; i++) {
+            assertEquals(i, (int) written.get(i));
+            assertEquals(i, (int) delivered.get(i));
+        }
+        assertEquals(0, mWriter.getQueueDepth());
+        assertEquals(WRITE_COUNT, mWriter.getWriteCount());
+        assertTrue(mWriter.getMaxQueueDepth() >= 1);
+    }
+
+    @Test
+    public void failedWriteDeliversFailedResult() throws InterruptedException {
+        final int[] result = { 0 };
+        final CountDownLatch done = new CountDownLatch(1);
+        mWriter.submit(new BookWriter.Write<Integer>() {
+            @Override
+            public Integer run(ContentResolver resolver) {
+                throw new IllegalArgumentException("Book requires a name");
+            }
+        }, -1, new BookWriter.Callback<Integer>() {
+            @Override
+            public void onWriteDone(Integer quantityLeft) {
+                result[0] = quantityLeft;
+                done.countDown();
+            }
+        });
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(-1, result[0]);
+        assertEquals(1, mWriter.getWriteCount());
+    }
+
+    @Test
+    public void quantityChangesAreWrittenOnceBeforeTheNextWrite() throws InterruptedException {
+        final List<String> delivered = Collections.synchronizedList(new ArrayList<String>());
+        final CountDownLatch done = new CountDownLatch(3);
+        BookWriter.Callback<Integer> sale = new BookWriter.Callback<Integer>() {
+            @Override
+            public void onWriteDone(Integer quantityLeft) {
+                delivered.add("sale " + quantityLeft);
+                done.countDown();
+            }
+        };
+
+        // two taps on a book that doesn't exist, held back in one window
+        mWriter.adjustQuantity(-1, -1, sale);
+        mWriter.adjustQuantity(-1, -1, sale);
+        assertTrue(mWriter.hasPendingQuantity(-1));
+        assertTrue(mWriter.isQuantityUnwritten(-1));
+
+        // the next write goes after them
+        mWriter.submit(new BookWriter.Write<Integer>() {
+            @Override
+            public Integer run(ContentResolver resolver) {
+                return 1;
+            }
+        }, 0, new BookWriter.Callback<Integer>() {
+            @Override
+            public void onWriteDone(Integer result) {
+                delivered.add("write " + result);
+                done.countDown();
+            }
+        });
+        assertFalse(mWriter.hasPendingQuantity(-1));
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("sale -1", "sale -1", "write 1"), delivered);
+        assertFalse(mWriter.isQuantityUnwritten(-1));
+        assertEquals(2, mWriter.getWriteCount());
+    }
+
+    @Test
+    public void windowEndingDuringSubmitKeepsTheOrder() throws InterruptedException {
+        final List<String> delivered = Collections.synchronizedList(new ArrayList<String>());
+        final CountDownLatch done = new CountDownLatch(2 * RACE_COUNT);
+
+        for (int i = 0; i < RACE_COUNT; i++) {
+            final int round = i;
+            mWriter.adjustQuantity(-1, -1, new BookWriter.Callback<Integer>() {
+                @Override
+                public void onWriteDone(Integer quantityLeft) {
+                    delivered.add("sale " + round);
+                    done.countDown();
+                }
+            });
+
+            // end the window on another thread, like its timer does, while this thread
+            // submits the next write
+            final CountDownLatch start = new CountDownLatch(1);
+            Thread timer = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    mWriter.flush();
+                }
+            });
+            timer.start();
+            start.countDown();
+            mWriter.submit(new BookWriter.Write<Integer>() {
+                @Override
+                public Integer run(ContentResolver resolver) {
+                    return round;
+                }
+            }, -1, new BookWriter.Callback<Integer>() {
+                @Override
+                public void onWriteDone(Integer result) {
+                    delivered.add("write " + result);
+                    done.countDown();
+                }
+            });
+            timer.join();
+        }
+
+        // whichever thread took the sale, it is written before the write after it
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        for (int i = 0; i < RACE_COUNT; i++) {
+            assertEquals("sale " + i, delivered.get(2 * i));
+            assertEquals("write " + i, delivered.get(2 * i + 1));
+        }
+    }
+}
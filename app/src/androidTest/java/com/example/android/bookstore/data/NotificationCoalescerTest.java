@@ -0,0 +1,74 @@
+package com.example.android.bookstore.data;
+
+import android.content.ContentUris;
+import android.net.Uri;
+import android.os.Looper;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.bookstore.data.BookContract.BookEntry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented test for {@link NotificationCoalescer}, which will execute on an Android device.
+ */
+@RunWith(AndroidJUnit4.class)
+public class NotificationCoalescerTest {
+
+    private NotificationCoalescer mCoalescer;
+
+    @Before
+    public void setUp() {
+        // a long window, so only flush() ends it during the test
+        mCoalescer = new NotificationCoalescer(
+                InstrumentationRegistry.getTargetContext().getContentResolver(),
+                Looper.getMainLooper(), 60000);
+    }
+
+    @Test
+    public void sameUriIsSentOncePerWindow() {
+        mCoalescer.notifyChange(BookEntry.CONTENT_URI);
+        mCoalescer.notifyChange(BookEntry.CONTENT_URI);
+        mCoalescer.notifyChange(BookEntry.CONTENT_URI);
+        assertEquals(0, mCoalescer.getEmittedCount());
+
+        mCoalescer.flush();
+        assertEquals(1, mCoalescer.getEmittedCount());
+        assertEquals(2, mCoalescer.getSuppressedCount());
+    }
+
+    @Test
+    public void bookUriIsCoveredByBooksUri() {
+        Uri book = ContentUris.withAppendedId(BookEntry.CONTENT_URI, 3);
+        mCoalescer.notifyChange(book);
+        mCoalescer.notifyChange(BookEntry.CONTENT_URI);
+        mCoalescer.flush();
+
+        assertEquals(1, mCoalescer.getEmittedCount());
+        assertEquals(1, mCoalescer.getSuppressedCount());
+    }
+
+    @Test
+    public void distinctBooksAreSentSeparately() {
+        mCoalescer.notifyChange(ContentUris.withAppendedId(BookEntry.CONTENT_URI, 1));
+        mCoalescer.notifyChange(ContentUris.withAppendedId(BookEntry.CONTENT_URI, 2));
+        mCoalescer.flush();
+
+        assertEquals(2, mCoalescer.getEmittedCount());
+        assertEquals(0, mCoalescer.getSuppressedCount());
+    }
+
+    @Test
+    public void zeroWindowSendsRightAway() {
+        mCoalescer.setWindowMillis(0);
+        mCoalescer.notifyChange(BookEntry.CONTENT_URI);
+        mCoalescer.notifyChange(BookEntry.CONTENT_URI);
+
+        assertEquals(2, mCoalescer.getEmittedCount());
+    }
+}
@@ -0,0 +1,106 @@
+package com.example.android.bookstore.data;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.bookstore.core.SlowQueryLog;
+import com.example.android.bookstore.data.BookContract.BookEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented test for {@link SlowQueryRecorder}, which will execute on an Android device.
+ * The threshold is 0, so every query counts as slow.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SlowQueryRecorderTest {
+
+    // name of the database file used by the test
+    private static final String TEST_DATABASE = "bookstore_slow_query_test.db";
+
+    private Context mContext;
+    private SlowQueryLog mLog;
+    private BookDbHelper mHelper;
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getTargetContext();
+        mContext.deleteDatabase(TEST_DATABASE);
+        mLog = new SlowQueryLog(8, 0);
+        mHelper = new BookDbHelper(mContext, TEST_DATABASE, new SlowQueryRecorder(mLog));
+
+        ContentValues values = new ContentValues();
+        values.put(BookEntry.COLUMN_PRODUCT_NAME, "Dune");
+        values.put(BookEntry.COLUMN_PRICE, "9.99");
+        values.put(BookEntry.COLUMN_QUANTITY, 3);
+        values.put(BookEntry.COLUMN_SUPPLIER_NAME, "Ace");
+        values.put(BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER, "555-0100");
+        mHelper.getWritableDatabase().insert(BookEntry.TABLE_NAME, null, values);
+        mLog.clear();
+    }
+
+    @After
+    public void tearDown() {
+        mHelper.close();
+        mContext.deleteDatabase(TEST_DATABASE);
+    }
+
+    @Test
+    public void recordsQueryWithItsPlan() {
+        SQLiteDatabase db = mHelper.getReadableDatabase();
+
+        // no index sorts by price, so SQLite scans the table and sorts it
+        Cursor cursor = db.query(BookEntry.TABLE_NAME, new String[] { BookEntry._ID },
+                BookEntry.COLUMN_QUANTITY + " > ?", new String[] { "0" }, null, null,
+                BookEntry.COLUMN_PRICE);
+        try {
+            assertEquals(1, cursor.getCount());
+        } finally {
+            cursor.close();
+        }
+
+        List<SlowQueryLog.Entry> entries = mLog.getEntries();
+        assertEquals(1, entries.size());
+        SlowQueryLog.Entry entry = entries.get(0);
+        assertTrue(entry.sql, entry.sql.startsWith("SELECT _id FROM books WHERE quantity > ?"));
+        assertEquals(1, entry.argumentCount);
+        assertNotNull(entry.plan);
+        assertTrue(entry.plan, entry.plan.contains("TEMP B-TREE"));
+    }
+
+    @Test
+    public void recordsOnlyTheFirstFill() {
+        Cursor cursor = mHelper.getReadableDatabase().rawQuery("SELECT * FROM books", null);
+        try {
+            cursor.getCount();
+            cursor.moveToFirst();
+            cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+        assertEquals(1, mLog.getTotalCount());
+    }
+
+    @Test
+    public void offRecordsNothing() {
+        mLog.setThresholdMillis(-1);
+        Cursor cursor = mHelper.getReadableDatabase().rawQuery("SELECT * FROM books", null);
+        try {
+            cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+        assertEquals(0, mLog.getTotalCount());
+    }
+}
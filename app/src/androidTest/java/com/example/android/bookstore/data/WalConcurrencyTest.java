@@ -0,0 +1,154 @@
+package com.example.android.bookstore.data;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.android.bookstore.data.BookContract.BookEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+/**
+ * Stress test for write-ahead logging in {@link BookDbHelper}, which will execute on an
+ * Android device. A writer keeps long catalog-wide transactions open while readers run the
+ * list query, and the readers must never wait for a transaction to finish.
+ */
+@RunWith(AndroidJUnit4.class)
+public class WalConcurrencyTest {
+
+    // log tag for the latency report
+    private static final String TAG = WalConcurrencyTest.class.getSimpleName();
+
+    // name of the database file used by the test
+    private static final String TEST_DATABASE = "bookstore_wal_test.db";
+
+    // number of books in the catalog
+    private static final int BOOK_COUNT = 5000;
+
+    // number of reader threads and queries each of them runs
+    private static final int READERS = 4;
+    private static final int QUERIES_PER_READER = 200;
+
+    // how long the writer keeps each transaction open
+    private static final long WRITE_HOLD_MILLIS = 250;
+
+    private Context mContext;
+    private BookDbHelper mDbHelper;
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getTargetContext();
+        mContext.deleteDatabase(TEST_DATABASE);
+        mDbHelper = new BookDbHelper(mContext, TEST_DATABASE);
+
+        SQLiteDatabase db = mDbHelper.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            for (int i = 0; i < BOOK_COUNT; i++) {
+                db.execSQL("INSERT INTO books (product, price, quantity, supplier, phone)"
+                        + " VALUES ('Book " + i + "', '9', " + (i % 50) + ", 'Penguin', '555-5555')");
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    @After
+    public void tearDown() {
+        mDbHelper.close();
+        mContext.deleteDatabase(TEST_DATABASE);
+    }
+
+    @Test
+    public void readersAreNotBlockedByWriter() throws Exception {
+        final SQLiteDatabase db = mDbHelper.getWritableDatabase();
+        assertEquals("wal", DatabaseUtils.stringForQuery(db, "PRAGMA journal_mode", null));
+
+        final AtomicBoolean writing = new AtomicBoolean(true);
+        final CountDownLatch writerStarted = new CountDownLatch(1);
+
+        // writer: update the price of the whole catalog and keep the transaction open
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                int round = 0;
+                while (writing.get()) {
+                    db.beginTransaction();
+                    try {
+                        db.execSQL("UPDATE books SET price = '" + (10 + round++) + "'");
+                        writerStarted.countDown();
+                        SystemClock.sleep(WRITE_HOLD_MILLIS);
+                        db.setTransactionSuccessful();
+                    } finally {
+                        db.endTransaction();
+                    }
+                }
+            }
+        });
+        writer.start();
+        writerStarted.await();
+
+        // readers: run the first page of the list query and time it
+        final long[] latencies = new long[READERS * QUERIES_PER_READER];
+        Thread[] readers = new Thread[READERS];
+        for (int r = 0; r < READERS; r++) {
+            final int offset = r * QUERIES_PER_READER;
+            readers[r] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    String[] projection = { BookEntry._ID, BookEntry.COLUMN_PRODUCT_NAME,
+                            BookEntry.COLUMN_PRICE, BookEntry.COLUMN_QUANTITY };
+                    for (int q = 0; q < QUERIES_PER_READER; q++) {
+                        long start = System.nanoTime();
+                        Cursor cursor = db.query(BookEntry.TABLE_NAME, projection, null, null,
+                                null, null, BookEntry._ID, String.valueOf(BookEntry.DEFAULT_PAGE_SIZE));
+                        try {
+                            cursor.getCount();
+                        } finally {
+                            cursor.close();
+                        }
+                        latencies[offset + q] = System.nanoTime() - start;
+                    }
+                }
+            });
+            readers[r].start();
+        }
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        writing.set(false);
+        writer.join();
+
+        Arrays.sort(latencies);
+        long p50 = percentile(latencies, 50);
+        long p90 = percentile(latencies, 90);
+        long p99 = percentile(latencies, 99);
+        long max = latencies[latencies.length - 1];
+        Log.i(TAG, "read latency during writes (us): p50=" + p50 / 1000 + " p90=" + p90 / 1000
+                + " p99=" + p99 / 1000 + " max=" + max / 1000);
+
+        // a reader that waited for the writer would take at least one whole transaction
+        assertTrue("p99 read latency " + p99 / 1000 + "us", p99 < WRITE_HOLD_MILLIS * 1000000 / 2);
+    }
+
+    // returns the given percentile of sorted values
+    private static long percentile(long[] sorted, int percentile) {
+        int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.android.bookstore;
+
+import android.database.Cursor;
+import android.text.TextUtils;
+
+import com.example.android.bookstore.data.BookContract.BookEntry;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// {@link Book} is one row of the list of books, copied out of the cursor it was loaded in.
+// it never changes, so the list can be compared with the previous one on a background
+// thread while the main thread keeps showing it.
+public final class Book {
+
+    // the _id of the book
+    public final long id;
+
+    public final String title;
+    public final String price;
+    public final int quantity;
+
+    public Book(long id, String title, String price, int quantity) {
+        this.id = id;
+        this.title = title;
+        this.price = price;
+        this.quantity = quantity;
+    }
+
+    /**
+     * copy every row of a cursor of the list projection into a new list of books. the
+     * cursor is left after its last row.
+     */
+    public static List<Book> fromCursor(Cursor cursor) {
+        List<Book> books = new ArrayList<>(cursor.getCount());
+
+        // find the columns once for the whole cursor
+        int idColumnIndex = cursor.getColumnIndex(BookEntry._ID);
+        int titleColumnIndex = cursor.getColumnIndex(BookEntry.COLUMN_PRODUCT_NAME);
+        int priceColumnIndex = cursor.getColumnIndex(BookEntry.COLUMN_PRICE);
+        int quantityColumnIndex = cursor.getColumnIndex(BookEntry.COLUMN_QUANTITY);
+
+        cursor.moveToPosition(-1);
+        while (cursor.moveToNext()) {
+            books.add(new Book(cursor.getLong(idColumnIndex),
+                    cursor.getString(titleColumnIndex),
+                    cursor.getString(priceColumnIndex),
+                    cursor.getInt(quantityColumnIndex)));
+        }
+        return books;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Book)) {
+            return false;
+        }
+        Book other = (Book) o;
+        return id == other.id
+                && quantity == other.quantity
+                && TextUtils.equals(title, other.title)
+                && TextUtils.equals(price, other.price);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = (int) (id ^ (id >>> 32));
+        result = 31 * result + (title == null ? 0 : title.hashCode());
+        result = 31 * result + (price == null ? 0 : price.hashCode());
+        return 31 * result + quantity;
+    }
+}
@@ -1,115 +1,229 @@
 package com.example.android.bookstore;
 
-import android.content.ContentValues;
+import android.content.ContentUris;
 import android.content.Context;
-import android.database.Cursor;
+import android.content.Intent;
+import android.net.Uri;
+import android.support.v4.os.TraceCompat;
+import android.support.v7.recyclerview.extensions.ListAdapter;
+import android.support.v7.util.DiffUtil;
+import android.support.v7.widget.RecyclerView;
 import android.text.TextUtils;
-import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.Button;
-import android.widget.CursorAdapter;
 import android.widget.TextView;
 
 import com.example.android.bookstore.data.BookContract.BookEntry;
+import com.example.android.bookstore.data.BookWriter;
 
-// {@link BookCursorAdapter} is an adapter for a list or grid view that uses a
-// {@link Cursor} of book data as its data source. This adapter knows how to create
-// list items for each row of book data in the {@link Cursor}.
-public class BookCursorAdapter extends CursorAdapter {
+// {@link BookCursorAdapter} is an adapter for a RecyclerView that shows the rows of the
+// book cursors as a list. The rows are handed over as a list of {@link Book}s copied out
+// of the cursors. Every new list is compared with the previous one on a background thread,
+// and only the rows that were added, removed, moved or changed are bound again, so the list
+// keeps its scroll position and the rest of the visible rows stay as they are.
+public class BookCursorAdapter extends ListAdapter<Book, BookCursorAdapter.BookViewHolder> {
 
     // log tab
     public static final String TAG = BookCursorAdapter.class.getSimpleName();
 
+    // two rows are the same book if they have the same _id, and it hasn't changed if
+    // every column of the row is the same
+    private static final DiffUtil.ItemCallback<Book> DIFF_CALLBACK = new DiffUtil.ItemCallback<Book>() {
+        @Override
+        public boolean areItemsTheSame(Book oldBook, Book newBook) {
+            return oldBook.id == newBook.id;
+        }
+
+        @Override
+        public boolean areContentsTheSame(Book oldBook, Book newBook) {
+            return oldBook.equals(newBook);
+        }
+    };
+
+    // true once a list item has been bound in this process, see onBindViewHolder
+    private static boolean sFirstBindDone;
+
     // get context
     private Context mContext;
 
-    // global variable for sale button
-    private int bookQuantity;
+    // writes the sales off the main thread
+    private final BookWriter mWriter;
+
+    // the labels of the list item, looked up once instead of on every bind
+    private final String mPriceLabel;
+    private final String mQuantityLabel;
+    private final String mUnknownPrice;
+
+    // opens the book of the clicked list item in the {@link EditorActivity}. shared by
+    // every list item, which is tagged with its view holder.
+    private final View.OnClickListener mItemClickListener = new View.OnClickListener() {
+        @Override
+        public void onClick(View view) {
+            BookViewHolder holder = (BookViewHolder) view.getTag();
+
+            // form the content URI that represents the specific book that was clicked on,
+            // for example "content://com.example.android.bookstore/books/2"
+            Uri currentBookUri = ContentUris.withAppendedId(BookEntry.CONTENT_URI, holder.bookId);
+
+            // set the URI on the data field of the intent, and launch the
+            // {@link EditorActivity} to display the data for the current book.
+            Intent intent = new Intent(mContext, EditorActivity.class);
+            intent.setData(currentBookUri);
+
+            // hand over what the list item shows, so the editor can show it in its first
+            // frame instead of waiting for its query
+            int position = holder.getAdapterPosition();
+            if (position != RecyclerView.NO_POSITION) {
+                Book book = getItem(position);
+                intent.putExtra(EditorActivity.EXTRA_TITLE, book.title);
+                intent.putExtra(EditorActivity.EXTRA_PRICE, book.price);
+                intent.putExtra(EditorActivity.EXTRA_QUANTITY, holder.quantity);
+            }
+            mContext.startActivity(intent);
+        }
+    };
+
+    // onClick of Sale Button, sell one copy of the book of the list item. the list item shows
+    // the new quantity right away, and the sale is held back by the writer for a short window,
+    // so several taps in a row are written to the database as one change. once it is written,
+    // the list item shows the quantity the database has, if it still shows the book and no
+    // newer taps are waiting. shared by every sale button, which is tagged with its view holder.
+    private final View.OnClickListener mSaleClickListener = new View.OnClickListener() {
+        @Override
+        public void onClick(View view) {
+            final BookViewHolder holder = (BookViewHolder) view.getTag();
+            if (holder.quantity <= 0) {
+                return;
+            }
+            showQuantity(holder, holder.quantity - 1);
+
+            final long bookId = holder.bookId;
+            mWriter.adjustQuantity(bookId, -1, new BookWriter.Callback<Integer>() {
+                @Override
+                public void onWriteDone(Integer quantityLeft) {
+                    if (holder.bookId != bookId || mWriter.hasPendingQuantity(bookId)) {
+                        return;
+                    }
+                    showQuantity(holder, Math.max(quantityLeft, 0));
+                }
+            });
+        }
+    };
 
     /**
-     * {@link  BookCursorAdapter} is an adapter for a list or grid view
-     * that uses a {@link Cursor} of pet data as its data source. This adapter knows
-     * how to create list items for each row of book data in the {@link Cursor}.
+     * {@link BookCursorAdapter} is an adapter for a RecyclerView that uses lists of
+     * {@link Book}s as its data source. There is no data until the first list is submitted.
      */
-    public BookCursorAdapter(Context context, Cursor c) {
-        super(context, c, 0);
+    public BookCursorAdapter(Context context) {
+        super(DIFF_CALLBACK);
         this.mContext = context;
+        mWriter = BookWriter.getInstance(context);
+        mPriceLabel = context.getString(R.string.dollar_sign);
+        mQuantityLabel = context.getString(R.string.quantity);
+        mUnknownPrice = context.getString(R.string.unknown_price);
+
+        // the _id of a book identifies its row, so the RecyclerView can tell which rows
+        // moved and keep their views
+        setHasStableIds(true);
+    }
+
+    // holds the views of one list item, so they are only looked up once per item view,
+    // and the text buffers of its price and quantity
+    static class BookViewHolder extends RecyclerView.ViewHolder {
+        final TextView titleTextView;
+        final TextView priceTextView;
+        final TextView quantityTextView;
+        final Button saleButton;
+
+        final TextBuilder priceText = new TextBuilder();
+        final TextBuilder quantityText = new TextBuilder();
+
+        // the _id of the book bound to the list item, and the quantity it shows
+        long bookId;
+        int quantity;
+
+        BookViewHolder(View itemView) {
+            super(itemView);
+            titleTextView = (TextView) itemView.findViewById(R.id.title_view);
+            priceTextView = (TextView) itemView.findViewById(R.id.price_view);
+            quantityTextView = (TextView) itemView.findViewById(R.id.quantity_view);
+            saleButton = (Button) itemView.findViewById(R.id.sale_button);
+        }
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return getItem(position).id;
     }
 
     /**
      * Makes a new blank list item view. No data is set (or bound) to the views yet.
      *
-     * @param context app context
-     * @param cursor  The cursor from which to get the data. The cursor is already
-     *                moved to the correct position.
-     * @param parent  The parent to which the new view is attached to
-     * @return the newly created list item view.
+     * @param parent   The parent to which the new view is attached to
+     * @param viewType the type of the view, there is only one
+     * @return the view holder of the newly created list item view.
      */
     @Override
-    public View newView(Context context, Cursor cursor, ViewGroup parent) {
-        return LayoutInflater.from(context).inflate(R.layout.list_item, parent, false);
+    public BookViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(mContext).inflate(R.layout.list_item, parent, false);
+        BookViewHolder holder = new BookViewHolder(view);
+
+        // the click listeners are shared, the tags tell them which list item was clicked
+        view.setTag(holder);
+        view.setOnClickListener(mItemClickListener);
+        holder.saleButton.setTag(holder);
+        holder.saleButton.setOnClickListener(mSaleClickListener);
+        return holder;
     }
 
     /**
-     * This method binds the book data (in the current row pointed to by cursor) to the given
-     * list item layout. For example, the title for the current book can be set on the name TextView
-     * in the list item layout.
+     * This method binds the book data at the given position to the list item of the holder.
+     * For example, the title for the current book can be set on the name TextView in the
+     * list item layout. It runs for every row that scrolls into view, so it doesn't allocate:
+     * the labels are looked up once, and the price and quantity are written into buffers
+     * the holder keeps.
      *
-     * @param view    Existing view, returned earlier by newView() method
-     * @param context app context
-     * @param cursor  The cursor from which to get the data. The cursor is already moved to the
-     *                correct row.
+     * @param holder   Existing view holder, returned earlier by onCreateViewHolder() method
+     * @param position the position of the book in the list
      */
     @Override
-    public void bindView(View view, final Context context, Cursor cursor) {
-        // find fields to populate in the list item layout
-        TextView titleTextView = (TextView) view.findViewById(R.id.title_view);
-        TextView priceTextView = (TextView) view.findViewById(R.id.price_view);
-        final TextView quantityTextView = (TextView) view.findViewById(R.id.quantity_view);
-        final Button saleButton = (Button) view.findViewById(R.id.sale_button);
-
-        // find the columns of book attributes that we are interested in
-        // product name, price, and quantity. plus a sale button that
-        // decreases quantity when pushed
-        int titleColumnIndex = cursor.getColumnIndex(BookEntry.COLUMN_PRODUCT_NAME);
-        int priceColumnIndex = cursor.getColumnIndex(BookEntry.COLUMN_PRICE);
-        int quantityColumnIndex = cursor.getColumnIndex(BookEntry.COLUMN_QUANTITY);
-
-        // read the book attributes from the Cursor for the current book
-        String productName = cursor.getString(titleColumnIndex);
-        String bookPrice = cursor.getString(priceColumnIndex);
-        bookQuantity = cursor.getInt(quantityColumnIndex);
-
-        // if the book supplier is empty string or null, then use some default
-        // text that says "Unknown Price", so the TextView isn't blank.
-        if (TextUtils.isEmpty(bookPrice)) {
-            bookPrice = context.getString(R.string.unknown_price);
+    public void onBindViewHolder(BookViewHolder holder, int position) {
+        // the first bind of the process ends the startup trace: the first row is on screen
+        // in the next frame. it pays for loading the classes and resources of the list item.
+        if (!sFirstBindDone) {
+            sFirstBindDone = true;
+            TraceCompat.beginSection("BookCursorAdapter.firstBind");
+            try {
+                bindBook(holder, position);
+            } finally {
+                TraceCompat.endSection();
+            }
+            return;
         }
+        bindBook(holder, position);
+    }
 
-        // onClick of Sale Button, decrease book quantity by 1
-        saleButton.setOnClickListener(new View.OnClickListener() {
-            @Override
-            public void onClick(View view) {
-                if (bookQuantity == 0) {
-                    saleButton.setEnabled(false);
-                } else {
-                    bookQuantity--;
-                    quantityTextView.setText(String.valueOf(bookQuantity));
-                }
-                ContentValues values = new ContentValues();
-                values.put(BookEntry.COLUMN_QUANTITY, bookQuantity);
-                mContext.getContentResolver().update(BookEntry.CONTENT_URI, values, null, null);
-                Log.i(TAG, "onClick: what is this error???? " + bookQuantity);
-            }
-        });
+    // bind the book at the given position to the list item of the holder
+    private void bindBook(BookViewHolder holder, int position) {
+        Book book = getItem(position);
+        holder.bookId = book.id;
 
-        Log.i(TAG, "bindView: what is this error????? " + bookQuantity);
+        // if the book price is empty string or null, then use some default
+        // text that says "Unknown Price", so the TextView isn't blank.
+        String bookPrice = TextUtils.isEmpty(book.price) ? mUnknownPrice : book.price;
 
         // update the TextViews and button view with the attributes for the current book.
-        titleTextView.setText(productName);
-        priceTextView.setText(context.getString(R.string.dollar_sign) + bookPrice);
-        quantityTextView.setText(context.getString(R.string.quantity) + bookQuantity);
+        holder.titleTextView.setText(book.title);
+        holder.priceText.clear().append(mPriceLabel).append(bookPrice).applyTo(holder.priceTextView);
+        showQuantity(holder, book.quantity);
+    }
+
+    // show the quantity of a book in its list item. there is nothing to sell without stock.
+    private void showQuantity(BookViewHolder holder, int quantity) {
+        holder.quantity = quantity;
+        holder.quantityText.clear().append(mQuantityLabel).append(quantity).applyTo(holder.quantityTextView);
+        holder.saleButton.setEnabled(quantity > 0);
     }
 }
@@ -0,0 +1,109 @@
+package com.example.android.bookstore;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.example.android.bookstore.core.BookSnapshot;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+// {@link CatalogSnapshot} keeps a copy of the first page of the book list in a small file
+// (see {@link BookSnapshot}), so on the next launch the list can show those rows right
+// away, from a file mapped into memory, instead of waiting for the database to open and the
+// first query to finish. the rows of the live query replace them as soon as they arrive.
+final class CatalogSnapshot {
+
+    // log tag
+    public static final String TAG = CatalogSnapshot.class.getSimpleName();
+
+    // name of the snapshot file in the cache directory
+    static final String FILE_NAME = "catalog_snapshot.bin";
+
+    // the snapshot file, and the file the next one is written to before it replaces it
+    private final File mFile;
+    private final File mTempFile;
+
+    CatalogSnapshot(Context context) {
+        mFile = new File(context.getCacheDir(), FILE_NAME);
+        mTempFile = new File(context.getCacheDir(), FILE_NAME + ".tmp");
+    }
+
+    /**
+     * read the books of the snapshot. returns null if there is no snapshot, or if it can't
+     * be read, in which case it is deleted.
+     */
+    List<Book> read() {
+        if (!mFile.exists()) {
+            return null;
+        }
+        FileInputStream in = null;
+        try {
+            in = new FileInputStream(mFile);
+            FileChannel channel = in.getChannel();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            BookSnapshot.Reader reader = new BookSnapshot.Reader(buffer);
+            List<Book> books = new ArrayList<>(reader.count());
+            while (reader.next()) {
+                books.add(new Book(reader.id(), reader.title(), reader.price(), reader.quantity()));
+            }
+            return books;
+        } catch (IOException | IllegalArgumentException e) {
+            Log.w(TAG, "read: ignoring the snapshot", e);
+            mFile.delete();
+            return null;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    /**
+     * write the books as the new snapshot. it is written to a new file first and then
+     * renamed over the old one, so the snapshot is never half written. call it off the
+     * main thread, one write at a time.
+     */
+    void write(List<Book> books) {
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(mTempFile)));
+            BookSnapshot.Writer writer = new BookSnapshot.Writer(out, books.size());
+            for (Book book : books) {
+                writer.write(book.id, book.title, book.price, book.quantity);
+            }
+            writer.finish();
+            out.close();
+            out = null;
+
+            if (!mTempFile.renameTo(mFile)) {
+                Log.w(TAG, "write: could not replace the snapshot");
+                mTempFile.delete();
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "write: could not write the snapshot", e);
+            mTempFile.delete();
+        } finally {
+            closeQuietly(out);
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // nothing was written through it that isn't already flushed or thrown away
+        }
+    }
+}
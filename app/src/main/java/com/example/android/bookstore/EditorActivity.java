@@ -2,6 +2,7 @@ package com.example.android.bookstore;
 
 import android.Manifest;
 import android.app.LoaderManager;
+import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.CursorLoader;
 import android.content.DialogInterface;
@@ -28,6 +29,7 @@ import android.widget.Toast;
 
 
 import com.example.android.bookstore.data.BookContract.BookEntry;
+import com.example.android.bookstore.data.BookWriter;
 
 /**
  * Allows user to create a new book or edit an existing one.
@@ -42,6 +44,13 @@ public class EditorActivity extends AppCompatActivity implements
     // identifier for the book data loader
     private static final int EXISTING_BOOK_LOADER = 0;
 
+    // extras of the intent of an existing book: the title, price and quantity the list
+    // showed for it. the editor shows them right away, and its loader only has to add the
+    // supplier and reconcile them with the database.
+    public static final String EXTRA_TITLE = "com.example.android.bookstore.extra.TITLE";
+    public static final String EXTRA_PRICE = "com.example.android.bookstore.extra.PRICE";
+    public static final String EXTRA_QUANTITY = "com.example.android.bookstore.extra.QUANTITY";
+
     // content URI for the existing book (null if new book)
     private Uri mCurrentBookUri;
 
@@ -70,6 +79,9 @@ public class EditorActivity extends AppCompatActivity implements
     // order button for making a phone call to order from supplier
     private Button orderButton;
 
+    // true while a save or delete is on its way to the database, so it isn't sent twice
+    private boolean mWritePending;
+
     /**
      * OnTouchListener that listens for any user touches on a View, implying that they are modifying
      * the view, and we change the mBookHasChanged boolean to true.
@@ -120,6 +132,14 @@ public class EditorActivity extends AppCompatActivity implements
         mSupplierName = (EditText) findViewById(R.id.edit_supplier_name);
         mSupplierPhoneNumber = (EditText) findViewById(R.id.edit_supplier_phone_number);
 
+        // show the values of the list row the book was opened from, so the book is on screen
+        // in the first frame. after a configuration change the loader delivers the book again.
+        if (mCurrentBookUri != null && savedInstanceState == null && intent.hasExtra(EXTRA_TITLE)) {
+            mProductName.setText(intent.getStringExtra(EXTRA_TITLE));
+            mPrice.setText(intent.getStringExtra(EXTRA_PRICE));
+            mQuantity.setText(Integer.toString(intent.getIntExtra(EXTRA_QUANTITY, 0)));
+        }
+
         // setup OnTouchListeners on all the input fields, so we can determine if the user
         // has touched or modified them. This will let us know if there are unsaved changes
         // or not, if the user tries to leave the editor without saving.
@@ -197,6 +217,11 @@ public class EditorActivity extends AppCompatActivity implements
      * get user input from editor and save new book into database
      */
     private void saveBook() {
+        // the previous save or delete hasn't reached the database yet
+        if (mWritePending) {
+            return;
+        }
+
         // read from input fields
         // use trim to eliminate leading or trailing white space
         String productName = mProductName.getText().toString().trim();
@@ -246,19 +271,26 @@ public class EditorActivity extends AppCompatActivity implements
             }
 
 
-            Uri newUri = getContentResolver().insert(BookEntry.CONTENT_URI, values);
-
-            // show a toast message depending on whether or not the insertion was successful.
-            if (newUri == null) {
-                // if the new content URI is null, then there was an error with insertion
-                Toast.makeText(this, getString(R.string.editor_insert_book_failed),
-                        Toast.LENGTH_SHORT).show();
-            } else {
-                // otherwise, the insertion was successful and we can display a toast.
-                Toast.makeText(this, getString(R.string.editor_insert_book_successful),
-                        Toast.LENGTH_SHORT).show();
-                finish();
-            }
+            // insert the book on the writer thread, the editor stays open until it is done
+            mWritePending = true;
+            BookWriter.getInstance(this).insert(values, new BookWriter.Callback<Uri>() {
+                @Override
+                public void onWriteDone(Uri newUri) {
+                    mWritePending = false;
+
+                    // show a toast message depending on whether or not the insertion was successful.
+                    if (newUri == null) {
+                        // if the new content URI is null, then there was an error with insertion
+                        Toast.makeText(EditorActivity.this, getString(R.string.editor_insert_book_failed),
+                                Toast.LENGTH_SHORT).show();
+                    } else {
+                        // otherwise, the insertion was successful and we can display a toast.
+                        Toast.makeText(EditorActivity.this, getString(R.string.editor_insert_book_successful),
+                                Toast.LENGTH_SHORT).show();
+                        finish();
+                    }
+                }
+            });
 
         } else {
             // Otherwise this is an EXISTING book, so update the book with content URI: mCurrentBookUri
@@ -300,19 +332,26 @@ public class EditorActivity extends AppCompatActivity implements
             values.put(BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER, supplierPhoneNumber);
 
 
-            int rowsAffected = getContentResolver().update(mCurrentBookUri, values, null, null);
-
-            // show a toast message depending on whether or not the update was successful.
-            if (rowsAffected == 0) {
-                // if no rows were affected, then there was an error with the update.
-                Toast.makeText(this, getString(R.string.editor_update_book_failed),
-                        Toast.LENGTH_SHORT).show();
-            } else {
-                // otherwise, the update was successful and we can display a toast.
-                Toast.makeText(this, getString(R.string.editor_update_book_successful),
-                        Toast.LENGTH_SHORT).show();
-                finish();
-            }
+            // update the book on the writer thread, the editor stays open until it is done
+            mWritePending = true;
+            BookWriter.getInstance(this).update(mCurrentBookUri, values, new BookWriter.Callback<Integer>() {
+                @Override
+                public void onWriteDone(Integer rowsAffected) {
+                    mWritePending = false;
+
+                    // show a toast message depending on whether or not the update was successful.
+                    if (rowsAffected == 0) {
+                        // if no rows were affected, then there was an error with the update.
+                        Toast.makeText(EditorActivity.this, getString(R.string.editor_update_book_failed),
+                                Toast.LENGTH_SHORT).show();
+                    } else {
+                        // otherwise, the update was successful and we can display a toast.
+                        Toast.makeText(EditorActivity.this, getString(R.string.editor_update_book_successful),
+                                Toast.LENGTH_SHORT).show();
+                        finish();
+                    }
+                }
+            });
         }
 
         Log.i(TAG, "Something went wrong in saveBook()!!!!!!!!");
@@ -455,12 +494,30 @@ public class EditorActivity extends AppCompatActivity implements
             String supplierName = cursor.getString(supplierNameColumnIndex);
             String supplierPhone = cursor.getString(supplierPhoneColumnIndex);
 
-            // update the views on the screen with the values from the database
-            mProductName.setText(productName);
-            mPrice.setText(bookPrice);
-            mQuantity.setText(Integer.toString(bookQuantity));
-            mSupplierName.setText(supplierName);
-            mSupplierPhoneNumber.setText(supplierPhone);
+            // update the views on the screen with the values from the database. they may
+            // already show the values of the list row, see onCreate
+            reconcile(mProductName, productName);
+            reconcile(mPrice, bookPrice);
+            // the list row's quantity counts the sales the writer hasn't written yet, and
+            // the database doesn't. the reload after they are written brings the quantity
+            long bookId = ContentUris.parseId(mCurrentBookUri);
+            if (!BookWriter.getInstance(this).isQuantityUnwritten(bookId)) {
+                reconcile(mQuantity, Integer.toString(bookQuantity));
+            }
+            reconcile(mSupplierName, supplierName);
+            reconcile(mSupplierPhoneNumber, supplierPhone);
+        }
+    }
+
+    // show a value from the database in a field. a field that already shows it is left as it
+    // is, so the cursor of a field the user is in doesn't jump. once the user has changed the
+    // book, only the fields that are still empty are filled in, so no edit is lost.
+    private void reconcile(TextView field, String value) {
+        if (mBookHasChanged && field.length() != 0) {
+            return;
+        }
+        if (!TextUtils.equals(field.getText(), value == null ? "" : value)) {
+            field.setText(value);
         }
     }
 
@@ -535,27 +592,38 @@ public class EditorActivity extends AppCompatActivity implements
 
     // perform the deletion of the book in the database.
     private void deleteBook() {
-        // only perform the delete if this an existing book.
-        if (mCurrentBookUri != null) {
-            // call the ContentResolver to delete the book at the given content URI.
-            // pass in null for the selection and selectionArgs because the mCurrentBookUri
-            // content URI already identifies the book that we want.
-            int rowsDeleted = getContentResolver().delete(mCurrentBookUri, null, null);
-
-            // show a toast message depending on whether or not the delete was successful.
-            if (rowsDeleted == 0) {
-                // if no rows were deleted, then there was an error with the delete.
-                Toast.makeText(this, getString(R.string.editor_delete_book_failed),
-                        Toast.LENGTH_SHORT).show();
-            } else {
-                // otherwise, the delete was successful and we can display a toast.
-                Toast.makeText(this, getString(R.string.editor_delete_book_successful),
-                        Toast.LENGTH_SHORT).show();
-            }
+        // only perform the delete if this an existing book, and only once
+        if (mCurrentBookUri == null) {
+            finish();
+            return;
+        }
+        if (mWritePending) {
+            return;
         }
 
-        // close the activity
-        finish();
+        // delete the book at the given content URI on the writer thread. the
+        // mCurrentBookUri content URI already identifies the book that we want.
+        mWritePending = true;
+        BookWriter.getInstance(this).delete(mCurrentBookUri, new BookWriter.Callback<Integer>() {
+            @Override
+            public void onWriteDone(Integer rowsDeleted) {
+                mWritePending = false;
+
+                // show a toast message depending on whether or not the delete was successful.
+                if (rowsDeleted == 0) {
+                    // if no rows were deleted, then there was an error with the delete.
+                    Toast.makeText(EditorActivity.this, getString(R.string.editor_delete_book_failed),
+                            Toast.LENGTH_SHORT).show();
+                } else {
+                    // otherwise, the delete was successful and we can display a toast.
+                    Toast.makeText(EditorActivity.this, getString(R.string.editor_delete_book_successful),
+                            Toast.LENGTH_SHORT).show();
+                }
+
+                // close the activity
+                finish();
+            }
+        });
     }
 
 }
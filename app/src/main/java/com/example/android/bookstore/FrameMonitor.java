@@ -0,0 +1,105 @@
+package com.example.android.bookstore;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.util.Log;
+import android.view.Choreographer;
+
+/**
+ * {@link FrameMonitor} measures the time between the frames of the main thread with a
+ * {@link Choreographer} callback, and logs how many frames were janky (took longer than one
+ * and a half refresh intervals) and how many refresh intervals were missed altogether. It
+ * asks for every frame while it runs, which keeps the device awake, so it is only meant for
+ * debug builds and only runs while the activity is in front.
+ */
+@TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+final class FrameMonitor implements Choreographer.FrameCallback {
+
+    // log tag for the frame reports
+    public static final String TAG = FrameMonitor.class.getSimpleName();
+
+    // how often a report is logged while frames are being measured
+    private static final long REPORT_INTERVAL_NANOS = 5000000000L;
+
+    // the refresh interval of the display
+    private final long mFrameIntervalNanos;
+
+    // time of the previous frame, 0 before the first one
+    private long mLastFrameNanos;
+
+    // when the current report started
+    private long mReportStartNanos;
+
+    // counters of the current report
+    private int mFrameCount;
+    private int mJankyFrameCount;
+    private int mDroppedFrameCount;
+    private long mWorstFrameNanos;
+
+    private boolean mRunning;
+
+    /**
+     * construct a new instance of {@link FrameMonitor}.
+     *
+     * @param refreshRate of the display, in frames per second
+     */
+    FrameMonitor(float refreshRate) {
+        mFrameIntervalNanos = (long) (1000000000L / (refreshRate > 0 ? refreshRate : 60));
+    }
+
+    // start measuring frames
+    void start() {
+        if (mRunning) {
+            return;
+        }
+        mRunning = true;
+        mLastFrameNanos = 0;
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    // stop measuring frames and log what was measured since the last report
+    void stop() {
+        if (!mRunning) {
+            return;
+        }
+        mRunning = false;
+        Choreographer.getInstance().removeFrameCallback(this);
+        report();
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        if (mLastFrameNanos == 0) {
+            mReportStartNanos = frameTimeNanos;
+        } else {
+            long frameNanos = frameTimeNanos - mLastFrameNanos;
+            mFrameCount++;
+            if (frameNanos > mFrameIntervalNanos * 3 / 2) {
+                mJankyFrameCount++;
+                mDroppedFrameCount += (int) ((frameNanos + mFrameIntervalNanos / 2) / mFrameIntervalNanos) - 1;
+            }
+            mWorstFrameNanos = Math.max(mWorstFrameNanos, frameNanos);
+
+            if (frameTimeNanos - mReportStartNanos >= REPORT_INTERVAL_NANOS) {
+                report();
+                mReportStartNanos = frameTimeNanos;
+            }
+        }
+        mLastFrameNanos = frameTimeNanos;
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    // log the counters of the current report and start a new one
+    private void report() {
+        if (mFrameCount == 0) {
+            return;
+        }
+        Log.i(TAG, "frames: " + mFrameCount + " janky: " + mJankyFrameCount
+                + " dropped: " + mDroppedFrameCount
+                + " worst: " + mWorstFrameNanos / 1000000 + "ms");
+        mFrameCount = 0;
+        mJankyFrameCount = 0;
+        mDroppedFrameCount = 0;
+        mWorstFrameNanos = 0;
+    }
+}
@@ -1,24 +1,31 @@
 package com.example.android.bookstore;
 
 import android.app.LoaderManager;
-import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.CursorLoader;
 import android.content.Intent;
 import android.content.Loader;
 import android.database.Cursor;
 import android.net.Uri;
+import android.os.AsyncTask;
+import android.os.Build;
 import android.os.Bundle;
 import android.support.design.widget.FloatingActionButton;
 import android.support.v7.app.AppCompatActivity;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.support.v7.widget.SimpleItemAnimator;
 import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
-import android.widget.AdapterView;
-import android.widget.ListView;
+import android.view.ViewTreeObserver;
 
 import com.example.android.bookstore.data.BookContract.BookEntry;
+import com.example.android.bookstore.data.BookWriter;
+
+import java.util.ArrayList;
+import java.util.List;
 
 
 
@@ -31,17 +38,71 @@ public class MainActivity extends AppCompatActivity implements
     // log tag for debugging only
     public static final String TAG = MainActivity.class.getSimpleName();
 
-    // identifier for the book data loader
+    // identifier for the book data loader of the first page. page n uses BOOK_LOADER + n
     private static final int BOOK_LOADER = 0;
 
-    // adapter for the ListView
+    // bundle key for the _id of the last book before a page
+    private static final String ARG_AFTER_ID = "after_id";
+
+    // bundle key for the sort key of the last book before a page, when it isn't sorted by _id
+    private static final String ARG_AFTER_KEY = "after_key";
+
+    // start loading the next page when the user scrolls this close to the end of the list
+    private static final int PAGE_PREFETCH_DISTANCE = 10;
+
+    // saved state key of the low-stock filter
+    private static final String STATE_LOW_STOCK_ONLY = "low_stock_only";
+
+    // saved state key of the list order
+    private static final String STATE_SORT = "sort";
+
+    // adapter for the RecyclerView
     BookCursorAdapter mCursorAdapter;
 
+    // layout manager of the RecyclerView, which knows the last visible row
+    private LinearLayoutManager mLayoutManager;
+
+    // shown instead of the list while it has no books
+    private View mEmptyView;
+
+    // the loaded pages of books, in list order. a page that is still loading is null
+    private final ArrayList<List<Book>> mPages = new ArrayList<>();
+
+    // measures dropped frames in debug builds, null otherwise
+    private FrameMonitor mFrameMonitor;
+
+    // true to only list the books that are running low
+    private boolean mLowStockOnly;
+
+    // the order of the list, one of the BookEntry.SORT_BY_* values
+    private String mSort = BookEntry.SORT_BY_ID;
+
+    // the copy of the first page that is shown on launch until the database answers
+    private CatalogSnapshot mSnapshot;
+
+    // the books of the snapshot file as they were last read or written, so an unchanged
+    // first page isn't written again
+    private List<Book> mSnapshotBooks;
+
+    // true while the first page of the list comes from the snapshot
+    private boolean mShowingSnapshot;
+
+    // when onCreate started, and how long after that the first rows were drawn (-1 until
+    // they are). read by the startup benchmark from its own thread
+    private long mCreateNanos;
+    private volatile long mFirstRowsMillis = -1;
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
+        mCreateNanos = System.nanoTime();
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
 
+        if (savedInstanceState != null) {
+            mLowStockOnly = savedInstanceState.getBoolean(STATE_LOW_STOCK_ONLY);
+            mSort = savedInstanceState.getString(STATE_SORT, BookEntry.SORT_BY_ID);
+        }
+
         // setup FAB to open EditorActivity
         FloatingActionButton fab = (FloatingActionButton) findViewById(R.id.fab);
         fab.setOnClickListener(new View.OnClickListener() {
@@ -52,46 +113,232 @@ public class MainActivity extends AppCompatActivity implements
            }
         });
 
-        // find the ListView which will be populated with the book data.
-        ListView bookListView = (ListView) findViewById(R.id.list);
+        // find the RecyclerView which will be populated with the book data.
+        final RecyclerView bookListView = (RecyclerView) findViewById(R.id.list);
+        mLayoutManager = new LinearLayoutManager(this);
+        bookListView.setLayoutManager(mLayoutManager);
 
-        // find and set empty view on the ListView, so that it only shows when the list
-        // has 0 items.
-        View emptyView = findViewById(R.id.empty_view);
-        bookListView.setEmptyView(emptyView);
+        // a sale changes one row in place. cross-fading it would redraw the row for a
+        // few frames on every sale, so changed rows are just bound again.
+        ((SimpleItemAnimator) bookListView.getItemAnimator()).setSupportsChangeAnimations(false);
 
-        // setup an adapter to create a list item for each row of book data in the Cursor.
-        // there is no book data yet (until the loader finishes) so pass in null for the Cursor.
-        mCursorAdapter = new BookCursorAdapter(this, null);
+        // setup an adapter to create a list item for each row of book data. clicking a
+        // list item opens the book in the {@link EditorActivity}. there is no book data
+        // yet (until the loader finishes).
+        mCursorAdapter = new BookCursorAdapter(this);
         bookListView.setAdapter(mCursorAdapter);
 
-        // setup the item click listener
-        bookListView.setOnItemClickListener(new AdapterView.OnItemClickListener() {
+        // show the empty view only when the list has 0 items. the adapter changes its
+        // rows some time after a new list is submitted, once the difference is worked out.
+        mEmptyView = findViewById(R.id.empty_view);
+        mCursorAdapter.registerAdapterDataObserver(new RecyclerView.AdapterDataObserver() {
+            @Override
+            public void onChanged() {
+                updateEmptyView();
+            }
+
+            @Override
+            public void onItemRangeInserted(int positionStart, int itemCount) {
+                updateEmptyView();
+            }
+
+            @Override
+            public void onItemRangeRemoved(int positionStart, int itemCount) {
+                updateEmptyView();
+            }
+        });
+        updateEmptyView();
+
+        // load the next page when the user scrolls near the end of the loaded pages
+        bookListView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                int lastVisible = mLayoutManager.findLastVisibleItemPosition();
+                if (lastVisible >= mCursorAdapter.getItemCount() - PAGE_PREFETCH_DISTANCE) {
+                    loadNextPage();
+                }
+            }
+        });
+
+        // measure the frames of the list in debug builds. {@link FrameMonitor} logs how
+        // many were dropped, e.g. while a burst of sales reloads the list.
+        if (BuildConfig.DEBUG && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            mFrameMonitor = new FrameMonitor(getWindowManager().getDefaultDisplay().getRefreshRate());
+        }
+
+        // note when the first rows are drawn, from the snapshot or from the database
+        bookListView.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
             @Override
-            public void onItemClick(AdapterView<?> adapterView, View view, int position, long id) {
-                // create new intent to go to {@link EditorActivity}
-                Intent intent = new Intent(MainActivity.this, EditorActivity.class);
-
-                // form the content URI that represents the specific book that was clicked on,
-                // by appending the "id" (passed as input to this method) onto the
-                // {@link BookEntry#CONTENT_URI}.
-                // for example, the URI would be "content://com.example.android.bookstore/books/2"
-                // if the book with ID 2 was clicked on
-                Uri currentBookUri = ContentUris.withAppendedId(BookEntry.CONTENT_URI, id);
-
-                // set the URI on the data field of the intent
-                intent.setData(currentBookUri);
-
-                // launch the {@link EditorActivity} to display the data for the current book.
-                startActivity(intent);
-                Log.i(TAG, "onItemClick: why" + currentBookUri);
+            public boolean onPreDraw() {
+                if (mCursorAdapter.getItemCount() != 0) {
+                    bookListView.getViewTreeObserver().removeOnPreDrawListener(this);
+                    onFirstRowsDrawn();
+                }
+                return true;
             }
         });
 
-        // kick of the loader
+        // on a fresh launch, show the snapshot of the first page until the loader has the
+        // real one. a retained loader already has its rows, so it doesn't need the snapshot.
+        mSnapshot = new CatalogSnapshot(this);
+        mPages.add(null);
+        if (isSnapshotList() && getLoaderManager().getLoader(BOOK_LOADER) == null) {
+            mSnapshotBooks = mSnapshot.read();
+            if (mSnapshotBooks != null) {
+                mShowingSnapshot = true;
+                mPages.set(0, mSnapshotBooks);
+                showPages();
+            }
+        }
+
+        // kick of the loader for the first page
         getLoaderManager().initLoader(BOOK_LOADER, null, this);
     }
 
+    // log how long after onCreate the first rows were drawn, and tell the system the
+    // activity is ready for use
+    private void onFirstRowsDrawn() {
+        mFirstRowsMillis = (System.nanoTime() - mCreateNanos) / 1000000;
+        Log.i(TAG, "onFirstRowsDrawn: " + mFirstRowsMillis + "ms after onCreate, from the "
+                + (mShowingSnapshot ? "snapshot" : "database"));
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            reportFullyDrawn();
+        }
+    }
+
+    // returns how long after onCreate the first rows were drawn, or -1 if they weren't yet
+    long getFirstRowsMillis() {
+        return mFirstRowsMillis;
+    }
+
+    // keep the first page of all the books as the snapshot for the next launch, unless it
+    // is the same as the last one. the file is written on a background thread, one write
+    // after the other.
+    private void updateSnapshot(final List<Book> firstPage) {
+        if (firstPage.equals(mSnapshotBooks)) {
+            return;
+        }
+        mSnapshotBooks = firstPage;
+        AsyncTask.SERIAL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                mSnapshot.write(firstPage);
+            }
+        });
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        if (mFrameMonitor != null) {
+            mFrameMonitor.start();
+        }
+    }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+
+        // write the sales that are held back now, the process may be killed in the background
+        BookWriter.getInstance(this).flush();
+
+        if (mFrameMonitor != null) {
+            mFrameMonitor.stop();
+        }
+    }
+
+    @Override
+    protected void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+        outState.putBoolean(STATE_LOW_STOCK_ONLY, mLowStockOnly);
+        outState.putString(STATE_SORT, mSort);
+    }
+
+    // start the loader for the page after the last loaded one, unless a page is still
+    // loading or the last page came back short, which means it is the end of the table.
+    // the low-stock list comes in one piece, so it has no next page.
+    private void loadNextPage() {
+        if (mLowStockOnly) {
+            return;
+        }
+        int lastPage = mPages.size() - 1;
+        List<Book> last = mPages.get(lastPage);
+        if (last == null || last.size() < BookEntry.DEFAULT_PAGE_SIZE) {
+            return;
+        }
+
+        Bundle args = new Bundle();
+        args.putLong(ARG_AFTER_ID, lastId(last));
+        args.putString(ARG_AFTER_KEY, sortKey(last.get(last.size() - 1)));
+
+        mPages.add(null);
+        getLoaderManager().initLoader(BOOK_LOADER + lastPage + 1, args, this);
+    }
+
+    // drop every page after the given one. their loaders are destroyed so they
+    // will be loaded again from the new end of the list when the user scrolls.
+    private void dropPagesAfter(int page) {
+        for (int i = mPages.size() - 1; i > page; i--) {
+            mPages.remove(i);
+            getLoaderManager().destroyLoader(BOOK_LOADER + i);
+        }
+    }
+
+    // show all the loaded pages in the list. the adapter works out what changed since the
+    // last list on a background thread and then updates only those rows.
+    private void showPages() {
+        ArrayList<Book> books = new ArrayList<>();
+        for (List<Book> page : mPages) {
+            if (page == null) {
+                break;
+            }
+            books.addAll(page);
+        }
+        mCursorAdapter.submitList(books);
+    }
+
+    // show the empty view instead of the list while there are no books
+    private void updateEmptyView() {
+        mEmptyView.setVisibility(mCursorAdapter.getItemCount() == 0 ? View.VISIBLE : View.GONE);
+    }
+
+    // switch between all the books and the ones that are running low, and load the
+    // first page of the new list
+    private void setLowStockOnly(boolean lowStockOnly) {
+        mLowStockOnly = lowStockOnly;
+        mShowingSnapshot = false;
+        dropPagesAfter(0);
+        mPages.set(0, null);
+        showPages();
+        getLoaderManager().restartLoader(BOOK_LOADER, null, this);
+    }
+
+    // change the order of the list, and load the first page in the new order
+    private void setSort(String sort) {
+        if (sort.equals(mSort)) {
+            return;
+        }
+        mSort = sort;
+        setLowStockOnly(mLowStockOnly);
+    }
+
+    // returns true if the list is the one the snapshot keeps: all the books by _id
+    private boolean isSnapshotList() {
+        return !mLowStockOnly && BookEntry.SORT_BY_ID.equals(mSort);
+    }
+
+    // returns the key of a book in the order of the list, for the page after it
+    private String sortKey(Book book) {
+        if (BookEntry.SORT_BY_TITLE.equals(mSort)) {
+            return book.title;
+        } else if (BookEntry.SORT_BY_PRICE.equals(mSort)) {
+            return book.price;
+        } else if (BookEntry.SORT_BY_QUANTITY.equals(mSort)) {
+            return String.valueOf(book.quantity);
+        }
+        return null;
+    }
+
     // helper method to insert hard coded book data into the database.
     // for debugging purposes
     private void insertBook() {
@@ -109,15 +356,22 @@ public class MainActivity extends AppCompatActivity implements
         // into the bookstore database table.
         // receive the new content URI that will allow us to access "The Giver"
         // data in the future.
-        Uri newUri = getContentResolver().insert(BookEntry.CONTENT_URI, values);
-
-        Log.v(TAG, "insertBook: New row ID: " + newUri + " What is this error???????????????????");
+        BookWriter.getInstance(this).insert(values, new BookWriter.Callback<Uri>() {
+            @Override
+            public void onWriteDone(Uri newUri) {
+                Log.v(TAG, "insertBook: New row ID: " + newUri + " What is this error???????????????????");
+            }
+        });
     }
 
     // helper method to delete all books in the database
     private void deleteAllBooks() {
-        int rowsDeleted = getContentResolver().delete(BookEntry.CONTENT_URI, null, null);
-        Log.e(TAG, "deleteAllBooks: rows deleted from bookstore database: " + rowsDeleted );
+        BookWriter.getInstance(this).delete(BookEntry.CONTENT_URI, new BookWriter.Callback<Integer>() {
+            @Override
+            public void onWriteDone(Integer rowsDeleted) {
+                Log.e(TAG, "deleteAllBooks: rows deleted from bookstore database: " + rowsDeleted );
+            }
+        });
     }
 
     @Override
@@ -125,6 +379,8 @@ public class MainActivity extends AppCompatActivity implements
         // inflate the menu options from the res/menu/menu_catalog.xml file.
         // this adds menu items to the app bar.
         getMenuInflater().inflate(R.menu.menu_catalog, menu);
+        menu.findItem(R.id.action_low_stock).setChecked(mLowStockOnly);
+        menu.findItem(sortItemId(mSort)).setChecked(true);
         return true;
     }
 
@@ -132,6 +388,19 @@ public class MainActivity extends AppCompatActivity implements
     public boolean onOptionsItemSelected(MenuItem item) {
         // user clicked on a menu option in the app bar overflow menu
         switch (item.getItemId()) {
+            // respond to a click on the "Low stock only" menu option
+            case R.id.action_low_stock:
+                item.setChecked(!item.isChecked());
+                setLowStockOnly(item.isChecked());
+                return true;
+            // respond to a click on one of the "Sort by" menu options
+            case R.id.action_sort_by_id:
+            case R.id.action_sort_by_title:
+            case R.id.action_sort_by_price:
+            case R.id.action_sort_by_quantity:
+                item.setChecked(true);
+                setSort(sortOf(item.getItemId()));
+                return true;
             // respond to a click on the "Insert dummy data" menu option
             case R.id.action_insert_dummy_data:
                 insertBook();
@@ -144,6 +413,32 @@ public class MainActivity extends AppCompatActivity implements
         return super.onOptionsItemSelected(item);
     }
 
+    // returns the menu item of a list order
+    private static int sortItemId(String sort) {
+        if (BookEntry.SORT_BY_TITLE.equals(sort)) {
+            return R.id.action_sort_by_title;
+        } else if (BookEntry.SORT_BY_PRICE.equals(sort)) {
+            return R.id.action_sort_by_price;
+        } else if (BookEntry.SORT_BY_QUANTITY.equals(sort)) {
+            return R.id.action_sort_by_quantity;
+        }
+        return R.id.action_sort_by_id;
+    }
+
+    // returns the list order of a menu item
+    private static String sortOf(int itemId) {
+        switch (itemId) {
+            case R.id.action_sort_by_title:
+                return BookEntry.SORT_BY_TITLE;
+            case R.id.action_sort_by_price:
+                return BookEntry.SORT_BY_PRICE;
+            case R.id.action_sort_by_quantity:
+                return BookEntry.SORT_BY_QUANTITY;
+            default:
+                return BookEntry.SORT_BY_ID;
+        }
+    }
+
     @Override
     public Loader<Cursor> onCreateLoader(int i, Bundle bundle) {
         // define a projection that specifies the columns from the table we care about.
@@ -154,25 +449,76 @@ public class MainActivity extends AppCompatActivity implements
                 BookEntry.COLUMN_QUANTITY
         };
 
+        // each loader reads one page of books, starting after the last book of the
+        // previous page. the first page has no previous page. the books that are running
+        // low are few, so they come in one page from the low-stock index. the other orders
+        // start after the sort key and _id of the last book, and read an index in that order.
+        Uri pageUri;
+        if (mLowStockOnly) {
+            pageUri = BookEntry.buildLowStockUri(BookEntry.LOW_STOCK_THRESHOLD);
+        } else if (BookEntry.SORT_BY_ID.equals(mSort)) {
+            long afterId = bundle == null ? -1 : bundle.getLong(ARG_AFTER_ID);
+            pageUri = BookEntry.buildPageUri(afterId, BookEntry.DEFAULT_PAGE_SIZE);
+        } else {
+            String afterKey = bundle == null ? null : bundle.getString(ARG_AFTER_KEY);
+            long afterId = bundle == null ? -1 : bundle.getLong(ARG_AFTER_ID);
+            pageUri = BookEntry.buildSortedPageUri(mSort, afterKey, afterId,
+                    BookEntry.DEFAULT_PAGE_SIZE);
+        }
+
         // this loader will execute the ContentProvider's query method on a background
         // thread
         return new CursorLoader(this,    //parent activity context
-                BookEntry.CONTENT_URI,          //provider content URI to query
+                pageUri,                        //provider content URI of the page to query
                 projection,                     //columns to include in the resulting cursor
                 null,                   //no selection clause
                 null,                //no selection arguments
-                null);                  //default sort order
+                null);                  //pages are always in the order of their uri
     }
 
     @Override
     public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
-        // update {@link BookCursorAdapter} with this new cursor containing updated book data.
-        mCursorAdapter.swapCursor(data);
+        int page = loader.getId() - BOOK_LOADER;
+        if (page >= mPages.size()) {
+            return;
+        }
+
+        // copy the rows out of the cursor, so the list can be compared off the main thread
+        List<Book> books = Book.fromCursor(data);
+
+        // if a reloaded page no longer ends on the same book (books were added or deleted
+        // in it), the pages after it don't start in the right place anymore.
+        List<Book> previous = mPages.get(page);
+        if (previous != null && lastId(previous) != lastId(books)) {
+            dropPagesAfter(page);
+        }
+        mPages.set(page, books);
+
+        // the first page of all the books is what the next launch shows before its query
+        if (page == 0 && isSnapshotList()) {
+            mShowingSnapshot = false;
+            updateSnapshot(books);
+        }
+
+        // update {@link BookCursorAdapter} with the pages containing updated book data.
+        showPages();
     }
 
     @Override
     public void onLoaderReset(Loader<Cursor> loader) {
         // callback called when the data needs to be deleted
-        mCursorAdapter.swapCursor(null);
+        int page = loader.getId() - BOOK_LOADER;
+        if (page < mPages.size()) {
+            mPages.set(page, null);
+        }
+        showPages();
+    }
+
+    // returns the _id of the last book in a page, or -1 if the page is empty
+    private static long lastId(List<Book> page) {
+        if (page.isEmpty()) {
+            return -1;
+        }
+        return page.get(page.size() - 1).id;
     }
 }
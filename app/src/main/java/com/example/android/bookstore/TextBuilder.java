@@ -0,0 +1,72 @@
+package com.example.android.bookstore;
+
+import android.widget.TextView;
+
+// {@link TextBuilder} puts a line of text together in a char array it keeps and reuses,
+// and hands the array to a TextView without making a String of it. Every TextView needs
+// its own builder: the TextView shows the array itself, so it may only change right
+// before the next applyTo.
+final class TextBuilder {
+
+    // the text, in the first mLength chars
+    private char[] mChars = new char[32];
+    private int mLength;
+
+    // start a new text
+    TextBuilder clear() {
+        mLength = 0;
+        return this;
+    }
+
+    // add a string to the end of the text
+    TextBuilder append(String value) {
+        int length = value.length();
+        ensureCapacity(mLength + length);
+        value.getChars(0, length, mChars, mLength);
+        mLength += length;
+        return this;
+    }
+
+    // add the decimal digits of a number to the end of the text
+    TextBuilder append(int value) {
+        // an int has at most 10 digits and a sign
+        ensureCapacity(mLength + 11);
+        long rest = value;
+        if (rest < 0) {
+            mChars[mLength++] = '-';
+            rest = -rest;
+        }
+
+        // write the digits backwards and then turn them around
+        int start = mLength;
+        do {
+            mChars[mLength++] = (char) ('0' + rest % 10);
+            rest /= 10;
+        } while (rest != 0);
+        for (int i = start, j = mLength - 1; i < j; i++, j--) {
+            char c = mChars[i];
+            mChars[i] = mChars[j];
+            mChars[j] = c;
+        }
+        return this;
+    }
+
+    // show the text in the view
+    void applyTo(TextView view) {
+        view.setText(mChars, 0, mLength);
+    }
+
+    // returns the text as a string, for tests
+    @Override
+    public String toString() {
+        return new String(mChars, 0, mLength);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > mChars.length) {
+            char[] chars = new char[Math.max(capacity, mChars.length * 2)];
+            System.arraycopy(mChars, 0, chars, 0, mLength);
+            mChars = chars;
+        }
+    }
+}
@@ -1,9 +1,15 @@
 package com.example.android.bookstore.data;
 
 import android.content.ContentResolver;
+import android.content.ContentUris;
 import android.net.Uri;
+import android.os.Bundle;
+import android.os.ParcelFileDescriptor;
+import android.os.ResultReceiver;
 import android.provider.BaseColumns;
 
+import com.example.android.bookstore.core.BookSchema;
+
 public final class BookContract {
 
     // string constant for the content authority
@@ -15,6 +21,24 @@ public final class BookContract {
     // store the path for each table
     public static final String PATH_BOOKS = "books";
 
+    // path for full-text search of the books, under PATH_BOOKS
+    public static final String PATH_SEARCH = "search";
+
+    // path for selling one copy of a book, under the book's URI
+    public static final String PATH_SELL = "sell";
+
+    // path for the inventory statistics, under PATH_BOOKS
+    public static final String PATH_STATS = "stats";
+
+    // path for the books that are running low, under PATH_BOOKS
+    public static final String PATH_LOW_STOCK = "low_stock";
+
+    // path for the CSV export of the books, under PATH_BOOKS
+    public static final String PATH_EXPORT = "export";
+
+    // path for the latency metrics of the provider, under PATH_BOOKS
+    public static final String PATH_METRICS = "metrics";
+
     // to prevent someone from accidentally instantiating the contract class,
     // give it an empty constructor.
     private BookContract() {}
@@ -33,13 +57,363 @@ public final class BookContract {
         public static final String CONTENT_ITEM_TYPE = ContentResolver.CURSOR_ITEM_BASE_TYPE
                 + "/" + CONTENT_AUTHORITY + "/" + PATH_BOOKS;
 
-        // string constants for the columns
-        public static final String TABLE_NAME = "books";
-        public static final String COLUMN_PRODUCT_NAME = "product";
-        public static final String COLUMN_PRICE = "price";
-        public static final String COLUMN_QUANTITY = "quantity";
-        public static final String COLUMN_SUPPLIER_NAME = "supplier";
-        public static final String COLUMN_SUPPLIER_PHONE_NUMBER = "phone";
+        // full-text search table for the title and supplier columns
+        public static final String SEARCH_TABLE_NAME = BookSchema.TABLE_BOOKS_SEARCH;
+
+        // string constants for the columns, from the schema in the core module
+        public static final String TABLE_NAME = BookSchema.TABLE_BOOKS;
+        public static final String COLUMN_PRODUCT_NAME = BookSchema.COLUMN_PRODUCT_NAME;
+        public static final String COLUMN_PRICE = BookSchema.COLUMN_PRICE;
+        public static final String COLUMN_QUANTITY = BookSchema.COLUMN_QUANTITY;
+        public static final String COLUMN_SUPPLIER_NAME = BookSchema.COLUMN_SUPPLIER_NAME;
+        public static final String COLUMN_SUPPLIER_PHONE_NUMBER = BookSchema.COLUMN_SUPPLIER_PHONE_NUMBER;
+
+        // query parameters for reading the books table one page at a time. a page starts
+        // right after the last row of the previous page (keyset pagination), so reading a
+        // page costs the same no matter how deep into the table it is.
+        //
+        // for example "content://com.example.android.bookstore/books?limit=50&after_id=120"
+        // reads the 50 books that come after the book with ID 120.
+
+        // maximum number of rows in the page
+        public static final String QUERY_PARAM_LIMIT = "limit";
+
+        // order of the pages, one of the SORT_BY_* values. defaults to SORT_BY_ID
+        public static final String QUERY_PARAM_SORT = "sort";
+
+        // _id of the last row of the previous page. left out for the first page
+        public static final String QUERY_PARAM_AFTER_ID = "after_id";
+
+        // sort key (e.g. the title) of the last row of the previous page. only needed
+        // when the pages are not sorted by _id
+        public static final String QUERY_PARAM_AFTER_KEY = "after_key";
+
+        // page orders for QUERY_PARAM_SORT. every order has an index, so a page is read in
+        // order and never sorted: by _id, by title A-Z ignoring case, by price as a number
+        // (the cheapest first) and by quantity (the fewest copies first). the price index
+        // needs API 24, before that the pages sorted by price are sorted by SQLite.
+        public static final String SORT_BY_ID = "id";
+        public static final String SORT_BY_TITLE = "title";
+        public static final String SORT_BY_PRICE = "price";
+        public static final String SORT_BY_QUANTITY = "quantity";
+
+        // query parameters of a page that only has the books in a price or quantity range,
+        // with any page order. the bounds are included, and either one may be left out. a
+        // range of the sort key of the page seeks in its index, so the page costs the same
+        // however many books are outside the range. see withPriceRange and withQuantityRange.
+        public static final String QUERY_PARAM_MIN_PRICE = "min_price";
+        public static final String QUERY_PARAM_MAX_PRICE = "max_price";
+        public static final String QUERY_PARAM_MIN_QUANTITY = "min_quantity";
+        public static final String QUERY_PARAM_MAX_QUANTITY = "max_quantity";
+
+        // number of rows in a page when the caller doesn't need a specific size
+        public static final int DEFAULT_PAGE_SIZE = 50;
+
+        // largest page the provider will return
+        public static final int MAX_PAGE_SIZE = 500;
+
+        // provider method that sells one copy of a book, see {@link #sellBook}
+        public static final String METHOD_SELL = "sell";
+
+        // key of the quantity left in stock, in the result of METHOD_SELL
+        public static final String KEY_QUANTITY = "quantity";
+
+        // URI of all the books as a CSV file, read with ContentResolver.openInputStream. the
+        // file is written while it is read, so exporting a big catalog takes little memory.
+        public static final Uri EXPORT_URI = Uri.withAppendedPath(CONTENT_URI, PATH_EXPORT);
+
+        // the MIME type of the {@link EXPORT_URI} and of the files importCsv reads
+        public static final String CONTENT_CSV_TYPE = "text/csv";
+
+        // provider method that imports books from a CSV file, see {@link #importCsv}
+        public static final String METHOD_IMPORT_CSV = "import_csv";
+
+        // keys of the extras of METHOD_IMPORT_CSV: the file to read, an optional ResultReceiver
+        // for the progress, and the optional number of books written per transaction
+        public static final String KEY_FILE = "file";
+        public static final String KEY_PROGRESS = "progress";
+        public static final String KEY_CHUNK_SIZE = "chunk_size";
+
+        // keys of the result of METHOD_IMPORT_CSV, and of the progress: the number of books
+        // imported and rejected (ints), and the line the import has reached (long). the
+        // result also has the line numbers of the first rejected records (long array).
+        public static final String KEY_IMPORTED = "imported";
+        public static final String KEY_REJECTED = "rejected";
+        public static final String KEY_LINE = "line";
+        public static final String KEY_REJECTED_LINES = "rejected_lines";
+
+        // result code of the progress sent to the ResultReceiver of METHOD_IMPORT_CSV
+        public static final int RESULT_IMPORT_PROGRESS = 1;
+
+        // provider method that changes the stock of several books in one transaction, see
+        // {@link #adjustQuantities}
+        public static final String METHOD_ADJUST_QUANTITIES = "adjust_quantities";
+
+        // keys of the extras of METHOD_ADJUST_QUANTITIES: the _ids of the books as a long
+        // array, and the number of copies to add to each as an int array (negative to take
+        // copies out of stock)
+        public static final String KEY_IDS = "ids";
+        public static final String KEY_DELTAS = "deltas";
+
+        // key of the result of METHOD_ADJUST_QUANTITIES: the quantity each book was left
+        // with as an int array, -1 for a book that doesn't exist
+        public static final String KEY_QUANTITIES = "quantities";
+
+        // URI of the inventory statistics: one row with the columns below. they are kept up
+        // to date on every write, so reading them costs the same however many books there are.
+        public static final Uri STATS_URI = Uri.withAppendedPath(CONTENT_URI, PATH_STATS);
+
+        // the MIME type of the {@link STATS_URI}
+        public static final String CONTENT_STATS_TYPE = ContentResolver.CURSOR_ITEM_BASE_TYPE
+                + "/" + CONTENT_AUTHORITY + "/" + PATH_BOOKS + "/" + PATH_STATS;
+
+        // string constants for the columns of the statistics
+        public static final String COLUMN_TITLE_COUNT = BookSchema.COLUMN_TITLE_COUNT;
+        public static final String COLUMN_TOTAL_UNITS = BookSchema.COLUMN_TOTAL_UNITS;
+        public static final String COLUMN_TOTAL_VALUE = BookSchema.COLUMN_TOTAL_VALUE;
+        public static final String COLUMN_LOW_STOCK_COUNT = BookSchema.COLUMN_LOW_STOCK_COUNT;
+
+        // a book with fewer copies than this counts in COLUMN_LOW_STOCK_COUNT
+        public static final int LOW_STOCK_THRESHOLD = BookSchema.LOW_STOCK_THRESHOLD;
+
+        // URI of the books that are running low, the fewest copies first. takes the
+        // QUERY_PARAM_THRESHOLD and QUERY_PARAM_LIMIT parameters, see buildLowStockUri.
+        public static final Uri LOW_STOCK_URI = Uri.withAppendedPath(CONTENT_URI, PATH_LOW_STOCK);
+
+        // query parameter of LOW_STOCK_URI: books with fewer copies than this are running
+        // low. defaults to LOW_STOCK_THRESHOLD
+        public static final String QUERY_PARAM_THRESHOLD = "threshold";
+
+        // provider method that compares the statistics with a full scan of the books and
+        // rebuilds them if they differ
+        public static final String METHOD_CHECK_STATS = "check_stats";
+
+        // key of the result of METHOD_CHECK_STATS: false if the statistics had to be rebuilt
+        public static final String KEY_STATS_CONSISTENT = "consistent";
+
+        // provider method that returns the counters of the provider's cache of single books.
+        // the size of the cache is set by the book_row_cache_size integer resource.
+        public static final String METHOD_CACHE_STATS = "cache_stats";
+
+        // keys of the result of METHOD_CACHE_STATS, all longs
+        public static final String KEY_CACHE_HITS = "hits";
+        public static final String KEY_CACHE_MISSES = "misses";
+        public static final String KEY_CACHE_EVICTIONS = "evictions";
+        public static final String KEY_CACHE_ROWS = "rows";
+        public static final String KEY_CACHE_SIZE = "size";
+        public static final String KEY_CACHE_MAX_SIZE = "max_size";
+
+        // URI of the metrics of the provider: one row for every URI and operation that has
+        // been counted since the metrics were turned on, with the columns below. the metrics
+        // are on in debug builds and turned on and off with METHOD_SET_METRICS. they are
+        // also written by dumpsys, e.g.
+        // adb shell dumpsys activity provider com.example.android.bookstore/.data.BookProvider
+        public static final Uri METRICS_URI = Uri.withAppendedPath(CONTENT_URI, PATH_METRICS);
+
+        // the MIME type of the {@link METRICS_URI}
+        public static final String CONTENT_METRICS_TYPE = ContentResolver.CURSOR_DIR_BASE_TYPE
+                + "/" + CONTENT_AUTHORITY + "/" + PATH_BOOKS + "/" + PATH_METRICS;
+
+        // string constants for the columns of the metrics: the URI (e.g. "books" or
+        // "book_id") and operation (e.g. "query") they count, the number of operations and
+        // of failed ones, the rows returned or changed in total and by the largest one, and
+        // the latency in microseconds
+        public static final String METRICS_COLUMN_URI = "uri";
+        public static final String METRICS_COLUMN_OPERATION = "operation";
+        public static final String METRICS_COLUMN_COUNT = "count";
+        public static final String METRICS_COLUMN_FAILED = "failed";
+        public static final String METRICS_COLUMN_ROWS = "rows";
+        public static final String METRICS_COLUMN_MAX_ROWS = "max_rows";
+        public static final String METRICS_COLUMN_MEAN_MICROS = "mean_micros";
+        public static final String METRICS_COLUMN_P50_MICROS = "p50_micros";
+        public static final String METRICS_COLUMN_P90_MICROS = "p90_micros";
+        public static final String METRICS_COLUMN_P99_MICROS = "p99_micros";
+        public static final String METRICS_COLUMN_MAX_MICROS = "max_micros";
+
+        // provider method that turns the metrics on or off
+        public static final String METHOD_SET_METRICS = "set_metrics";
+
+        // keys of the extras of METHOD_SET_METRICS, both booleans: whether the metrics are
+        // on, and whether to forget what was counted so far
+        public static final String KEY_METRICS_ENABLED = "enabled";
+        public static final String KEY_METRICS_RESET = "reset";
+
+        // optional key of the extras of METHOD_SET_METRICS: statements that take at least
+        // this many milliseconds (long) go into the slow query log, 0 for every statement and
+        // -1 for none. the log is written by dumpsys with the query plan of every statement,
+        // and KEY_METRICS_RESET clears it too. the default is the book_slow_query_millis
+        // integer resource.
+        public static final String KEY_SLOW_QUERY_MILLIS = "slow_query_millis";
+
+        /**
+         * build the URI of the books with fewer copies than the given threshold. thresholds
+         * up to {@link BookSchema#LOW_STOCK_INDEX_LIMIT} are answered from a small index of
+         * just those books.
+         *
+         * @param threshold the books with fewer copies than this are returned
+         */
+        public static Uri buildLowStockUri(int threshold) {
+            return LOW_STOCK_URI.buildUpon()
+                    .appendQueryParameter(QUERY_PARAM_THRESHOLD, String.valueOf(threshold))
+                    .build();
+        }
+
+        /**
+         * build the URI that sells one copy of a book when it is updated. the update
+         * changes 1 row if the book was in stock and 0 rows if it wasn't.
+         * for example "content://com.example.android.bookstore/books/3/sell"
+         *
+         * @param id of the book to sell
+         */
+        public static Uri buildSellUri(long id) {
+            return ContentUris.withAppendedId(CONTENT_URI, id).buildUpon().appendPath(PATH_SELL).build();
+        }
+
+        /**
+         * sell one copy of a book. the quantity is only taken down if there is stock left,
+         * in one statement, so two sales at the same time can't both sell the last copy.
+         *
+         * @param resolver to reach the provider through
+         * @param id       of the book to sell
+         * @return the quantity left in stock, or -1 if the book was out of stock or doesn't exist
+         */
+        public static int sellBook(ContentResolver resolver, long id) {
+            Bundle result = resolver.call(CONTENT_URI, METHOD_SELL, String.valueOf(id), null);
+            return result == null ? -1 : result.getInt(KEY_QUANTITY, -1);
+        }
+
+        /**
+         * change the stock of several books at once. every book gets one relative UPDATE, and
+         * they all run in one transaction. the stock of a book stops at zero, so taking more
+         * copies out than there are leaves it empty.
+         *
+         * @param resolver to reach the provider through
+         * @param ids      of the books to change
+         * @param deltas   number of copies to add to each book, negative to take them out
+         * @return the quantity each book was left with, -1 for a book that doesn't exist
+         */
+        public static int[] adjustQuantities(ContentResolver resolver, long[] ids, int[] deltas) {
+            Bundle extras = new Bundle();
+            extras.putLongArray(KEY_IDS, ids);
+            extras.putIntArray(KEY_DELTAS, deltas);
+            Bundle result = resolver.call(CONTENT_URI, METHOD_ADJUST_QUANTITIES, null, extras);
+            return result.getIntArray(KEY_QUANTITIES);
+        }
+
+        /**
+         * import the books of a CSV file: a header line with the column names (product,
+         * price, quantity, supplier, phone, in any order), then one line per book. the books
+         * are written in transactions of a bounded number of lines, so the books of the
+         * transactions that were committed stay if the import fails later on. a line that
+         * isn't a valid book is skipped and counted. the provider closes the file.
+         *
+         * @param resolver to reach the provider through
+         * @param file     the CSV file, in UTF-8
+         * @param progress gets a RESULT_IMPORT_PROGRESS after every transaction, may be null
+         * @return the KEY_IMPORTED, KEY_REJECTED and KEY_REJECTED_LINES of the import
+         */
+        public static Bundle importCsv(ContentResolver resolver, ParcelFileDescriptor file,
+                                       ResultReceiver progress) {
+            Bundle extras = new Bundle();
+            extras.putParcelable(KEY_FILE, file);
+            extras.putParcelable(KEY_PROGRESS, progress);
+            return resolver.call(CONTENT_URI, METHOD_IMPORT_CSV, null, extras);
+        }
+
+        /**
+         * build the URI that searches the titles and suppliers of the books. every word of the
+         * query must appear, and a word matches any word that starts with it. books whose title
+         * matches come before books that only match by supplier.
+         * for example "content://com.example.android.bookstore/books/search/giv%20pen"
+         *
+         * @param query the words to search for, as the user typed them
+         */
+        public static Uri buildSearchUri(String query) {
+            return CONTENT_URI.buildUpon().appendPath(PATH_SEARCH).appendPath(query).build();
+        }
+
+        /**
+         * build the URI for a page of books sorted by _id.
+         *
+         * @param afterId _id of the last book of the previous page, or -1 for the first page
+         * @param limit   maximum number of books in the page
+         */
+        public static Uri buildPageUri(long afterId, int limit) {
+            Uri.Builder builder = CONTENT_URI.buildUpon()
+                    .appendQueryParameter(QUERY_PARAM_LIMIT, String.valueOf(limit));
+            if (afterId >= 0) {
+                builder.appendQueryParameter(QUERY_PARAM_AFTER_ID, String.valueOf(afterId));
+            }
+            return builder.build();
+        }
+
+        /**
+         * build the URI for a page of books sorted by title.
+         *
+         * @param afterTitle title of the last book of the previous page, or null for the first page
+         * @param afterId    _id of the last book of the previous page, ignored for the first page
+         * @param limit      maximum number of books in the page
+         */
+        public static Uri buildTitlePageUri(String afterTitle, long afterId, int limit) {
+            return buildSortedPageUri(SORT_BY_TITLE, afterTitle, afterId, limit);
+        }
+
+        /**
+         * build the URI for a page of books in one of the orders of {@link #QUERY_PARAM_SORT}.
+         *
+         * @param sort     one of the SORT_BY_* values
+         * @param afterKey sort key of the last book of the previous page: its title, price or
+         *                 quantity as they are stored. null for the first page
+         * @param afterId  _id of the last book of the previous page, ignored for the first page
+         * @param limit    maximum number of books in the page
+         */
+        public static Uri buildSortedPageUri(String sort, String afterKey, long afterId, int limit) {
+            if (SORT_BY_ID.equals(sort)) {
+                return buildPageUri(afterKey == null ? -1 : afterId, limit);
+            }
+            Uri.Builder builder = CONTENT_URI.buildUpon()
+                    .appendQueryParameter(QUERY_PARAM_LIMIT, String.valueOf(limit))
+                    .appendQueryParameter(QUERY_PARAM_SORT, sort);
+            if (afterKey != null) {
+                builder.appendQueryParameter(QUERY_PARAM_AFTER_KEY, afterKey)
+                        .appendQueryParameter(QUERY_PARAM_AFTER_ID, String.valueOf(afterId));
+            }
+            return builder.build();
+        }
+
+        /**
+         * add a price range to the URI of a page.
+         *
+         * @param minPrice the lowest price, or Double.NEGATIVE_INFINITY for no lower bound
+         * @param maxPrice the highest price, or Double.POSITIVE_INFINITY for no upper bound
+         */
+        public static Uri withPriceRange(Uri pageUri, double minPrice, double maxPrice) {
+            Uri.Builder builder = pageUri.buildUpon();
+            if (minPrice != Double.NEGATIVE_INFINITY) {
+                builder.appendQueryParameter(QUERY_PARAM_MIN_PRICE, String.valueOf(minPrice));
+            }
+            if (maxPrice != Double.POSITIVE_INFINITY) {
+                builder.appendQueryParameter(QUERY_PARAM_MAX_PRICE, String.valueOf(maxPrice));
+            }
+            return builder.build();
+        }
+
+        /**
+         * add a quantity range to the URI of a page.
+         *
+         * @param minQuantity the fewest copies, or 0 for no lower bound
+         * @param maxQuantity the most copies, or Integer.MAX_VALUE for no upper bound
+         */
+        public static Uri withQuantityRange(Uri pageUri, int minQuantity, int maxQuantity) {
+            Uri.Builder builder = pageUri.buildUpon();
+            if (minQuantity > 0) {
+                builder.appendQueryParameter(QUERY_PARAM_MIN_QUANTITY, String.valueOf(minQuantity));
+            }
+            if (maxQuantity != Integer.MAX_VALUE) {
+                builder.appendQueryParameter(QUERY_PARAM_MAX_QUANTITY, String.valueOf(maxQuantity));
+            }
+            return builder.build();
+        }
 
     }
 
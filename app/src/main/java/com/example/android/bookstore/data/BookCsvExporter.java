@@ -0,0 +1,59 @@
+package com.example.android.bookstore.data;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.example.android.bookstore.core.BookCsv;
+import com.example.android.bookstore.core.BookQueries;
+
+import java.io.IOException;
+
+/**
+ * {@link BookCsvExporter} writes the books table as CSV (see {@link BookCsv}). The books are
+ * read in pages sorted by _id, each page starting after the last _id of the one before, so
+ * only one page is in memory at a time and every page is a seek in the table rather than a
+ * rescan from the start. A book changed during the export is written as it was when its
+ * page was read.
+ */
+final class BookCsvExporter {
+
+    // books read per query
+    static final int PAGE_SIZE = 1000;
+
+    // to prevent someone from accidentally instantiating the exporter class,
+    // give it an empty constructor.
+    private BookCsvExporter() {}
+
+    /**
+     * write the header and then every book to the stream. the caller buffers and closes it.
+     *
+     * @return the number of books written
+     */
+    static long export(SQLiteDatabase database, Appendable out) throws IOException {
+        BookCsv.Writer writer = new BookCsv.Writer(out);
+        writer.writeHeader();
+
+        String[] args = { "-1", String.valueOf(PAGE_SIZE) };
+        long count = 0;
+        int rows;
+        do {
+            Cursor cursor = database.rawQuery(BookQueries.SQL_EXPORT_PAGE, args);
+            try {
+                rows = cursor.getCount();
+                while (cursor.moveToNext()) {
+                    writer.field(cursor.getString(0))
+                            .field(cursor.getString(1))
+                            .field(cursor.getLong(2))
+                            .field(cursor.getString(3))
+                            .field(cursor.getString(4))
+                            .endRecord();
+                    args[0] = cursor.getString(5);
+                }
+            } finally {
+                cursor.close();
+            }
+            count += rows;
+        } while (rows == PAGE_SIZE);
+        return count;
+    }
+}
@@ -0,0 +1,180 @@
+package com.example.android.bookstore.data;
+
+import android.content.ContentValues;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import com.example.android.bookstore.core.BookCsv;
+import com.example.android.bookstore.core.BookQueries;
+import com.example.android.bookstore.core.BookValidator;
+import com.example.android.bookstore.data.BookContract.BookEntry;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * {@link BookCsvImporter} reads books from a CSV stream (see {@link BookCsv}) into the books
+ * table. The records are read one at a time and written in transactions of a fixed number of
+ * records, so the memory it takes and the time it holds the database for other writers stay
+ * the same however long the file is. A record that isn't a valid book is skipped and counted,
+ * and the line numbers of the first ones are kept to show where the file is wrong.
+ *
+ * If the stream fails, the transactions already committed stay in the table and the one in
+ * progress is rolled back.
+ */
+final class BookCsvImporter {
+
+    // records written per transaction when the caller doesn't choose
+    static final int DEFAULT_CHUNK_SIZE = 1000;
+
+    // most line numbers of rejected records that are kept
+    static final int MAX_REPORTED_REJECTS = 100;
+
+    // receives the progress of an import after every committed transaction
+    interface ProgressListener {
+        void onProgress(long lineNumber, int imported, int rejected);
+    }
+
+    private final SQLiteDatabase mDatabase;
+
+    // records per transaction
+    private final int mChunkSize;
+
+    // books committed to the table, and records rejected
+    private int mImported;
+    private int mRejected;
+
+    // line numbers of the first MAX_REPORTED_REJECTS rejected records
+    private final long[] mRejectedLines = new long[MAX_REPORTED_REJECTS];
+
+    /**
+     * construct a new {@link BookCsvImporter}.
+     *
+     * @param database  the writable database to import into
+     * @param chunkSize the number of records written per transaction
+     */
+    BookCsvImporter(SQLiteDatabase database, int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Import chunk size must be positive " + chunkSize);
+        }
+        mDatabase = database;
+        mChunkSize = chunkSize;
+    }
+
+    /**
+     * import every record of a CSV stream. the first record must be the header, which says
+     * which field holds which column. the caller closes the stream.
+     *
+     * @param listener told about the progress after every transaction, may be null
+     * @throws IllegalArgumentException if the header has none of the book columns
+     */
+    void importFrom(Reader in, ProgressListener listener) throws IOException {
+        BookCsv.Reader csv = new BookCsv.Reader(in);
+
+        // find the header, after any blank lines
+        do {
+            if (!csv.next()) {
+                return;
+            }
+        } while (csv.isBlank());
+        int[] columns = BookCsv.mapHeader(csv);
+
+        // one set of values and one compiled insert for every record
+        ContentValues values = new ContentValues();
+        SQLiteStatement statement = mDatabase.compileStatement(BookQueries.SQL_INSERT);
+        try {
+            boolean more = true;
+            while (more) {
+                int records = 0;
+                int imported = 0;
+                mDatabase.beginTransaction();
+                try {
+                    while (records < mChunkSize && (more = csv.next())) {
+                        if (csv.isBlank()) {
+                            continue;
+                        }
+                        records++;
+                        if (readBook(csv, columns, values) && insert(statement, values)) {
+                            imported++;
+                        } else {
+                            reject(csv.lineNumber());
+                        }
+                    }
+                    mDatabase.setTransactionSuccessful();
+                } finally {
+                    mDatabase.endTransaction();
+                }
+
+                mImported += imported;
+                if (listener != null && records > 0) {
+                    listener.onProgress(csv.lineNumber(), mImported, mRejected);
+                }
+            }
+        } finally {
+            statement.close();
+        }
+    }
+
+    // returns the number of books committed to the table
+    int getImportedCount() {
+        return mImported;
+    }
+
+    // returns the number of records that weren't valid books
+    int getRejectedCount() {
+        return mRejected;
+    }
+
+    // returns the line numbers of the first MAX_REPORTED_REJECTS rejected records
+    long[] getRejectedLines() {
+        return Arrays.copyOf(mRejectedLines, Math.min(mRejected, MAX_REPORTED_REJECTS));
+    }
+
+    // put the fields of the current record into the values of a new book. returns false if
+    // the record isn't a valid book.
+    private static boolean readBook(BookCsv.Reader csv, int[] columns, ContentValues values) {
+        values.clear();
+        for (int i = 0; i < columns.length; i++) {
+            if (columns[i] < 0 || columns[i] >= csv.fieldCount()) {
+                continue;
+            }
+            // an empty field is a missing value, like a column the file doesn't have
+            String value = csv.field(columns[i]).trim();
+            String column = BookCsv.COLUMNS[i];
+            if (value.isEmpty()) {
+                continue;
+            }
+            if (!column.equals(BookEntry.COLUMN_QUANTITY)) {
+                values.put(column, value);
+            } else {
+                try {
+                    values.put(column, Integer.parseInt(value));
+                } catch (NumberFormatException e) {
+                    return false;
+                }
+            }
+        }
+        return BookValidator.validateInsert(values, ContentValuesReader.INSTANCE) == BookValidator.VALID;
+    }
+
+    // insert one book. a book that breaks a table constraint is rejected, the rest of the
+    // transaction carries on.
+    private static boolean insert(SQLiteStatement statement, ContentValues values) {
+        BookStatements.bindInsert(statement, values);
+        try {
+            statement.executeInsert();
+            return true;
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void reject(long lineNumber) {
+        if (mRejected < MAX_REPORTED_REJECTS) {
+            mRejectedLines[mRejected] = lineNumber;
+        }
+        mRejected++;
+    }
+}
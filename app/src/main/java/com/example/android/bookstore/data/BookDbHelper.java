@@ -1,11 +1,14 @@
 package com.example.android.bookstore.data;
 
 import android.content.Context;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Build;
+import android.support.v4.os.TraceCompat;
 import android.util.Log;
 
-import com.example.android.bookstore.data.BookContract.BookEntry;
+import com.example.android.bookstore.core.BookSchema;
 
 public class BookDbHelper extends SQLiteOpenHelper {
 
@@ -13,10 +16,32 @@ public class BookDbHelper extends SQLiteOpenHelper {
     public static final String TAG = BookDbHelper.class.getSimpleName();
 
     // name of database file
-    private static final String DATABASE_NAME = "bookstore.db";
+    static final String DATABASE_NAME = "bookstore.db";
 
-    // database version. If database schema is changed, increment database version
-    private static final int DATABASE_VERSION = 1;
+    // database version. If database schema is changed, increment the version in BookSchema
+    private static final int DATABASE_VERSION = BookSchema.VERSION;
+
+    // index names
+    public static final String INDEX_BOOKS_LIST = BookSchema.INDEX_BOOKS_LIST;
+    public static final String INDEX_BOOKS_SUPPLIER = BookSchema.INDEX_BOOKS_SUPPLIER;
+    public static final String INDEX_BOOKS_QUANTITY = BookSchema.INDEX_BOOKS_QUANTITY;
+    public static final String INDEX_BOOKS_LOW_STOCK = BookSchema.INDEX_BOOKS_LOW_STOCK;
+    public static final String INDEX_BOOKS_TITLE = BookSchema.INDEX_BOOKS_TITLE;
+    public static final String INDEX_BOOKS_PRICE = BookSchema.INDEX_BOOKS_PRICE;
+
+    // default number of pages the write-ahead log may grow to before SQLite copies it back
+    // into the database file (SQLite's own default)
+    public static final int DEFAULT_WAL_AUTOCHECKPOINT_PAGES = 1000;
+
+    // default size the write-ahead log is truncated to after a checkpoint, in bytes
+    public static final long DEFAULT_JOURNAL_SIZE_LIMIT = 4 * 1024 * 1024;
+
+    // checkpoint policy, applied every time the database is opened
+    private int mWalAutoCheckpointPages = DEFAULT_WAL_AUTOCHECKPOINT_PAGES;
+    private long mJournalSizeLimit = DEFAULT_JOURNAL_SIZE_LIMIT;
+
+    // compiled statements for the open database, made again every time it is opened
+    private BookStatements mStatements;
 
     /**
      * construct a new instance of {@link BookDbHelper}.
@@ -24,7 +49,102 @@ public class BookDbHelper extends SQLiteOpenHelper {
      * @param context of the app
      */
     public BookDbHelper(Context context) {
-        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        this(context, DATABASE_NAME);
+    }
+
+    /**
+     * construct a new instance of {@link BookDbHelper} for a database other than the
+     * app's one, for example in tests.
+     *
+     * @param context of the app
+     * @param name    of the database file, or null for an in-memory database
+     */
+    public BookDbHelper(Context context, String name) {
+        this(context, name, null);
+    }
+
+    /**
+     * construct a new instance of {@link BookDbHelper} that makes its cursors with the given
+     * factory, for example to time them.
+     *
+     * @param context of the app
+     * @param name    of the database file, or null for an in-memory database
+     * @param factory makes the cursors of the queries, or null for the default ones
+     */
+    public BookDbHelper(Context context, String name, SQLiteDatabase.CursorFactory factory) {
+        super(context, name, factory, DATABASE_VERSION);
+
+        // use write-ahead logging, so queries keep running on their own connections while
+        // a write is in progress instead of waiting for it to finish. older versions turn
+        // it on in onOpen.
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            setWriteAheadLoggingEnabled(true);
+        }
+    }
+
+    /**
+     * set when the write-ahead log is copied back into the database file. takes effect
+     * the next time the database is opened.
+     *
+     * @param autoCheckpointPages checkpoint once the log holds this many pages, 0 to only
+     *                            checkpoint when the database is closed
+     * @param journalSizeLimit    truncate the log to this many bytes after a checkpoint,
+     *                            -1 to never truncate it
+     */
+    public void setWalCheckpointPolicy(int autoCheckpointPages, long journalSizeLimit) {
+        mWalAutoCheckpointPages = autoCheckpointPages;
+        mJournalSizeLimit = journalSizeLimit;
+    }
+
+    // this is called every time the database is opened, after it is created or upgraded.
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        super.onOpen(db);
+        if (!db.isReadOnly()) {
+            if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
+                db.enableWriteAheadLogging();
+            }
+
+            // these pragmas return the value they set, so they have to run as queries
+            DatabaseUtils.longForQuery(db, "PRAGMA wal_autocheckpoint = " + mWalAutoCheckpointPages, null);
+            DatabaseUtils.longForQuery(db, "PRAGMA journal_size_limit = " + mJournalSizeLimit, null);
+        }
+
+        // the schema may have just been created or upgraded, so compile the statements
+        // against this database and drop the ones from before
+        synchronized (this) {
+            if (mStatements != null) {
+                mStatements.close();
+            }
+            mStatements = new BookStatements(db);
+        }
+    }
+
+    /**
+     * returns the compiled statements of the single-book operations, for the writable
+     * database. opens the database if it isn't open yet.
+     */
+    BookStatements getStatements() {
+        SQLiteDatabase db = getWritableDatabase();
+        synchronized (this) {
+            if (mStatements == null || mStatements.getDatabase() != db) {
+                // opened read-only before, and writable now without going through onOpen
+                if (mStatements != null) {
+                    mStatements.close();
+                }
+                mStatements = new BookStatements(db);
+            }
+            return mStatements;
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (mStatements != null) {
+            mStatements.close();
+            mStatements = null;
+        }
+        super.close();
     }
 
     /**
@@ -32,17 +152,14 @@ public class BookDbHelper extends SQLiteOpenHelper {
      */
     @Override
     public void onCreate(SQLiteDatabase db) {
-        // create a String that contains SQL statement to create the books table
-        String SQL_CREATE_BOOKS_TABLE = "CREATE TABLE " + BookEntry.TABLE_NAME + " ("
-                + BookEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
-                + BookEntry.COLUMN_PRODUCT_NAME + " TEXT NOT NULL, "
-                + BookEntry.COLUMN_PRICE + " TEXT NOT NULL, "
-                + BookEntry.COLUMN_QUANTITY + " INTERGER NOT NULL DEFAULT 0, "
-                + BookEntry.COLUMN_SUPPLIER_NAME + " TEXT NOT NULL, "
-                + BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER + " TEXT NOT NULL);";
-
-        // execute the SQL statement
-        db.execSQL(SQL_CREATE_BOOKS_TABLE);
+        // execute the SQL statements to create the books table, its indexes, and the
+        // search table with the triggers that keep it in sync
+        TraceCompat.beginSection("BookDbHelper.onCreate");
+        try {
+            execSQL(db, BookSchema.createStatements(supportsPartialIndexes(db), supportsExpressionIndexes(db)));
+        } finally {
+            TraceCompat.endSection();
+        }
 
         Log.v(TAG, "onCreate: this happened!!!!!!!!" );
     }
@@ -50,14 +167,35 @@ public class BookDbHelper extends SQLiteOpenHelper {
     // this is called when the database needs to be upgraded.
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        // the database is still version 1, so nothing to be done here
-        // used code from: https://thebhwgroup.com/blog/how-android-sqlite-onupgrade
-        // when new version is ready:
-        if (oldVersion < 2) {
-            // db.execSQL(DATABASE_ALTER_1);
+        // the steps of every version are in BookSchema, so the schema can be tested and
+        // benchmarked off the device
+        TraceCompat.beginSection("BookDbHelper.onUpgrade");
+        try {
+            execSQL(db, BookSchema.upgradeStatements(oldVersion,
+                    supportsPartialIndexes(db), supportsExpressionIndexes(db)));
+        } finally {
+            TraceCompat.endSection();
         }
-        if (oldVersion < 3) {
-            // db.execSQL(DATABASE_ALTER_2);
+    }
+
+    // check if the SQLite of this device supports partial indexes
+    private static boolean supportsPartialIndexes(SQLiteDatabase db) {
+        return BookSchema.supportsPartialIndexes(sqliteVersion(db));
+    }
+
+    // check if the SQLite of this device supports indexes on expressions
+    static boolean supportsExpressionIndexes(SQLiteDatabase db) {
+        return BookSchema.supportsExpressionIndexes(sqliteVersion(db));
+    }
+
+    private static String sqliteVersion(SQLiteDatabase db) {
+        return DatabaseUtils.stringForQuery(db, "SELECT sqlite_version()", null);
+    }
+
+    // run the statements in order. called inside the create or upgrade transaction.
+    private static void execSQL(SQLiteDatabase db, String[] statements) {
+        for (String statement : statements) {
+            db.execSQL(statement);
         }
     }
 
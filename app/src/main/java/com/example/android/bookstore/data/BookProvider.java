@@ -1,16 +1,53 @@
 package com.example.android.bookstore.data;
 
+import android.content.ClipDescription;
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentUris;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
+import android.content.res.Resources;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.MatrixCursor;
+import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteQueryBuilder;
+import android.database.sqlite.SQLiteStatement;
 import android.net.Uri;
+import android.os.Bundle;
+import android.os.Looper;
+import android.os.ParcelFileDescriptor;
+import android.os.ResultReceiver;
+import android.os.SystemClock;
+import android.support.v4.os.TraceCompat;
 import android.util.Log;
 
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import com.example.android.bookstore.BuildConfig;
+import com.example.android.bookstore.R;
+import com.example.android.bookstore.core.BookQueries;
+import com.example.android.bookstore.core.BookSchema;
+import com.example.android.bookstore.core.BookValidator;
+import com.example.android.bookstore.core.ProviderMetrics;
+import com.example.android.bookstore.core.RowCache;
+import com.example.android.bookstore.core.SlowQueryLog;
+
+import java.io.BufferedWriter;
+import java.io.FileDescriptor;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Set;
 
 import static com.example.android.bookstore.data.BookContract.*;
 
@@ -22,6 +59,55 @@ public class BookProvider extends ContentProvider {
     // URI matcher code for the content URI for a single book in the books table
     private static final int BOOK_ID = 101;
 
+    // URI matcher code for the content URI that searches the books table
+    private static final int BOOK_SEARCH = 102;
+
+    // URI matcher code for the content URI that sells one copy of a book
+    private static final int BOOK_SELL = 103;
+
+    // URI matcher code for the content URI of the inventory statistics
+    private static final int BOOK_STATS = 104;
+
+    // URI matcher code for the content URI of the books that are running low
+    private static final int BOOK_LOW_STOCK = 105;
+
+    // URI matcher code for the content URI of the CSV export
+    private static final int BOOK_EXPORT = 106;
+
+    // URI matcher code for the content URI of the provider metrics
+    private static final int BOOK_METRICS = 107;
+
+    // the names of the URI matcher codes in the metrics, in the order of the codes from BOOKS
+    private static final String[] METRICS_URI_NAMES = {
+            "books", "book_id", "book_search", "book_sell", "book_stats", "book_low_stock",
+            "book_export", "book_metrics"
+    };
+
+    // the operations counted in the metrics, and their names
+    private static final int OP_QUERY = 0;
+    private static final int OP_INSERT = 1;
+    private static final int OP_BULK_INSERT = 2;
+    private static final int OP_UPDATE = 3;
+    private static final int OP_DELETE = 4;
+    private static final String[] METRICS_OPERATION_NAMES = {
+            "query", "insert", "bulk_insert", "update", "delete"
+    };
+
+    // the columns of the metrics URI
+    private static final String[] METRICS_COLUMNS = {
+            BookEntry.METRICS_COLUMN_URI,
+            BookEntry.METRICS_COLUMN_OPERATION,
+            BookEntry.METRICS_COLUMN_COUNT,
+            BookEntry.METRICS_COLUMN_FAILED,
+            BookEntry.METRICS_COLUMN_ROWS,
+            BookEntry.METRICS_COLUMN_MAX_ROWS,
+            BookEntry.METRICS_COLUMN_MEAN_MICROS,
+            BookEntry.METRICS_COLUMN_P50_MICROS,
+            BookEntry.METRICS_COLUMN_P90_MICROS,
+            BookEntry.METRICS_COLUMN_P99_MICROS,
+            BookEntry.METRICS_COLUMN_MAX_MICROS
+    };
+
     // UriMatcher object to match a content URI to a corresponding code.
     // The input passed into the constructor represents the code to return for the
     // root URI. It's common to use NO_MATCH as the input for this case.
@@ -46,27 +132,198 @@ public class BookProvider extends ContentProvider {
         // For example, "content://com.example.android.bookstore/books/3" matches, but
         // "content://com.example.android.bookstore/books" (without a number at the end) doesn't match.
         sUriMatcher.addURI(CONTENT_AUTHORITY, PATH_BOOKS + "/#", BOOK_ID);
+
+        // The content URI of the form "content://com.example.android.bookstore/books/search/giver"
+        // will map to the integer code {@link #BOOK_SEARCH}. The last segment is the search query.
+        sUriMatcher.addURI(CONTENT_AUTHORITY, PATH_BOOKS + "/" + PATH_SEARCH + "/*", BOOK_SEARCH);
+
+        // The content URI of the form "content://com.example.android.bookstore/books/3/sell" will
+        // map to the integer code {@link #BOOK_SELL}. Updating it sells one copy of book 3.
+        sUriMatcher.addURI(CONTENT_AUTHORITY, PATH_BOOKS + "/#/" + PATH_SELL, BOOK_SELL);
+
+        // The content URI "content://com.example.android.bookstore/books/stats" will map to the
+        // integer code {@link #BOOK_STATS}.
+        sUriMatcher.addURI(CONTENT_AUTHORITY, PATH_BOOKS + "/" + PATH_STATS, BOOK_STATS);
+
+        // The content URI "content://com.example.android.bookstore/books/low_stock?threshold=5"
+        // will map to the integer code {@link #BOOK_LOW_STOCK}.
+        sUriMatcher.addURI(CONTENT_AUTHORITY, PATH_BOOKS + "/" + PATH_LOW_STOCK, BOOK_LOW_STOCK);
+
+        // The content URI "content://com.example.android.bookstore/books/export" will map to the
+        // integer code {@link #BOOK_EXPORT}. It is opened as a file, not queried.
+        sUriMatcher.addURI(CONTENT_AUTHORITY, PATH_BOOKS + "/" + PATH_EXPORT, BOOK_EXPORT);
+
+        // The content URI "content://com.example.android.bookstore/books/metrics" will map to
+        // the integer code {@link #BOOK_METRICS}. It returns the latency metrics of the provider.
+        sUriMatcher.addURI(CONTENT_AUTHORITY, PATH_BOOKS + "/" + PATH_METRICS, BOOK_METRICS);
     }
 
+    // the encoding of the CSV files
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    // size of the buffer between the CSV export and its pipe
+    private static final int EXPORT_BUFFER_SIZE = 16 * 1024;
+
+    // the columns of the list of MainActivity, which the warmup queries ahead of it
+    private static final String[] LIST_COLUMNS = {
+            BookEntry._ID,
+            BookEntry.COLUMN_PRODUCT_NAME,
+            BookEntry.COLUMN_PRICE,
+            BookEntry.COLUMN_QUANTITY
+    };
+
+    // the columns of a book in the row cache, in this order
+    private static final String[] CACHED_COLUMNS = {
+            BookEntry._ID,
+            BookEntry.COLUMN_PRODUCT_NAME,
+            BookEntry.COLUMN_PRICE,
+            BookEntry.COLUMN_QUANTITY,
+            BookEntry.COLUMN_SUPPLIER_NAME,
+            BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER
+    };
+
     private BookDbHelper mDbHelper;
 
+    // the most recently read single books, so opening a book again doesn't query the database
+    private RowCache mRowCache;
+
+    // batches change notifications so a burst of writes re-queries the listeners once
+    private NotificationCoalescer mNotifier;
+
+    // how long every operation on every URI takes, see {@link BookEntry#METRICS_URI}
+    private final ProviderMetrics mMetrics =
+            new ProviderMetrics(METRICS_URI_NAMES, METRICS_OPERATION_NAMES);
+
+    // the cursor factory of the database, which keeps the statements that were slow
+    private SlowQueryRecorder mSlowQueries;
+
+    // change notifications held back while applyBatch runs on the current thread.
+    // null when there is no batch, so notifications go out right away.
+    private final ThreadLocal<Set<Uri>> mPendingNotifications = new ThreadLocal<>();
+
+    // cache invalidations of the batch running on the current thread. the rows are dropped
+    // right away, and again once the batch has ended: until then other threads still read
+    // the old rows from the database and could put them back into the cache.
+    private final ThreadLocal<Set<Uri>> mPendingInvalidations = new ThreadLocal<>();
+
     // log tag for log messages
     public static final String TAG = BookProvider.class.getSimpleName();
 
+    // writes the CSV export into the pipe that openFile hands out. it runs on a background
+    // thread while the caller reads the other end.
+    private final PipeDataWriter<Void> mCsvExportWriter = new PipeDataWriter<Void>() {
+        @Override
+        public void writeDataToPipe(ParcelFileDescriptor output, Uri uri, String mimeType,
+                                    Bundle opts, Void args) {
+            // the pipe is closed by openPipeHelper once this returns
+            Writer out = new BufferedWriter(new OutputStreamWriter(
+                    new FileOutputStream(output.getFileDescriptor()), UTF_8), EXPORT_BUFFER_SIZE);
+            try {
+                long count = BookCsvExporter.export(mDbHelper.getReadableDatabase(), out);
+                out.flush();
+                Log.i(TAG, "writeDataToPipe: exported " + count + " books");
+            } catch (IOException e) {
+                // the reader closed its end before the end of the file
+                Log.w(TAG, "writeDataToPipe: export stopped", e);
+            }
+        }
+    };
+
     // initialize the provider and the database helper object.
     @Override
     public boolean onCreate() {
-        // make sure the variable is a global variable, so it can be referenced
-        // from other ContentProvider methods.
-        mDbHelper = new BookDbHelper(getContext());
-        return true;
+        TraceCompat.beginSection("BookProvider.onCreate");
+        try {
+            // make sure the variable is a global variable, so it can be referenced
+            // from other ContentProvider methods.
+            Resources resources = getContext().getResources();
+            mSlowQueries = new SlowQueryRecorder(new SlowQueryLog(
+                    resources.getInteger(R.integer.book_slow_query_log_size),
+                    resources.getInteger(R.integer.book_slow_query_millis)));
+            mDbHelper = new BookDbHelper(getContext(), BookDbHelper.DATABASE_NAME, mSlowQueries);
+            mNotifier = new NotificationCoalescer(getContext().getContentResolver(),
+                    Looper.getMainLooper(), NotificationCoalescer.DEFAULT_WINDOW_MILLIS);
+            mRowCache = new RowCache(getContext().getResources().getInteger(R.integer.book_row_cache_size));
+            mMetrics.setEnabled(BuildConfig.DEBUG);
+
+            // the provider is created when the process starts, so start opening the
+            // database now instead of in the first query
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    warmUp();
+                }
+            }, "BookProviderWarmup").start();
+            return true;
+        } finally {
+            TraceCompat.endSection();
+        }
     }
 
-    // perform the query for the given URI. Use the given projection, selection,
-    // selection arguments, and sort order.
+    /**
+     * Open the database and run the first page of the list query once, on a background
+     * thread while the app starts. Creating or upgrading the schema, compiling the statements
+     * and reading the first pages of the table from storage then happen before MainActivity
+     * asks for its list, instead of inside its first query. A query that comes in before the
+     * warmup is done waits for the database to open, as it would have anyway.
+     */
+    private void warmUp() {
+        try {
+            long start = SystemClock.uptimeMillis();
+            TraceCompat.beginSection("BookProvider.openDatabase");
+            try {
+                mDbHelper.getStatements();
+            } finally {
+                TraceCompat.endSection();
+            }
+            long opened = SystemClock.uptimeMillis();
+
+            TraceCompat.beginSection("BookProvider.firstQuery");
+            try {
+                Cursor cursor = query(BookEntry.buildPageUri(-1, BookEntry.DEFAULT_PAGE_SIZE),
+                        LIST_COLUMNS, null, null, null);
+                try {
+                    // the query runs when the cursor is first filled
+                    cursor.getCount();
+                } finally {
+                    cursor.close();
+                }
+            } finally {
+                TraceCompat.endSection();
+            }
+
+            Log.i(TAG, "warmUp: database opened in " + (opened - start) + "ms, first query took "
+                    + (SystemClock.uptimeMillis() - opened) + "ms");
+        } catch (RuntimeException e) {
+            // the first real query will run into the same problem and report it to its caller
+            Log.e(TAG, "warmUp: failed", e);
+        }
+    }
+
+    // perform the query for the given URI, and count it in the metrics
     @Override
     public Cursor query(Uri uri, String[] projection, String selection,
                         String[] selectionArgs, String sortOrder) {
+        long start = mMetrics.start();
+        if (start == 0) {
+            return queryUri(uri, projection, selection, selectionArgs, sortOrder);
+        }
+        int rows = -1;
+        try {
+            Cursor cursor = queryUri(uri, projection, selection, selectionArgs, sortOrder);
+            // SQLite runs the query when the cursor is first filled, so fill it here to count
+            // the time that takes and the rows it returns. the caller fills it next anyway.
+            rows = cursor.getCount();
+            return cursor;
+        } finally {
+            mMetrics.record(metricsUri(uri), OP_QUERY, start, rows);
+        }
+    }
+
+    // perform the query for the given URI. Use the given projection, selection,
+    // selection arguments, and sort order.
+    private Cursor queryUri(Uri uri, String[] projection, String selection,
+                            String[] selectionArgs, String sortOrder) {
         // get readable access
         SQLiteDatabase database = mDbHelper.getReadableDatabase();
 
@@ -77,6 +334,12 @@ public class BookProvider extends ContentProvider {
         int match = sUriMatcher.match(uri);
         switch (match) {
             case BOOKS:
+                // a URI with a limit asks for one page of the books table
+                if (uri.getQueryParameter(BookEntry.QUERY_PARAM_LIMIT) != null) {
+                    cursor = queryPage(database, uri, projection, selection, selectionArgs);
+                    break;
+                }
+
                 // for the BOOKS code, query the books table directly with the given
                 // projection, selection, selection arguments, and sort order.
                 // the cursor could contain multiple rows of the books table.
@@ -89,17 +352,40 @@ public class BookProvider extends ContentProvider {
                 // the selection will be "_id=?" and the selection argument wiil be a
                 // string array containing the actual ID of 3 in this case.
                 //
-                // For every "?" in the selection, we need to have an element in the
-                // selection arguments that will fill in the "?". since we have 1 question
-                // mark in the selection, we have 1 string in the selection arguments'
-                // string array.
-                selection = BookEntry._ID + "=?";
-                selectionArgs = new String[] { String.valueOf(ContentUris.parseId(uri)) };
-
+                // The "_id=?" query is compiled once and reused for every book, see
+                // {@link BookStatements}, and books that were read recently come out of
+                // the row cache without a query at all.
+                //
                 // this will perform a query on the books table where the _id = 3 to return
                 // a Cursor containing that row of the table.
-                cursor = database.query(BookEntry.TABLE_NAME, projection, selection, selectionArgs, null, null, sortOrder);
+                cursor = queryBookById(ContentUris.parseId(uri), projection);
                 break;
+            case BOOK_SEARCH:
+                // for the BOOK_SEARCH code, run the last segment of the URI through
+                // the full-text index. a write to any book can change the results, and it
+                // notifies that book's uri, never the search uri, so the cursor watches all
+                // the books.
+                cursor = searchBooks(database, uri, projection, selection, selectionArgs, sortOrder);
+                cursor.setNotificationUri(getContext().getContentResolver(), BookEntry.CONTENT_URI);
+                return cursor;
+            case BOOK_STATS:
+                // for the BOOK_STATS code, read the one row of statistics the triggers keep
+                // up to date. every write to a book changes them, so the cursor watches all
+                // the books instead of its own uri.
+                cursor = database.query(BookQueries.STATS_TABLE, projection, selection,
+                        selectionArgs, null, null, sortOrder);
+                cursor.setNotificationUri(getContext().getContentResolver(), BookEntry.CONTENT_URI);
+                return cursor;
+            case BOOK_LOW_STOCK:
+                // for the BOOK_LOW_STOCK code, read the books under the threshold. a sale of
+                // any book can add it to the list, so the cursor watches all the books.
+                cursor = queryLowStock(database, uri, projection, selection, selectionArgs, sortOrder);
+                cursor.setNotificationUri(getContext().getContentResolver(), BookEntry.CONTENT_URI);
+                return cursor;
+            case BOOK_METRICS:
+                // for the BOOK_METRICS code, return a copy of the metrics. they change with
+                // every operation, so nothing is notified about them.
+                return queryMetrics();
             default:
                 throw new IllegalArgumentException("Cannot query unknown URI " + uri);
         }
@@ -113,9 +399,420 @@ public class BookProvider extends ContentProvider {
         return cursor;
     }
 
-    // Insert new data into the provider with the given ContentValues.
+    /**
+     * Search the titles and suppliers of the books through the full-text index. Every word of
+     * the query must match, either as a whole word or as the start of one. Books that match
+     * with their title alone rank before books that need the supplier to match, and books of
+     * the same rank are sorted by title. The result is limited to
+     * {@link BookEntry#QUERY_PARAM_LIMIT} rows, or {@link BookEntry#MAX_PAGE_SIZE} by default.
+     */
+    private Cursor searchBooks(SQLiteDatabase database, Uri uri, String[] projection,
+                               String selection, String[] selectionArgs, String sortOrder) {
+        // turn the words of the query into prefix terms
+        String[] terms = BookQueries.searchTerms(uri.getLastPathSegment());
+
+        String limit = uri.getQueryParameter(BookEntry.QUERY_PARAM_LIMIT);
+        limit = String.valueOf(limit == null ? BookEntry.MAX_PAGE_SIZE : parsePageLimit(limit));
+
+        // a query without any words matches nothing
+        if (terms == null) {
+            return database.query(BookEntry.TABLE_NAME, projection, "0", null, null, null, null);
+        }
+
+        // rank the books matched by their title before the rest
+        SQLiteQueryBuilder builder = new SQLiteQueryBuilder();
+        builder.setTables(BookQueries.SEARCH_TABLES);
+
+        if (sortOrder == null) {
+            sortOrder = BookQueries.SEARCH_ORDER_BY;
+        }
+
+        // the two MATCH arguments come first, they are in the FROM clause
+        String[] args = concat(terms, selectionArgs);
+        return builder.query(database, projection, selection, args, null, null, sortOrder, limit);
+    }
+
+    /**
+     * Query one page of the books table. The page starts right after the row named by the
+     * {@link BookEntry#QUERY_PARAM_AFTER_ID} and {@link BookEntry#QUERY_PARAM_AFTER_KEY}
+     * parameters of the uri, so SQLite seeks straight to it instead of stepping over all the
+     * rows of the earlier pages like an OFFSET would. The caller's selection is kept, but the
+     * order is always the page order, so the next page can carry on where this one stopped.
+     * The price and quantity range parameters are added to the selection as arguments, never
+     * as SQL text.
+     */
+    private Cursor queryPage(SQLiteDatabase database, Uri uri, String[] projection,
+                             String selection, String[] selectionArgs) {
+        int limit = parsePageLimit(uri.getQueryParameter(BookEntry.QUERY_PARAM_LIMIT));
+
+        String sort = uri.getQueryParameter(BookEntry.QUERY_PARAM_SORT);
+        String afterId = uri.getQueryParameter(BookEntry.QUERY_PARAM_AFTER_ID);
+        String afterKey = uri.getQueryParameter(BookEntry.QUERY_PARAM_AFTER_KEY);
+
+        // the condition that skips the earlier pages and its arguments
+        String keyset = null;
+        String[] keysetArgs = null;
+        String orderBy;
+
+        if (sort == null || BookEntry.SORT_BY_ID.equals(sort)) {
+            orderBy = BookQueries.ORDER_BY_ID;
+            if (afterId != null) {
+                keyset = BookQueries.KEYSET_AFTER_ID;
+                keysetArgs = new String[] { String.valueOf(parseId(afterId, uri)) };
+            }
+        } else if (BookEntry.SORT_BY_TITLE.equals(sort)) {
+            // titles are not unique, so _id breaks the ties. the order ignores case, like
+            // the index it reads
+            orderBy = BookQueries.ORDER_BY_TITLE;
+            if (afterKey != null) {
+                // seek on the title, and skip the books with the same title that were
+                // already on the previous page
+                keyset = BookQueries.KEYSET_AFTER_TITLE;
+                keysetArgs = keysetArgs(afterKey, afterId, uri);
+            }
+        } else if (BookEntry.SORT_BY_PRICE.equals(sort)) {
+            orderBy = BookQueries.ORDER_BY_PRICE;
+            if (afterKey != null) {
+                // the price of the last book goes in as it is stored. SQLite turns it into a
+                // number the same way it turns the price column into the sort key, so the
+                // page starts in the right place even after a price that isn't a number
+                keyset = BookQueries.KEYSET_AFTER_PRICE;
+                keysetArgs = keysetArgs(afterKey, afterId, uri);
+            }
+        } else if (BookEntry.SORT_BY_QUANTITY.equals(sort)) {
+            orderBy = BookQueries.ORDER_BY_QUANTITY;
+            if (afterKey != null) {
+                keyset = BookQueries.KEYSET_AFTER_QUANTITY;
+                keysetArgs = keysetArgs(String.valueOf(parseQuantity(afterKey, uri)), afterId, uri);
+            }
+        } else {
+            throw new IllegalArgumentException("Cannot sort pages by " + sort + " " + uri);
+        }
+
+        // put the caller's selection, the keyset condition and the ranges together. a range
+        // of the sort key seeks in the index of the page, any other range is only checked on
+        // the rows the index returns
+        selection = and(selection, keyset);
+        selectionArgs = concat(selectionArgs, keysetArgs);
+
+        String minPrice = uri.getQueryParameter(BookEntry.QUERY_PARAM_MIN_PRICE);
+        String maxPrice = uri.getQueryParameter(BookEntry.QUERY_PARAM_MAX_PRICE);
+        if (minPrice != null || maxPrice != null) {
+            selection = and(selection, BookQueries.priceRange(minPrice != null, maxPrice != null,
+                    BookEntry.SORT_BY_PRICE.equals(sort)));
+            selectionArgs = concat(selectionArgs, rangeArgs(
+                    minPrice == null ? null : String.valueOf(parsePrice(minPrice, uri)),
+                    maxPrice == null ? null : String.valueOf(parsePrice(maxPrice, uri))));
+        }
+
+        String minQuantity = uri.getQueryParameter(BookEntry.QUERY_PARAM_MIN_QUANTITY);
+        String maxQuantity = uri.getQueryParameter(BookEntry.QUERY_PARAM_MAX_QUANTITY);
+        if (minQuantity != null || maxQuantity != null) {
+            selection = and(selection, BookQueries.quantityRange(minQuantity != null,
+                    maxQuantity != null, BookEntry.SORT_BY_QUANTITY.equals(sort)));
+            selectionArgs = concat(selectionArgs, rangeArgs(
+                    minQuantity == null ? null : String.valueOf(parseQuantity(minQuantity, uri)),
+                    maxQuantity == null ? null : String.valueOf(parseQuantity(maxQuantity, uri))));
+        }
+
+        return database.query(BookEntry.TABLE_NAME, projection, selection, selectionArgs,
+                null, null, orderBy, String.valueOf(limit));
+    }
+
+    // returns the arguments of a keyset condition: the sort key twice, then the _id that
+    // breaks the ties
+    private static String[] keysetArgs(String afterKey, String afterId, Uri uri) {
+        if (afterId == null) {
+            throw new IllegalArgumentException("Sorted page needs "
+                    + BookEntry.QUERY_PARAM_AFTER_ID + " " + uri);
+        }
+        return new String[] { afterKey, afterKey, String.valueOf(parseId(afterId, uri)) };
+    }
+
+    // returns the arguments of a range, leaving out the missing bound
+    private static String[] rangeArgs(String min, String max) {
+        if (min == null) {
+            return new String[] { max };
+        }
+        if (max == null) {
+            return new String[] { min };
+        }
+        return new String[] { min, max };
+    }
+
+    // returns the two conditions joined with AND, either of them may be null
+    private static String and(String selection, String condition) {
+        if (condition == null) {
+            return selection;
+        }
+        if (selection == null) {
+            return condition;
+        }
+        return "(" + selection + ") AND " + condition;
+    }
+
+    /**
+     * Query the books with fewer copies than the {@link BookEntry#QUERY_PARAM_THRESHOLD}
+     * parameter of the uri, the fewest copies first. The result is limited to
+     * {@link BookEntry#QUERY_PARAM_LIMIT} rows, or {@link BookEntry#MAX_PAGE_SIZE} by default.
+     */
+    private Cursor queryLowStock(SQLiteDatabase database, Uri uri, String[] projection,
+                                 String selection, String[] selectionArgs, String sortOrder) {
+        int threshold = BookEntry.LOW_STOCK_THRESHOLD;
+        String thresholdParam = uri.getQueryParameter(BookEntry.QUERY_PARAM_THRESHOLD);
+        if (thresholdParam != null) {
+            try {
+                threshold = Integer.parseInt(thresholdParam);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid threshold " + thresholdParam + " in " + uri);
+            }
+        }
+
+        String limit = uri.getQueryParameter(BookEntry.QUERY_PARAM_LIMIT);
+        limit = String.valueOf(limit == null ? BookEntry.MAX_PAGE_SIZE : parsePageLimit(limit));
+
+        // the threshold comes first, then the caller's selection
+        String lowStock = BookQueries.lowStockSelection(threshold);
+        String[] args = concat(new String[] { String.valueOf(threshold) }, selectionArgs);
+        if (selection != null) {
+            lowStock = lowStock + " AND (" + selection + ")";
+        }
+
+        if (sortOrder == null) {
+            sortOrder = BookQueries.ORDER_BY_LOW_STOCK;
+        }
+        return database.query(BookEntry.TABLE_NAME, projection, lowStock, args,
+                null, null, sortOrder, limit);
+    }
+
+    /**
+     * Read one book through the row cache. The cache holds whole books, so any projection of
+     * plain columns is served from it. A projection with anything else in it (for example an
+     * expression) goes to the database every time.
+     */
+    private Cursor queryBookById(long id, String[] projection) {
+        if (projection == null) {
+            projection = CACHED_COLUMNS;
+        }
+
+        // find the columns of the projection in the cached row
+        int[] columns = new int[projection.length];
+        for (int i = 0; i < projection.length; i++) {
+            columns[i] = indexOf(CACHED_COLUMNS, projection[i]);
+            if (columns[i] < 0) {
+                return mDbHelper.getStatements().queryById(id, projection);
+            }
+        }
+
+        Object[] row = mRowCache.get(id);
+        if (row == null) {
+            // remember the generation first, so the row is only kept if nothing changed
+            // the book while it was being read
+            long generation = mRowCache.generation();
+            row = readRow(id);
+            if (row == null) {
+                // no such book
+                return new MatrixCursor(projection, 0);
+            }
+            mRowCache.put(id, row, generation);
+        }
+
+        MatrixCursor cursor = new MatrixCursor(projection, 1);
+        MatrixCursor.RowBuilder builder = cursor.newRow();
+        for (int column : columns) {
+            builder.add(row[column]);
+        }
+        return cursor;
+    }
+
+    // read every cached column of one book from the database, or null if it doesn't exist
+    private Object[] readRow(long id) {
+        Cursor cursor = mDbHelper.getStatements().queryById(id, CACHED_COLUMNS);
+        try {
+            if (!cursor.moveToFirst()) {
+                return null;
+            }
+            Object[] row = new Object[CACHED_COLUMNS.length];
+            for (int i = 0; i < row.length; i++) {
+                // keep the type SQLite stored, so the cursor reads the same as the table
+                switch (cursor.getType(i)) {
+                    case Cursor.FIELD_TYPE_NULL:
+                        row[i] = null;
+                        break;
+                    case Cursor.FIELD_TYPE_INTEGER:
+                        row[i] = cursor.getLong(i);
+                        break;
+                    case Cursor.FIELD_TYPE_FLOAT:
+                        row[i] = cursor.getDouble(i);
+                        break;
+                    case Cursor.FIELD_TYPE_BLOB:
+                        row[i] = cursor.getBlob(i);
+                        break;
+                    default:
+                        row[i] = cursor.getString(i);
+                        break;
+                }
+            }
+            return row;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    // returns one row for every URI and operation that has been counted in the metrics
+    private Cursor queryMetrics() {
+        MatrixCursor cursor = new MatrixCursor(METRICS_COLUMNS);
+        for (int uri = 0; uri < mMetrics.getUriCount(); uri++) {
+            for (int operation = 0; operation < mMetrics.getOperationCount(); operation++) {
+                ProviderMetrics.Stats stats = mMetrics.get(uri, operation);
+                synchronized (stats) {
+                    if (stats.getCount() == 0) {
+                        continue;
+                    }
+                    cursor.newRow()
+                            .add(mMetrics.getUriName(uri))
+                            .add(mMetrics.getOperationName(operation))
+                            .add(stats.getCount())
+                            .add(stats.getFailedCount())
+                            .add(stats.getRowCount())
+                            .add(stats.getMaxRows())
+                            .add(stats.getMeanNanos() / 1000)
+                            .add(stats.getPercentileNanos(50) / 1000)
+                            .add(stats.getPercentileNanos(90) / 1000)
+                            .add(stats.getPercentileNanos(99) / 1000)
+                            .add(stats.getMaxNanos() / 1000);
+                }
+            }
+        }
+        return cursor;
+    }
+
+    // returns the index of the URI in the metrics, which is out of range for an unknown URI
+    private static int metricsUri(Uri uri) {
+        return sUriMatcher.match(uri) - BOOKS;
+    }
+
+    // drop the cached books that a write to the given uri may have changed: one book for a
+    // single book uri, and all of them for a write with a selection.
+    private void invalidateCache(Uri uri) {
+        Set<Uri> pending = mPendingInvalidations.get();
+        if (pending != null) {
+            pending.add(uri);
+        }
+        int match = sUriMatcher.match(uri);
+        if (match == BOOK_ID) {
+            mRowCache.invalidate(ContentUris.parseId(uri));
+        } else {
+            mRowCache.invalidateAll();
+        }
+    }
+
+    // returns the SQL that SQLiteDatabase.update runs on the books table, for the slow query log
+    private static String updateSql(ContentValues values, String selection) {
+        StringBuilder sql = new StringBuilder("UPDATE ").append(BookEntry.TABLE_NAME).append(" SET ");
+        boolean first = true;
+        for (String column : values.keySet()) {
+            if (!first) {
+                sql.append(',');
+            }
+            first = false;
+            sql.append(column).append("=?");
+        }
+        if (selection != null) {
+            sql.append(" WHERE ").append(selection);
+        }
+        return sql.toString();
+    }
+
+    // returns the SQL that SQLiteDatabase.delete runs on the books table, for the slow query log
+    private static String deleteSql(String selection) {
+        return "DELETE FROM " + BookEntry.TABLE_NAME + (selection == null ? "" : " WHERE " + selection);
+    }
+
+    // returns the index of the value in the array, or -1
+    private static int indexOf(String[] array, String value) {
+        for (int i = 0; i < array.length; i++) {
+            if (array[i].equals(value)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // read the page size from the uri, keeping it between 1 and the largest page
+    private static int parsePageLimit(String limit) {
+        try {
+            return Math.max(1, Math.min(Integer.parseInt(limit), BookEntry.MAX_PAGE_SIZE));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid page limit " + limit);
+        }
+    }
+
+    // read an _id from a query parameter
+    private static long parseId(String id, Uri uri) {
+        try {
+            return Long.parseLong(id);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid id " + id + " in " + uri);
+        }
+    }
+
+    // read a price from a query parameter, it must be a finite number
+    private static double parsePrice(String price, Uri uri) {
+        try {
+            double value = Double.parseDouble(price);
+            if (!Double.isInfinite(value) && !Double.isNaN(value)) {
+                return value;
+            }
+        } catch (NumberFormatException e) {
+            // fall through to the exception below
+        }
+        throw new IllegalArgumentException("Invalid price " + price + " in " + uri);
+    }
+
+    // read a quantity from a query parameter
+    private static int parseQuantity(String quantity, Uri uri) {
+        try {
+            return Integer.parseInt(quantity);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid quantity " + quantity + " in " + uri);
+        }
+    }
+
+    // join two selection argument arrays, either of which may be null
+    private static String[] concat(String[] first, String[] second) {
+        if (first == null) {
+            return second;
+        }
+        if (second == null) {
+            return first;
+        }
+        String[] both = new String[first.length + second.length];
+        System.arraycopy(first, 0, both, 0, first.length);
+        System.arraycopy(second, 0, both, first.length, second.length);
+        return both;
+    }
+
+    // Insert new data into the provider with the given ContentValues, and count it in the
+    // metrics.
     @Override
     public Uri insert(Uri uri, ContentValues contentValues) {
+        long start = mMetrics.start();
+        if (start == 0) {
+            return insertUri(uri, contentValues);
+        }
+        int rows = -1;
+        try {
+            Uri inserted = insertUri(uri, contentValues);
+            rows = inserted == null ? 0 : 1;
+            return inserted;
+        } finally {
+            mMetrics.record(metricsUri(uri), OP_INSERT, start, rows);
+        }
+    }
+
+    // Insert new data into the provider with the given ContentValues.
+    private Uri insertUri(Uri uri, ContentValues contentValues) {
         final int match = sUriMatcher.match(uri);
         switch (match) {
             case BOOKS:
@@ -128,35 +825,10 @@ public class BookProvider extends ContentProvider {
     // insert a book into the database with the given content values. Return
     // the new content URI for that specific row in the database.
     private Uri insertBook(Uri uri, ContentValues values) {
-        // check that the product name is not null
-        String productName = values.getAsString(BookEntry.COLUMN_PRODUCT_NAME);
-        if (productName == null) {
-            throw new IllegalArgumentException("Book requires a title");
-        }
-
-        // check that price is greater than zero
-        String price = values.getAsString(BookEntry.COLUMN_PRICE);
-        if (price == null) {
-            throw new IllegalArgumentException("Book requires valid price");
-        }
-
-        // check that quantity is not null and greater than zero
-        Integer quantity = values.getAsInteger(BookEntry.COLUMN_QUANTITY);
-        if (quantity != null && quantity < 0) {
-            throw new IllegalArgumentException("Book requires valid quantity");
-        }
-
-        // supplier is not required so no need to check. any value is valid
-
-        // check that phone number is valid
-        String phone = values.getAsString(BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER);
-        //matches numbers and dashes, any order really.
-        String regexStr = "^[0-9\\-]*$";
-        Pattern pattern = Pattern.compile(regexStr);
-        Matcher matcher = pattern.matcher(phone);
-        boolean isPhoneFormat = matcher.matches();
-        if (!isPhoneFormat) {
-            throw new IllegalArgumentException("Book requires valid phone number");
+        // check that the new book is valid, throw with the reasons if it isn't
+        int errors = BookValidator.validateInsert(values, ContentValuesReader.INSTANCE);
+        if (errors != BookValidator.VALID) {
+            throw new IllegalArgumentException(BookValidator.describe(errors));
         }
 
         // get writable database
@@ -172,29 +844,123 @@ public class BookProvider extends ContentProvider {
 
         // notify all listeners that the data has changed for the book content URI
         // uri:content://com.example.android.bookstore/books
-        getContext().getContentResolver().notifyChange(uri, null);
+        notifyChange(uri);
 
         // return the new URI with the ID (of the newly inserted row)
         // appended at the end
         return ContentUris.withAppendedId(uri, id);
     }
 
-    // updates the data at the given selection and selection arguments, with the
-    // new ContentValues.
+    /**
+     * Insert a whole array of books (for example a supplier's catalog) in one transaction.
+     * Every row is validated like {@link #insert(Uri, ContentValues)}, but an invalid row is
+     * skipped and counted instead of failing the whole import. All rows go through one
+     * compiled insert statement and listeners are notified once at the end.
+     *
+     * @return the number of books accepted. values.length minus this is the number rejected.
+     */
+    @Override
+    public int bulkInsert(Uri uri, ContentValues[] values) {
+        long start = mMetrics.start();
+        if (start == 0) {
+            return bulkInsertBooks(uri, values);
+        }
+        int rows = -1;
+        try {
+            rows = bulkInsertBooks(uri, values);
+            return rows;
+        } finally {
+            mMetrics.record(metricsUri(uri), OP_BULK_INSERT, start, rows);
+        }
+    }
+
+    // insert the books of bulkInsert, see above
+    private int bulkInsertBooks(Uri uri, ContentValues[] values) {
+        final int match = sUriMatcher.match(uri);
+        if (match != BOOKS) {
+            throw new IllegalArgumentException("Insertion is not supported for " + uri);
+        }
+
+        // get writable database
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+
+        // track the rows that made it into the table and the ones that didn't
+        int accepted = 0;
+        int rejected = 0;
+
+        // compile the insert once and rebind it for every row
+        SQLiteStatement statement = database.compileStatement(BookQueries.SQL_INSERT);
+        database.beginTransaction();
+        try {
+            for (ContentValues book : values) {
+                if (book == null || BookValidator.validateInsert(book, ContentValuesReader.INSTANCE) != BookValidator.VALID) {
+                    rejected++;
+                    continue;
+                }
+
+                BookStatements.bindInsert(statement, book);
+
+                // a row that breaks a table constraint (e.g. no supplier) is rejected,
+                // the rest of the transaction carries on
+                try {
+                    statement.executeInsert();
+                    accepted++;
+                } catch (SQLException e) {
+                    rejected++;
+                }
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+            statement.close();
+        }
+
+        Log.i(TAG, "bulkInsert: accepted " + accepted + " books, rejected " + rejected);
+
+        // notify all listeners once for the whole batch
+        if (accepted != 0) {
+            notifyChange(uri);
+        }
+
+        return accepted;
+    }
+
+
+    // updates the data at the given selection and selection arguments, and counts it in the
+    // metrics.
     @Override
     public int update(Uri uri, ContentValues contentValues, String selection,
                       String[] selectionArgs) {
+        long start = mMetrics.start();
+        if (start == 0) {
+            return updateUri(uri, contentValues, selection, selectionArgs);
+        }
+        int rows = -1;
+        try {
+            rows = updateUri(uri, contentValues, selection, selectionArgs);
+            return rows;
+        } finally {
+            mMetrics.record(metricsUri(uri), OP_UPDATE, start, rows);
+        }
+    }
+
+    // updates the data at the given selection and selection arguments, with the
+    // new ContentValues.
+    private int updateUri(Uri uri, ContentValues contentValues, String selection,
+                          String[] selectionArgs) {
         final int match = sUriMatcher.match(uri);
         switch (match) {
             case BOOKS:
-                return updateBook(uri, contentValues, selection, selectionArgs);
+                return updateBook(uri, contentValues, selection, selectionArgs, -1);
             case BOOK_ID:
                 // for the BOOK_ID code, extract out the ID from the URI,
-                // so we know which row to update. Selection will be "_id=?"
-                // and selection arguments will be a String array containing the actual ID.
-                selection = BookEntry._ID + "=?";
-                selectionArgs = new String[] { String.valueOf(ContentUris.parseId(uri)) };
-                return updateBook(uri, contentValues, selection, selectionArgs);
+                // so we know which row to update.
+                return updateBook(uri, contentValues, null, null, ContentUris.parseId(uri));
+            case BOOK_SELL:
+                // for the BOOK_SELL code, the values are ignored. one copy of the book
+                // is sold if there is one in stock.
+                long id = Long.parseLong(uri.getPathSegments().get(1));
+                return sellBook(id) < 0 ? 0 : 1;
             default:
                 throw new IllegalArgumentException("Update is not supported for " + uri);
         }
@@ -202,76 +968,291 @@ public class BookProvider extends ContentProvider {
 
     // update books in the database with the given content values. Applt the changes to
     // the rows specified in the selection and selection args (which could be 0 or 1
-    // or more books). Return number of rows successfully updated.
+    // or more books), or to the one book with the given id if it isn't -1.
+    // Return number of rows successfully updated.
     private int updateBook(Uri uri, ContentValues values, String selection,
-                           String[] selectionArgs) {
-        // if the {@link BookEntry#COLUMN_PRODUCT_NAME} key is present,
-        // check that the name value is not null.
-        if (values.containsKey(BookEntry.COLUMN_PRODUCT_NAME)) {
-            String productName = values.getAsString(BookEntry.COLUMN_PRODUCT_NAME);
-            if (productName == null) {
-                throw new IllegalArgumentException("Book requires a title");
-            }
+                           String[] selectionArgs, long id) {
+        // check the columns that are being changed, throw with the reasons if any
+        // of them is not valid
+        int errors = BookValidator.validateUpdate(values, ContentValuesReader.INSTANCE);
+        if (errors != BookValidator.VALID) {
+            throw new IllegalArgumentException(BookValidator.describe(errors));
         }
 
-        // if the {@link BookEntry#COLUMN_PRICE} key is present,
-        // check that the price value is valid
-        if (values.containsKey(BookEntry.COLUMN_PRICE)) {
-            String price = values.getAsString(BookEntry.COLUMN_PRICE);
-            if (price == null) {
-                throw new IllegalArgumentException("Book required valid price");
+        // if there are no values to update, then don't try to update the database.
+        if (values.size() == 0) {
+            return 0;
+        }
+
+        // perform the update on the database and get the number of rows affected
+        int rowsUpdated;
+        if (id != -1 && BookStatements.isWholeBook(values)) {
+            // every column of one book, like the editor saves it: use the compiled statement
+            rowsUpdated = mDbHelper.getStatements().updateById(id, values);
+        } else {
+            if (id != -1) {
+                // Selection will be "_id=?" and selection arguments will be a String array
+                // containing the actual ID.
+                selection = BookEntry._ID + "=?";
+                selectionArgs = new String[] { String.valueOf(id) };
+            }
+
+            // otherwise, get writable database to update the data
+            SQLiteDatabase database= mDbHelper.getWritableDatabase();
+            long start = mSlowQueries.start();
+            rowsUpdated = database.update(BookEntry.TABLE_NAME, values, selection, selectionArgs);
+            if (mSlowQueries.isSlow(start)) {
+                mSlowQueries.record(database, updateSql(values, selection), start);
             }
         }
 
-        // if the {@link BookEntry#COLUMN_QUANTITY} key is present,
-        // check that the quantity is valid
-        if (values.containsKey(BookEntry.COLUMN_QUANTITY)) {
-            Integer quantity = values.getAsInteger(BookEntry.COLUMN_QUANTITY);
-            if (quantity != null && quantity < 0) {
-                throw new IllegalArgumentException("Book required valid quantity");
+        // if 1 or more rows were updated, then drop them from the cache and notify all
+        // listeners that the data at the given URI has changed.
+        if (rowsUpdated != 0) {
+            invalidateCache(uri);
+            notifyChange(uri);
+        }
+
+        // return the number of rows updated.
+        return rowsUpdated;
+    }
+
+    // sell one copy of the book with the given id. the quantity is checked and taken down
+    // in one conditional UPDATE, so concurrent sales can't lose an update or go below zero.
+    // returns the quantity left, or -1 if the book was out of stock or doesn't exist.
+    private int sellBook(long id) {
+        // get the compiled statements and the writable database they belong to
+        BookStatements statements = mDbHelper.getStatements();
+        SQLiteDatabase database = statements.getDatabase();
+
+        int quantity = -1;
+        database.beginTransaction();
+        try {
+            int rowsUpdated = statements.sell(id);
+
+            // read the new quantity in the same transaction, so it is the one this sale left
+            if (rowsUpdated != 0) {
+                quantity = (int) statements.quantityById(id);
             }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
         }
 
-        // no need to check the supplier. any value ia valid including null.
+        // drop the book from the cache and notify all listeners that it has changed
+        if (quantity >= 0) {
+            Uri uri = ContentUris.withAppendedId(BookEntry.CONTENT_URI, id);
+            invalidateCache(uri);
+            notifyChange(uri);
+        }
+        return quantity;
+    }
+
+    // change the stock of each book by its delta, all in one transaction. the stock stops at
+    // zero. returns the quantity each book was left with, or -1 if it doesn't exist.
+    private int[] adjustQuantities(long[] ids, int[] deltas) {
+        if (ids == null || deltas == null || ids.length != deltas.length) {
+            throw new IllegalArgumentException("Every book needs one quantity delta");
+        }
 
-        // if the {@link BookEntry#COLUMN_SUPPLIER_PHONE_NUMBER} key is present,
-        // check that the phone number is valid
-        if (values.containsKey(BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER)) {
-            String phone = values.getAsString(BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER);
-            //matches numbers and dashes, any order really.
-            String regexStr = "^[0-9\\-]*$";
-            Pattern pattern = Pattern.compile(regexStr);
-            Matcher matcher = pattern.matcher(phone);
-            boolean isPhoneFormat = matcher.matches();
-            if (!isPhoneFormat) {
-                throw new IllegalArgumentException("Book requires valid phone number");
+        // get the compiled statements and the writable database they belong to
+        BookStatements statements = mDbHelper.getStatements();
+        SQLiteDatabase database = statements.getDatabase();
+
+        int[] quantities = new int[ids.length];
+        database.beginTransaction();
+        try {
+            for (int i = 0; i < ids.length; i++) {
+                quantities[i] = -1;
+                if (statements.adjustQuantity(ids[i], deltas[i]) != 0) {
+                    quantities[i] = (int) statements.quantityById(ids[i]);
+                }
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+
+            // committed or rolled back, drop the books from the cache
+            for (long id : ids) {
+                invalidateCache(ContentUris.withAppendedId(BookEntry.CONTENT_URI, id));
             }
         }
 
-        // if there are no values to update, then don't try to update the database.
-        if (values.size() == 0) {
-            return 0;
+        // notify all listeners once. a change to the books URI also reaches the observers
+        // of every single book.
+        if (ids.length == 1) {
+            notifyChange(ContentUris.withAppendedId(BookEntry.CONTENT_URI, ids[0]));
+        } else if (ids.length > 1) {
+            notifyChange(BookEntry.CONTENT_URI);
         }
+        return quantities;
+    }
 
-        // otherwise, get writable database to update the data
-        SQLiteDatabase database= mDbHelper.getWritableDatabase();
+    // import the CSV file of the extras of METHOD_IMPORT_CSV, see {@link BookEntry#importCsv}
+    private Bundle importCsv(Bundle extras) {
+        ParcelFileDescriptor file = extras == null ? null
+                : (ParcelFileDescriptor) extras.getParcelable(BookEntry.KEY_FILE);
+        if (file == null) {
+            throw new IllegalArgumentException("CSV import requires a file");
+        }
+        final ResultReceiver progress = extras.getParcelable(BookEntry.KEY_PROGRESS);
+        int chunkSize = extras.getInt(BookEntry.KEY_CHUNK_SIZE, BookCsvImporter.DEFAULT_CHUNK_SIZE);
 
-        // perform the update on the database and get the number of rows affected
-        int rowsUpdated = database.update(BookEntry.TABLE_NAME, values, selection, selectionArgs);
+        BookCsvImporter importer = new BookCsvImporter(mDbHelper.getWritableDatabase(), chunkSize);
+        BookCsvImporter.ProgressListener listener = null;
+        if (progress != null) {
+            listener = new BookCsvImporter.ProgressListener() {
+                @Override
+                public void onProgress(long lineNumber, int imported, int rejected) {
+                    Bundle data = new Bundle();
+                    data.putLong(BookEntry.KEY_LINE, lineNumber);
+                    data.putInt(BookEntry.KEY_IMPORTED, imported);
+                    data.putInt(BookEntry.KEY_REJECTED, rejected);
+                    progress.send(BookEntry.RESULT_IMPORT_PROGRESS, data);
+                }
+            };
+        }
 
-        // if 1 or more rows were updated, then notify all listeners that the data at the
-        // given URI has changed.
-        if (rowsUpdated != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+        Reader in = new InputStreamReader(new ParcelFileDescriptor.AutoCloseInputStream(file), UTF_8);
+        try {
+            importer.importFrom(in, listener);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not read the CSV file after "
+                    + importer.getImportedCount() + " books", e);
+        } finally {
+            try {
+                in.close();
+            } catch (IOException e) {
+                Log.w(TAG, "importCsv: could not close the CSV file", e);
+            }
+
+            // notify all listeners once for every book committed, even if the import failed
+            if (importer.getImportedCount() != 0) {
+                notifyChange(BookEntry.CONTENT_URI);
+            }
         }
 
-        // return the number of rows updated.
-        return rowsUpdated;
+        Log.i(TAG, "importCsv: imported " + importer.getImportedCount() + " books, rejected "
+                + importer.getRejectedCount());
+
+        Bundle result = new Bundle();
+        result.putInt(BookEntry.KEY_IMPORTED, importer.getImportedCount());
+        result.putInt(BookEntry.KEY_REJECTED, importer.getRejectedCount());
+        result.putLongArray(BookEntry.KEY_REJECTED_LINES, importer.getRejectedLines());
+        return result;
     }
 
-    // delete the data at the given selection and selectionArs
+    /**
+     * Handle the provider methods of {@link BookContract}. {@link BookEntry#METHOD_SELL} sells
+     * one copy of the book whose id is the arg, and returns the quantity left under
+     * {@link BookEntry#KEY_QUANTITY}, or -1 if the book was out of stock.
+     * {@link BookEntry#METHOD_ADJUST_QUANTITIES} changes the stock of several books, see
+     * {@link BookEntry#adjustQuantities}.
+     * {@link BookEntry#METHOD_IMPORT_CSV} imports books from a CSV file, see
+     * {@link BookEntry#importCsv}.
+     * {@link BookEntry#METHOD_CHECK_STATS} checks the inventory statistics, see {@link #checkStats}.
+     * {@link BookEntry#METHOD_CACHE_STATS} returns the counters of the row cache.
+     * {@link BookEntry#METHOD_SET_METRICS} turns the metrics on or off and sets the threshold
+     * of the slow query log.
+     */
+    @Override
+    public Bundle call(String method, String arg, Bundle extras) {
+        if (BookEntry.METHOD_SELL.equals(method)) {
+            long id;
+            try {
+                id = Long.parseLong(arg);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid book id " + arg);
+            }
+            Bundle result = new Bundle();
+            result.putInt(BookEntry.KEY_QUANTITY, sellBook(id));
+            return result;
+        }
+        if (BookEntry.METHOD_ADJUST_QUANTITIES.equals(method)) {
+            if (extras == null) {
+                throw new IllegalArgumentException("Quantity deltas require extras");
+            }
+            Bundle result = new Bundle();
+            result.putIntArray(BookEntry.KEY_QUANTITIES, adjustQuantities(
+                    extras.getLongArray(BookEntry.KEY_IDS), extras.getIntArray(BookEntry.KEY_DELTAS)));
+            return result;
+        }
+        if (BookEntry.METHOD_IMPORT_CSV.equals(method)) {
+            return importCsv(extras);
+        }
+        if (BookEntry.METHOD_CHECK_STATS.equals(method)) {
+            Bundle result = new Bundle();
+            result.putBoolean(BookEntry.KEY_STATS_CONSISTENT, checkStats());
+            return result;
+        }
+        if (BookEntry.METHOD_SET_METRICS.equals(method)) {
+            if (extras == null) {
+                throw new IllegalArgumentException("Setting the metrics requires extras");
+            }
+            if (extras.getBoolean(BookEntry.KEY_METRICS_RESET)) {
+                mMetrics.reset();
+                mSlowQueries.getLog().clear();
+            }
+            mMetrics.setEnabled(extras.getBoolean(BookEntry.KEY_METRICS_ENABLED, mMetrics.isEnabled()));
+            if (extras.containsKey(BookEntry.KEY_SLOW_QUERY_MILLIS)) {
+                mSlowQueries.getLog().setThresholdMillis(extras.getLong(BookEntry.KEY_SLOW_QUERY_MILLIS));
+            }
+            return null;
+        }
+        if (BookEntry.METHOD_CACHE_STATS.equals(method)) {
+            Bundle result = new Bundle();
+            result.putLong(BookEntry.KEY_CACHE_HITS, mRowCache.getHitCount());
+            result.putLong(BookEntry.KEY_CACHE_MISSES, mRowCache.getMissCount());
+            result.putLong(BookEntry.KEY_CACHE_EVICTIONS, mRowCache.getEvictionCount());
+            result.putLong(BookEntry.KEY_CACHE_ROWS, mRowCache.getRowCount());
+            result.putLong(BookEntry.KEY_CACHE_SIZE, mRowCache.getSize());
+            result.putLong(BookEntry.KEY_CACHE_MAX_SIZE, mRowCache.getMaxSize());
+            return result;
+        }
+        return super.call(method, arg, extras);
+    }
+
+    // compare the inventory statistics with a full scan of the books table, and rebuild them
+    // from the scan if they differ. the check and the rebuild run in one transaction, so no
+    // write can slip in between. returns true if the statistics were right.
+    private boolean checkStats() {
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+        boolean consistent;
+        database.beginTransaction();
+        try {
+            consistent = DatabaseUtils.longForQuery(database, BookSchema.SQL_CHECK_STATS, null) == 0;
+            if (!consistent) {
+                Log.w(TAG, "checkStats: statistics drifted from the books, rebuilding them");
+                database.execSQL(BookSchema.SQL_REBUILD_STATS);
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+        if (!consistent) {
+            notifyChange(BookEntry.STATS_URI);
+        }
+        return consistent;
+    }
+
+    // delete the data at the given selection and selectionArs, and count it in the metrics
     @Override
     public int delete(Uri uri, String selection, String[] selectionArgs) {
+        long start = mMetrics.start();
+        if (start == 0) {
+            return deleteUri(uri, selection, selectionArgs);
+        }
+        int rows = -1;
+        try {
+            rows = deleteUri(uri, selection, selectionArgs);
+            return rows;
+        } finally {
+            mMetrics.record(metricsUri(uri), OP_DELETE, start, rows);
+        }
+    }
+
+    // delete the data at the given selection and selectionArs
+    private int deleteUri(Uri uri, String selection, String[] selectionArgs) {
         // get writable database
         SQLiteDatabase database = mDbHelper.getWritableDatabase();
 
@@ -282,28 +1263,125 @@ public class BookProvider extends ContentProvider {
         switch (match) {
             case BOOKS:
                 // delete all row that match the selection and selectionArs
+                long start = mSlowQueries.start();
                 rowsDeleted = database.delete(BookEntry.TABLE_NAME, selection, selectionArgs);
+                if (mSlowQueries.isSlow(start)) {
+                    mSlowQueries.record(database, deleteSql(selection), start);
+                }
                 break;
             case BOOK_ID:
-                // delete a single row given by the ID in the URI
-                selection = BookEntry._ID + "=?";
-                selectionArgs = new String[] { String.valueOf(ContentUris.parseId(uri)) };
-                rowsDeleted = database.delete(BookEntry.TABLE_NAME, selection, selectionArgs);
+                // delete a single row given by the ID in the URI, with the compiled statement
+                rowsDeleted = mDbHelper.getStatements().deleteById(ContentUris.parseId(uri));
                 break;
             default:
                 throw new IllegalArgumentException("Deletion is not supported for " + uri);
         }
 
-        // if 1 or more rows were deleted, then notify all listeners that the data at the
-        // given uri has changed.
+        // if 1 or more rows were deleted, then drop them from the cache and notify all
+        // listeners that the data at the given uri has changed.
         if (rowsDeleted != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            invalidateCache(uri);
+            notifyChange(uri);
         }
 
         // return the number of rows deleted
         return rowsDeleted;
     }
 
+    /**
+     * Apply a batch of inserts, updates and deletes in one transaction. Either the whole batch
+     * is committed or none of it is. The transaction only yields to other threads at the
+     * operations that were built with {@link ContentProviderOperation.Builder#withYieldAllowed},
+     * so callers choose where a long batch may be split. Change notifications are held back
+     * until the batch has committed and then sent once for the whole batch.
+     */
+    @Override
+    public ContentProviderResult[] applyBatch(ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        // get writable database
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+
+        // collect the notifications of every operation in the batch
+        Set<Uri> pending = new HashSet<>();
+        mPendingNotifications.set(pending);
+        Set<Uri> invalidated = new HashSet<>();
+        mPendingInvalidations.set(invalidated);
+
+        ContentProviderResult[] results;
+        database.beginTransaction();
+        try {
+            final int count = operations.size();
+            results = new ContentProviderResult[count];
+            for (int i = 0; i < count; i++) {
+                ContentProviderOperation operation = operations.get(i);
+                if (i > 0 && operation.isYieldAllowed()) {
+                    database.yieldIfContendedSafely();
+                }
+                results[i] = operation.apply(this, results, i);
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+            mPendingNotifications.remove();
+            mPendingInvalidations.remove();
+
+            // committed or rolled back, the database has the final rows now, so drop
+            // whatever other threads cached in the meantime
+            for (Uri uri : invalidated) {
+                invalidateCache(uri);
+            }
+        }
+
+        // the batch is committed, so now notify listeners. A change to the books URI also
+        // reaches the observers of every single book, so when more than one URI changed a
+        // single notification of the books URI covers all of them.
+        if (pending.size() == 1) {
+            notifyChange(pending.iterator().next());
+        } else if (pending.size() > 1) {
+            notifyChange(BookEntry.CONTENT_URI);
+        }
+
+        return results;
+    }
+
+    // notify all listeners that the data at the given uri has changed. while a batch is
+    // running on this thread, the notification is held back until the batch commits.
+    // otherwise it goes to the coalescer, which sends it at the end of its window.
+    private void notifyChange(Uri uri) {
+        Set<Uri> pending = mPendingNotifications.get();
+        if (pending != null) {
+            pending.add(uri);
+            return;
+        }
+        mNotifier.notifyChange(uri);
+    }
+
+    /**
+     * Open the CSV export of the books. The file is a pipe: a background thread writes the
+     * books into it while the caller reads them, so the whole file is never in memory.
+     */
+    @Override
+    public ParcelFileDescriptor openFile(Uri uri, String mode) throws FileNotFoundException {
+        if (sUriMatcher.match(uri) != BOOK_EXPORT) {
+            throw new FileNotFoundException("No file at " + uri);
+        }
+        if (!"r".equals(mode)) {
+            throw new FileNotFoundException("The export " + uri + " can only be read");
+        }
+        return openPipeHelper(uri, BookEntry.CONTENT_CSV_TYPE, null, null, mCsvExportWriter);
+    }
+
+    // returns the types the content URI can be opened as with openTypedAssetFile: CSV for
+    // the export, and nothing for the rest.
+    @Override
+    public String[] getStreamTypes(Uri uri, String mimeTypeFilter) {
+        if (sUriMatcher.match(uri) == BOOK_EXPORT
+                && ClipDescription.compareMimeTypes(BookEntry.CONTENT_CSV_TYPE, mimeTypeFilter)) {
+            return new String[] { BookEntry.CONTENT_CSV_TYPE };
+        }
+        return null;
+    }
+
     // returns the MIMI type of data for the content URI.
     @Override
     public String getType(Uri uri) {
@@ -313,9 +1391,34 @@ public class BookProvider extends ContentProvider {
                 return BookEntry.CONTENT_LIST_TYPE;
             case BOOK_ID:
                 return BookEntry.CONTENT_ITEM_TYPE;
+            case BOOK_SEARCH:
+                return BookEntry.CONTENT_LIST_TYPE;
+            case BOOK_SELL:
+                return BookEntry.CONTENT_ITEM_TYPE;
+            case BOOK_STATS:
+                return BookEntry.CONTENT_STATS_TYPE;
+            case BOOK_LOW_STOCK:
+                return BookEntry.CONTENT_LIST_TYPE;
+            case BOOK_EXPORT:
+                return BookEntry.CONTENT_CSV_TYPE;
+            case BOOK_METRICS:
+                return BookEntry.CONTENT_METRICS_TYPE;
             default:
                 throw new IllegalArgumentException("Unknown URI " + uri + " with match " + match);
         }
     }
 
+    // write the metrics and the counters of the row cache, for
+    // adb shell dumpsys activity provider com.example.android.bookstore/.data.BookProvider
+    @Override
+    public void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        mMetrics.dump(writer);
+        mSlowQueries.getLog().dump(writer);
+        writer.println("Row cache: hits=" + mRowCache.getHitCount()
+                + " misses=" + mRowCache.getMissCount()
+                + " evictions=" + mRowCache.getEvictionCount()
+                + " rows=" + mRowCache.getRowCount()
+                + " size=" + mRowCache.getSize() + "/" + mRowCache.getMaxSize());
+    }
+
 }
@@ -0,0 +1,204 @@
+package com.example.android.bookstore.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteDoneException;
+import android.database.sqlite.SQLiteStatement;
+
+import com.example.android.bookstore.core.BookQueries;
+import com.example.android.bookstore.data.BookContract.BookEntry;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * {@link BookStatements} holds the compiled statements of the single-book operations that
+ * {@link BookProvider} runs all the time: read a book, update a whole book, delete a book,
+ * sell one copy of it and change its stock by a number of copies. Each statement is compiled
+ * once and rebound for every call, instead of building the SQL and compiling it again each
+ * time.
+ *
+ * The statements belong to one open database. {@link BookDbHelper} makes a new set every
+ * time the database is opened (and so after every create or upgrade), and closes the old
+ * set, so a statement never outlives the schema it was compiled against.
+ */
+final class BookStatements {
+
+    // the database the statements are compiled against
+    private final SQLiteDatabase mDatabase;
+
+    private final SQLiteStatement mUpdateById;
+    private final SQLiteStatement mDeleteById;
+    private final SQLiteStatement mSell;
+    private final SQLiteStatement mAdjustQuantity;
+    private final SQLiteStatement mQuantityById;
+
+    // most projections remembered in mSelectByArray and mSelectByColumns. callers use a
+    // handful of fixed projections, so more than this means they are made up on the fly.
+    private static final int MAX_SELECTS = 16;
+
+    // SELECT statements by projection. a cursor can't come out of a SQLiteStatement, so
+    // the SQL text is kept instead: the same text is compiled once per connection and then
+    // found in SQLite's statement cache of that connection. callers in this process pass
+    // the same constant arrays every time, so the statements are looked up by the array
+    // itself first, which costs no allocation, and by its columns only when that misses.
+    private final IdentityHashMap<String[], String> mSelectByArray = new IdentityHashMap<>();
+    private final HashMap<List<String>, String> mSelectByColumns = new HashMap<>();
+
+    // the SELECT statement of every column, for a null projection
+    private final String mSelectAll = BookQueries.selectById(null);
+
+    BookStatements(SQLiteDatabase database) {
+        mDatabase = database;
+        mUpdateById = database.compileStatement(BookQueries.SQL_UPDATE_BY_ID);
+        mDeleteById = database.compileStatement(BookQueries.SQL_DELETE_BY_ID);
+        mSell = database.compileStatement(BookQueries.SQL_SELL);
+        mAdjustQuantity = database.compileStatement(BookQueries.SQL_ADJUST_QUANTITY);
+        mQuantityById = database.compileStatement(BookQueries.SQL_QUANTITY_BY_ID);
+    }
+
+    // returns the database the statements were compiled against
+    SQLiteDatabase getDatabase() {
+        return mDatabase;
+    }
+
+    // read one book. a null projection reads every column.
+    Cursor queryById(long id, String[] projection) {
+        String sql = projection == null ? mSelectAll : selectById(projection);
+        return mDatabase.rawQuery(sql, new String[] { Long.toString(id) });
+    }
+
+    // returns the SELECT statement of a projection, see mSelectByArray
+    private String selectById(String[] projection) {
+        synchronized (mSelectByArray) {
+            String sql = mSelectByArray.get(projection);
+            if (sql != null) {
+                return sql;
+            }
+            sql = mSelectByColumns.get(Arrays.asList(projection));
+            if (sql == null) {
+                sql = BookQueries.selectById(projection);
+                if (mSelectByColumns.size() >= MAX_SELECTS) {
+                    mSelectByColumns.clear();
+                }
+                // a copy, in case the caller changes its array later
+                mSelectByColumns.put(Arrays.asList(projection.clone()), sql);
+            }
+            if (mSelectByArray.size() >= MAX_SELECTS) {
+                mSelectByArray.clear();
+            }
+            mSelectByArray.put(projection, sql);
+            return sql;
+        }
+    }
+
+    // check if the values set every column of a book, so updateById can write them
+    static boolean isWholeBook(ContentValues values) {
+        return values.size() == 5
+                && values.containsKey(BookEntry.COLUMN_PRODUCT_NAME)
+                && values.containsKey(BookEntry.COLUMN_PRICE)
+                && values.containsKey(BookEntry.COLUMN_QUANTITY)
+                && values.containsKey(BookEntry.COLUMN_SUPPLIER_NAME)
+                && values.containsKey(BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER);
+    }
+
+    // write every column of one book. the values must pass isWholeBook.
+    // returns the number of rows updated.
+    int updateById(long id, ContentValues values) {
+        synchronized (mUpdateById) {
+            mUpdateById.clearBindings();
+            bindStringOrNull(mUpdateById, 1, values.getAsString(BookEntry.COLUMN_PRODUCT_NAME));
+            bindStringOrNull(mUpdateById, 2, values.getAsString(BookEntry.COLUMN_PRICE));
+            Integer quantity = values.getAsInteger(BookEntry.COLUMN_QUANTITY);
+            if (quantity == null) {
+                // not a number, let the column affinity deal with it like update() would
+                bindStringOrNull(mUpdateById, 3, values.getAsString(BookEntry.COLUMN_QUANTITY));
+            } else {
+                mUpdateById.bindLong(3, quantity);
+            }
+            bindStringOrNull(mUpdateById, 4, values.getAsString(BookEntry.COLUMN_SUPPLIER_NAME));
+            bindStringOrNull(mUpdateById, 5, values.getAsString(BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER));
+            mUpdateById.bindLong(6, id);
+            return mUpdateById.executeUpdateDelete();
+        }
+    }
+
+    // delete one book. returns the number of rows deleted.
+    int deleteById(long id) {
+        synchronized (mDeleteById) {
+            mDeleteById.bindLong(1, id);
+            return mDeleteById.executeUpdateDelete();
+        }
+    }
+
+    // take one copy of a book out of stock if there is one.
+    // returns 1 if a copy was sold, 0 if the book was out of stock or doesn't exist.
+    int sell(long id) {
+        synchronized (mSell) {
+            mSell.bindLong(1, id);
+            return mSell.executeUpdateDelete();
+        }
+    }
+
+    // add a number of copies to a book, or take them out of stock if the number is negative.
+    // the stock stops at zero. returns 1 if the book was updated, 0 if it doesn't exist.
+    int adjustQuantity(long id, int delta) {
+        synchronized (mAdjustQuantity) {
+            mAdjustQuantity.bindLong(1, delta);
+            mAdjustQuantity.bindLong(2, id);
+            return mAdjustQuantity.executeUpdateDelete();
+        }
+    }
+
+    // returns the quantity of one book, or -1 if it doesn't exist
+    long quantityById(long id) {
+        synchronized (mQuantityById) {
+            mQuantityById.bindLong(1, id);
+            try {
+                return mQuantityById.simpleQueryForLong();
+            } catch (SQLiteDoneException e) {
+                return -1;
+            }
+        }
+    }
+
+    // release the compiled statements
+    void close() {
+        mUpdateById.close();
+        mDeleteById.close();
+        mSell.close();
+        mAdjustQuantity.close();
+        mQuantityById.close();
+    }
+
+    // bind the values of a new book to a statement compiled from BookQueries.SQL_INSERT.
+    // a missing quantity is 0, the default of the column.
+    static void bindInsert(SQLiteStatement statement, ContentValues book) {
+        statement.clearBindings();
+        bindStringOrNull(statement, 1, book.getAsString(BookEntry.COLUMN_PRODUCT_NAME));
+        bindStringOrNull(statement, 2, book.getAsString(BookEntry.COLUMN_PRICE));
+        Integer quantity = book.getAsInteger(BookEntry.COLUMN_QUANTITY);
+        if (quantity != null) {
+            statement.bindLong(3, quantity);
+        } else if (book.containsKey(BookEntry.COLUMN_QUANTITY)) {
+            // not a number, let the column affinity deal with it like insert() would
+            bindStringOrNull(statement, 3, book.getAsString(BookEntry.COLUMN_QUANTITY));
+        } else {
+            statement.bindLong(3, 0);
+        }
+        bindStringOrNull(statement, 4, book.getAsString(BookEntry.COLUMN_SUPPLIER_NAME));
+        bindStringOrNull(statement, 5, book.getAsString(BookEntry.COLUMN_SUPPLIER_PHONE_NUMBER));
+    }
+
+    // bind a string to the statement, or null if there isn't one
+    static void bindStringOrNull(SQLiteStatement statement, int index, String value) {
+        if (value == null) {
+            statement.bindNull(index);
+        } else {
+            statement.bindString(index, value);
+        }
+    }
+}
@@ -0,0 +1,373 @@
+package com.example.android.bookstore.data;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.example.android.bookstore.data.BookContract.BookEntry;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link BookWriter} runs the writes of the app's screens on one background thread, so a
+ * busy database never blocks the main thread. There is only one writer thread and it runs
+ * the writes in the order they were submitted, so two writes to the same book always land
+ * in that order, and their callbacks are delivered on the callback looper (the main thread)
+ * in that order too.
+ *
+ * Changes to the stock of a book, like the sale button tapped several times in a row, can
+ * be held back for a short window with {@link #adjustQuantity}. The changes of each book are
+ * added up, and at the end of the window they are written as one relative UPDATE per book,
+ * all in one transaction, so a burst of taps is one write and one reload of the list. Any
+ * other write flushes the held back changes first, so the writes to a book still land in
+ * the order they were made. Held back changes only live in memory: if the process dies,
+ * at most the changes of the current window are lost.
+ *
+ * The writer keeps track of how many writes are waiting, and how long each one waited and
+ * took, and logs a warning when either gets too high, so a backlog of writes shows up.
+ */
+public final class BookWriter {
+
+    // log tag for the write reports
+    public static final String TAG = BookWriter.class.getSimpleName();
+
+    // warn when this many writes are waiting for the writer thread
+    private static final int BACKLOG_WARNING_DEPTH = 8;
+
+    // warn when a write took this long from being submitted to being done
+    private static final long SLOW_WRITE_MILLIS = 100;
+
+    // how long changes to the stock are held back and added up, see adjustQuantity
+    public static final long QUANTITY_WINDOW_MILLIS = 300;
+
+    /**
+     * a write that runs on the writer thread.
+     *
+     * @param <T> the type of the result
+     */
+    public interface Write<T> {
+        T run(ContentResolver resolver);
+    }
+
+    /**
+     * receives the result of a write on the callback looper.
+     *
+     * @param <T> the type of the result
+     */
+    public interface Callback<T> {
+        void onWriteDone(T result);
+    }
+
+    // the writer of the app's process, see getInstance
+    private static BookWriter sInstance;
+
+    // resolver the writes go through
+    private final ContentResolver mResolver;
+
+    // handler the callbacks are delivered on
+    private final Handler mCallbackHandler;
+
+    // the one writer thread, which also ends the windows of the stock changes
+    private final ScheduledExecutorService mExecutor;
+
+    // the stock changes held back in the current window, by the _id of their book in the
+    // order the books were first changed. null while there is no window.
+    private Map<Long, QuantityDelta> mQuantityDeltas;
+
+    // the number of queued or running writes of stock changes of each book, by its _id
+    private final Map<Long, Integer> mQuantitiesWriting = new HashMap<>();
+
+    // ends the current window of stock changes. it runs on the writer thread, but still
+    // queues the changes like any other write, see flush
+    private final Runnable mFlushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    // writes submitted but not done yet, and the most there have been at once
+    private int mQueueDepth;
+    private int mMaxQueueDepth;
+
+    // writes done, and the sum and maximum of their latency from submit to done
+    private long mWriteCount;
+    private long mTotalLatencyMillis;
+    private long mMaxLatencyMillis;
+
+    /**
+     * construct a new {@link BookWriter}.
+     *
+     * @param resolver       the resolver the writes go through
+     * @param callbackLooper the looper the callbacks are delivered on
+     */
+    public BookWriter(ContentResolver resolver, Looper callbackLooper) {
+        mResolver = resolver;
+        mCallbackHandler = new Handler(callbackLooper);
+        mExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                return new Thread(runnable, TAG);
+            }
+        });
+    }
+
+    // returns the writer of the app's process, which delivers its callbacks on the main thread
+    public static synchronized BookWriter getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new BookWriter(context.getApplicationContext().getContentResolver(),
+                    Looper.getMainLooper());
+        }
+        return sInstance;
+    }
+
+    // insert a new book. the callback gets its content URI, or null if the insert failed
+    public void insert(final ContentValues values, Callback<Uri> callback) {
+        submit(new Write<Uri>() {
+            @Override
+            public Uri run(ContentResolver resolver) {
+                return resolver.insert(BookEntry.CONTENT_URI, values);
+            }
+        }, null, callback);
+    }
+
+    // update a book. the callback gets the number of rows updated, 0 if the update failed
+    public void update(final Uri uri, final ContentValues values, Callback<Integer> callback) {
+        submit(new Write<Integer>() {
+            @Override
+            public Integer run(ContentResolver resolver) {
+                return resolver.update(uri, values, null, null);
+            }
+        }, 0, callback);
+    }
+
+    // delete a book, or every book for BookEntry.CONTENT_URI. the callback gets the number
+    // of rows deleted, 0 if the delete failed
+    public void delete(final Uri uri, Callback<Integer> callback) {
+        submit(new Write<Integer>() {
+            @Override
+            public Integer run(ContentResolver resolver) {
+                return resolver.delete(uri, null, null);
+            }
+        }, 0, callback);
+    }
+
+    /**
+     * add a number of copies to a book, or take them out of stock with a negative number,
+     * at the end of the current window. the stock never goes below zero.
+     *
+     * @param callback gets the quantity the book was left with once the window is written,
+     *                 or -1 if the book doesn't exist or the write failed. may be null
+     */
+    public void adjustQuantity(long id, int delta, Callback<Integer> callback) {
+        synchronized (this) {
+            if (mQuantityDeltas == null) {
+                // the first change starts a new window
+                mQuantityDeltas = new LinkedHashMap<>();
+                mExecutor.schedule(mFlushRunnable, QUANTITY_WINDOW_MILLIS, TimeUnit.MILLISECONDS);
+            }
+            QuantityDelta quantityDelta = mQuantityDeltas.get(id);
+            if (quantityDelta == null) {
+                quantityDelta = new QuantityDelta();
+                mQuantityDeltas.put(id, quantityDelta);
+            }
+            quantityDelta.delta += delta;
+            if (callback != null) {
+                quantityDelta.callbacks.add(callback);
+            }
+        }
+    }
+
+    // returns true if changes to the stock of the given book are held back
+    public synchronized boolean hasPendingQuantity(long id) {
+        return mQuantityDeltas != null && mQuantityDeltas.containsKey(id);
+    }
+
+    /**
+     * returns true if changes to the stock of the given book are held back, or queued or
+     * running on the writer thread, so the database doesn't have them yet.
+     */
+    public synchronized boolean isQuantityUnwritten(long id) {
+        return hasPendingQuantity(id) || mQuantitiesWriting.containsKey(id);
+    }
+
+    /**
+     * end the current window of stock changes now, and queue them up to be written. call it
+     * when the app goes to the background, where its process may be killed.
+     */
+    public synchronized void flush() {
+        flushLocked();
+    }
+
+    // queue the held back stock changes, if there are any. the caller holds the lock from
+    // taking the changes to queueing its own write, so no other write can get in between.
+    private void flushLocked() {
+        final Map<Long, QuantityDelta> deltas = mQuantityDeltas;
+        mQuantityDeltas = null;
+        if (deltas == null) {
+            return;
+        }
+
+        // one array of _ids and one of deltas, for the provider method
+        final long[] ids = new long[deltas.size()];
+        final int[] changes = new int[deltas.size()];
+        int i = 0;
+        for (Map.Entry<Long, QuantityDelta> entry : deltas.entrySet()) {
+            ids[i] = entry.getKey();
+            changes[i] = entry.getValue().delta;
+            i++;
+        }
+        countQuantitiesWriting(ids, 1);
+
+        enqueue(new Write<int[]>() {
+            @Override
+            public int[] run(ContentResolver resolver) {
+                try {
+                    return BookEntry.adjustQuantities(resolver, ids, changes);
+                } finally {
+                    countQuantitiesWriting(ids, -1);
+                }
+            }
+        }, null, new Callback<int[]>() {
+            @Override
+            public void onWriteDone(int[] quantities) {
+                // hand every caller the quantity its book was left with
+                int i = 0;
+                for (QuantityDelta quantityDelta : deltas.values()) {
+                    Integer quantity = quantities == null ? -1 : quantities[i];
+                    for (Callback<Integer> callback : quantityDelta.callbacks) {
+                        callback.onWriteDone(quantity);
+                    }
+                    i++;
+                }
+            }
+        });
+    }
+
+    // add to the number of writes of stock changes of the given books
+    private synchronized void countQuantitiesWriting(long[] ids, int change) {
+        for (long id : ids) {
+            Integer count = mQuantitiesWriting.get(id);
+            int writing = (count == null ? 0 : count) + change;
+            if (writing > 0) {
+                mQuantitiesWriting.put(id, writing);
+            } else {
+                mQuantitiesWriting.remove(id);
+            }
+        }
+    }
+
+    /**
+     * queue a write behind the ones already submitted.
+     *
+     * @param write    the write to run on the writer thread
+     * @param failed   the result handed to the callback if the write throws
+     * @param callback receives the result on the callback looper, may be null
+     */
+    public synchronized <T> void submit(Write<T> write, T failed, Callback<T> callback) {
+        // write the held back stock changes first, they were made before this write
+        flushLocked();
+        enqueue(write, failed, callback);
+    }
+
+    // queue a write behind the ones already submitted, see submit. the caller holds the
+    // lock, so the writes reach the writer thread in the order they were queued
+    private <T> void enqueue(final Write<T> write, final T failed, final Callback<T> callback) {
+        final long submitted = SystemClock.elapsedRealtime();
+        int depth = ++mQueueDepth;
+        mMaxQueueDepth = Math.max(mMaxQueueDepth, depth);
+        if (depth >= BACKLOG_WARNING_DEPTH) {
+            Log.w(TAG, "submit: " + depth + " writes waiting");
+        }
+
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                long started = SystemClock.elapsedRealtime();
+                T result;
+                try {
+                    result = write.run(mResolver);
+                } catch (RuntimeException e) {
+                    // the screens only check the result, as they did when they wrote directly
+                    Log.e(TAG, "run: write failed", e);
+                    result = failed;
+                }
+                writeDone(submitted, started);
+
+                if (callback != null) {
+                    final T done = result;
+                    mCallbackHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            callback.onWriteDone(done);
+                        }
+                    });
+                }
+            }
+        });
+    }
+
+    // count a write that is done, and warn if it was slow
+    private void writeDone(long submitted, long started) {
+        long done = SystemClock.elapsedRealtime();
+        long latency = done - submitted;
+        int depth;
+        synchronized (this) {
+            depth = --mQueueDepth;
+            mWriteCount++;
+            mTotalLatencyMillis += latency;
+            mMaxLatencyMillis = Math.max(mMaxLatencyMillis, latency);
+        }
+        if (latency >= SLOW_WRITE_MILLIS) {
+            Log.w(TAG, "writeDone: waited " + (started - submitted) + "ms, took "
+                    + (done - started) + "ms, " + depth + " writes waiting");
+        }
+    }
+
+    // the changes to the stock of one book held back in the current window
+    private static final class QuantityDelta {
+        // sum of the changes
+        int delta;
+
+        // callbacks of the changes, in the order they were made
+        final List<Callback<Integer>> callbacks = new ArrayList<>();
+    }
+
+    // returns the number of writes submitted but not done yet
+    public synchronized int getQueueDepth() {
+        return mQueueDepth;
+    }
+
+    // returns the most writes that were waiting at once
+    public synchronized int getMaxQueueDepth() {
+        return mMaxQueueDepth;
+    }
+
+    // returns the number of writes done
+    public synchronized long getWriteCount() {
+        return mWriteCount;
+    }
+
+    // returns the average time from submitting a write to it being done, in milliseconds
+    public synchronized long getAverageLatencyMillis() {
+        return mWriteCount == 0 ? 0 : mTotalLatencyMillis / mWriteCount;
+    }
+
+    // returns the longest time from submitting a write to it being done, in milliseconds
+    public synchronized long getMaxLatencyMillis() {
+        return mMaxLatencyMillis;
+    }
+}
@@ -0,0 +1,32 @@
+package com.example.android.bookstore.data;
+
+import android.content.ContentValues;
+
+import com.example.android.bookstore.core.BookValidator;
+
+/**
+ * {@link ContentValuesReader} lets the {@link BookValidator} of the core module read the
+ * values of a book out of {@link ContentValues}.
+ */
+final class ContentValuesReader implements BookValidator.ValueReader<ContentValues> {
+
+    // the reader has no state, so every caller shares this one
+    static final ContentValuesReader INSTANCE = new ContentValuesReader();
+
+    private ContentValuesReader() {}
+
+    @Override
+    public boolean containsKey(ContentValues row, String column) {
+        return row.containsKey(column);
+    }
+
+    @Override
+    public String getAsString(ContentValues row, String column) {
+        return row.getAsString(column);
+    }
+
+    @Override
+    public Integer getAsInteger(ContentValues row, String column) {
+        return row.getAsInteger(column);
+    }
+}
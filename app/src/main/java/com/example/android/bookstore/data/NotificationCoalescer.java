@@ -0,0 +1,164 @@
+package com.example.android.bookstore.data;
+
+import android.content.ContentResolver;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * {@link NotificationCoalescer} batches content change notifications. Instead of calling
+ * {@link ContentResolver#notifyChange(Uri, android.database.ContentObserver)} for every write,
+ * the URI is remembered and all URIs collected during a short time window are sent together
+ * when the window ends. Each distinct URI is sent once per window, and a URI is skipped when
+ * one of its parent URIs is sent in the same window, because the parent already reaches the
+ * observers of its descendants. This keeps a {@link android.content.CursorLoader} from
+ * re-running its query for every single write during a burst of writes.
+ */
+public class NotificationCoalescer {
+
+    // default length of the window in milliseconds
+    public static final long DEFAULT_WINDOW_MILLIS = 75;
+
+    // resolver the notifications are sent through
+    private final ContentResolver mResolver;
+
+    // handler that ends the window
+    private final Handler mHandler;
+
+    // URIs waiting for the end of the current window, in the order they were first seen
+    private final Set<Uri> mPending = new LinkedHashSet<>();
+
+    // length of the window. 0 sends every notification right away.
+    private volatile long mWindowMillis;
+
+    // number of notifications sent to the resolver
+    private long mEmittedCount;
+
+    // number of notifications that were folded into another one
+    private long mSuppressedCount;
+
+    // ends the current window
+    private final Runnable mFlushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    /**
+     * construct a new {@link NotificationCoalescer}.
+     *
+     * @param resolver     the resolver to send notifications through
+     * @param looper       the looper the end of each window runs on
+     * @param windowMillis length of the window in milliseconds, 0 to send right away
+     */
+    public NotificationCoalescer(ContentResolver resolver, Looper looper, long windowMillis) {
+        mResolver = resolver;
+        mHandler = new Handler(looper);
+        setWindowMillis(windowMillis);
+    }
+
+    // change the length of the window. takes effect from the next window.
+    public void setWindowMillis(long windowMillis) {
+        if (windowMillis < 0) {
+            throw new IllegalArgumentException("Window must not be negative: " + windowMillis);
+        }
+        mWindowMillis = windowMillis;
+    }
+
+    // returns the length of the window in milliseconds
+    public long getWindowMillis() {
+        return mWindowMillis;
+    }
+
+    /**
+     * Notify listeners that the data at the given uri has changed. The notification is sent
+     * when the current window ends, together with all the others in the window.
+     */
+    public void notifyChange(Uri uri) {
+        if (mWindowMillis == 0) {
+            synchronized (this) {
+                mEmittedCount++;
+            }
+            mResolver.notifyChange(uri, null);
+            return;
+        }
+
+        synchronized (this) {
+            boolean startWindow = mPending.isEmpty();
+            if (!mPending.add(uri)) {
+                // already waiting to be sent in this window
+                mSuppressedCount++;
+            }
+            if (startWindow) {
+                mHandler.postDelayed(mFlushRunnable, mWindowMillis);
+            }
+        }
+    }
+
+    /**
+     * End the current window now and send every notification that is waiting. Used when the
+     * caller can't wait for the window, for example in tests.
+     */
+    public void flush() {
+        List<Uri> toSend;
+        synchronized (this) {
+            mHandler.removeCallbacks(mFlushRunnable);
+            if (mPending.isEmpty()) {
+                return;
+            }
+
+            toSend = new ArrayList<>(mPending.size());
+            for (Uri uri : mPending) {
+                if (hasPendingParent(uri)) {
+                    mSuppressedCount++;
+                } else {
+                    toSend.add(uri);
+                }
+            }
+            mPending.clear();
+            mEmittedCount += toSend.size();
+        }
+
+        // send outside of the lock, so writers are never blocked on the resolver
+        for (Uri uri : toSend) {
+            mResolver.notifyChange(uri, null);
+        }
+    }
+
+    // returns the number of notifications sent to the resolver
+    public synchronized long getEmittedCount() {
+        return mEmittedCount;
+    }
+
+    // returns the number of notifications folded into another one
+    public synchronized long getSuppressedCount() {
+        return mSuppressedCount;
+    }
+
+    // check if a parent of the given uri is waiting in the same window. must hold the lock.
+    private boolean hasPendingParent(Uri uri) {
+        List<String> segments = uri.getPathSegments();
+        for (Uri other : mPending) {
+            if (other == uri || !equalsOrNull(other.getAuthority(), uri.getAuthority())) {
+                continue;
+            }
+            List<String> parentSegments = other.getPathSegments();
+            if (parentSegments.size() < segments.size()
+                    && segments.subList(0, parentSegments.size()).equals(parentSegments)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // null safe string compare
+    private static boolean equalsOrNull(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+}
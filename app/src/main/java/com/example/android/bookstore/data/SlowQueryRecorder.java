@@ -0,0 +1,127 @@
+package com.example.android.bookstore.data;
+
+import android.database.Cursor;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteCursor;
+import android.database.sqlite.SQLiteCursorDriver;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteQuery;
+import android.util.Log;
+
+import com.example.android.bookstore.core.SlowQueryLog;
+
+/**
+ * {@link SlowQueryRecorder} times the statements of the book database and puts the slow ones
+ * into a {@link SlowQueryLog}, with the plan EXPLAIN QUERY PLAN gives for them.
+ *
+ * It is the cursor factory of the database, so it sees the SQL of every query, whichever
+ * part of the provider built it and whatever selection and sort order the caller passed in.
+ * SQLite runs a query when its cursor is first filled, which is the first call of getCount,
+ * so that call is what is timed. The later windows of a long result are not.
+ */
+final class SlowQueryRecorder implements SQLiteDatabase.CursorFactory {
+
+    // log tag
+    public static final String TAG = SlowQueryRecorder.class.getSimpleName();
+
+    // SQLiteQuery.toString starts with this before the SQL
+    private static final String QUERY_PREFIX = "SQLiteQuery: ";
+
+    private static final String EXPLAIN = "EXPLAIN QUERY PLAN ";
+
+    private final SlowQueryLog mLog;
+
+    SlowQueryRecorder(SlowQueryLog log) {
+        mLog = log;
+    }
+
+    SlowQueryLog getLog() {
+        return mLog;
+    }
+
+    @Override
+    public Cursor newCursor(SQLiteDatabase db, SQLiteCursorDriver masterQuery, String editTable,
+                            SQLiteQuery query) {
+        return new TimedCursor(masterQuery, editTable, query);
+    }
+
+    // returns the start time of a statement that isn't a query, to hand to record
+    long start() {
+        return System.nanoTime();
+    }
+
+    // returns true if a statement that started at start and ended now is slow. check it
+    // before building the SQL of a statement that isn't a query for record.
+    boolean isSlow(long start) {
+        return mLog.isSlow(System.nanoTime() - start);
+    }
+
+    /**
+     * record a statement that ended now if it took longer than the threshold.
+     *
+     * @param sql the statement with its arguments left as ?
+     */
+    void record(SQLiteDatabase db, String sql, long start) {
+        long nanos = System.nanoTime() - start;
+        if (!mLog.isSlow(nanos) || sql.startsWith(EXPLAIN)) {
+            return;
+        }
+        String plan = mLog.findPlan(sql);
+        if (plan == null) {
+            plan = explain(db, sql);
+        }
+        mLog.add(sql, nanos, plan);
+        Log.w(TAG, "record: " + nanos / 1000 + "us " + sql + "\n" + plan);
+    }
+
+    // returns the lines of the query plan of a statement, or null if it can't be explained.
+    // the arguments are left unbound: the plan depends on the shape of the statement, not on
+    // the values.
+    private static String explain(SQLiteDatabase db, String sql) {
+        try {
+            Cursor cursor = db.rawQuery(EXPLAIN + sql, null);
+            try {
+                int detail = cursor.getColumnIndexOrThrow("detail");
+                StringBuilder plan = new StringBuilder();
+                while (cursor.moveToNext()) {
+                    if (plan.length() != 0) {
+                        plan.append('\n');
+                    }
+                    plan.append(cursor.getString(detail));
+                }
+                return plan.toString();
+            } finally {
+                cursor.close();
+            }
+        } catch (SQLException | IllegalArgumentException e) {
+            Log.w(TAG, "explain: could not explain " + sql, e);
+            return null;
+        }
+    }
+
+    // a cursor that times its first fill
+    private final class TimedCursor extends SQLiteCursor {
+
+        private final String mSql;
+
+        private boolean mCounted;
+
+        TimedCursor(SQLiteCursorDriver driver, String editTable, SQLiteQuery query) {
+            super(driver, editTable, query);
+            String sql = query.toString();
+            mSql = sql.startsWith(QUERY_PREFIX) ? sql.substring(QUERY_PREFIX.length()) : sql;
+        }
+
+        @Override
+        public int getCount() {
+            if (mCounted) {
+                return super.getCount();
+            }
+            long start = start();
+            int count = super.getCount();
+            mCounted = true;
+            record(getDatabase(), mSql, start);
+            return count;
+        }
+    }
+}
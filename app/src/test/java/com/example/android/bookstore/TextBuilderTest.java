@@ -0,0 +1,32 @@
+package com.example.android.bookstore;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test for {@link TextBuilder}, which will execute on the development machine (host).
+ */
+public class TextBuilderTest {
+
+    @Test
+    public void appendsStringsAndNumbers() {
+        TextBuilder text = new TextBuilder();
+        assertEquals(" Quantity: 42", text.append(" Quantity: ").append(42).toString());
+        assertEquals("0", text.clear().append(0).toString());
+        assertEquals("-7", text.clear().append(-7).toString());
+        assertEquals(String.valueOf(Integer.MIN_VALUE), text.clear().append(Integer.MIN_VALUE).toString());
+        assertEquals(String.valueOf(Integer.MAX_VALUE), text.clear().append(Integer.MAX_VALUE).toString());
+    }
+
+    @Test
+    public void growsPastInitialCapacity() {
+        TextBuilder text = new TextBuilder();
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            text.append("Price $").append(i);
+            expected.append("Price $").append(i);
+        }
+        assertEquals(expected.toString(), text.toString());
+    }
+}
@@ -0,0 +1,142 @@
+package com.example.android.bookstore.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+import static com.example.android.bookstore.core.BookSchema.*;
+
+/**
+ * Benchmark of the hot database paths of the app: insert, read one book, read one page of
+ * the list and sell a copy. It runs the schema and the SQL of this module on an in-memory
+ * SQLite on the JVM, so a change to them can be measured without a device.
+ *
+ * Run with: ./gradlew :core:jmh
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BookStoreBenchmark {
+
+    // the list query of MainActivity, one page at a time
+    private static final String SQL_LIST_PAGE = "SELECT " + COLUMN_ID + ", "
+            + COLUMN_PRODUCT_NAME + ", " + COLUMN_PRICE + ", " + COLUMN_QUANTITY
+            + " FROM " + TABLE_BOOKS + " WHERE " + BookQueries.KEYSET_AFTER_ID
+            + " ORDER BY " + BookQueries.ORDER_BY_ID + " LIMIT ?";
+
+    // number of rows per page of the list
+    private static final int PAGE_SIZE = 50;
+
+    // number of books in the table
+    @Param({ "1000", "10000" })
+    public int bookCount;
+
+    private Connection mConnection;
+    private PreparedStatement mInsert;
+    private PreparedStatement mSelectById;
+    private PreparedStatement mListPage;
+    private PreparedStatement mSell;
+
+    // the operation counter, spreads the reads and writes over all the books
+    private int mNext;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        mConnection = DriverManager.getConnection("jdbc:sqlite::memory:");
+        Statement statement = mConnection.createStatement();
+        for (String sql : BookSchema.createStatements(true, true)) {
+            statement.execute(sql);
+        }
+        statement.close();
+
+        mInsert = mConnection.prepareStatement(BookQueries.SQL_INSERT);
+        mConnection.setAutoCommit(false);
+        for (int i = 0; i < bookCount; i++) {
+            insert(i);
+        }
+        mConnection.commit();
+        mConnection.setAutoCommit(true);
+
+        mSelectById = mConnection.prepareStatement(BookQueries.selectById(null));
+        mListPage = mConnection.prepareStatement(SQL_LIST_PAGE);
+        mSell = mConnection.prepareStatement(BookQueries.SQL_SELL);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        mConnection.close();
+    }
+
+    @Benchmark
+    public int insertBook() throws SQLException {
+        return insert(mNext++);
+    }
+
+    @Benchmark
+    public void queryById(Blackhole blackhole) throws SQLException {
+        mSelectById.setLong(1, nextId());
+        ResultSet result = mSelectById.executeQuery();
+        try {
+            while (result.next()) {
+                blackhole.consume(result.getString(COLUMN_PRODUCT_NAME));
+                blackhole.consume(result.getInt(COLUMN_QUANTITY));
+            }
+        } finally {
+            result.close();
+        }
+    }
+
+    @Benchmark
+    public void listPage(Blackhole blackhole) throws SQLException {
+        mListPage.setLong(1, nextId() - 1);
+        mListPage.setInt(2, PAGE_SIZE);
+        ResultSet result = mListPage.executeQuery();
+        try {
+            while (result.next()) {
+                blackhole.consume(result.getLong(1));
+                blackhole.consume(result.getString(2));
+                blackhole.consume(result.getString(3));
+                blackhole.consume(result.getInt(4));
+            }
+        } finally {
+            result.close();
+        }
+    }
+
+    @Benchmark
+    public int sell() throws SQLException {
+        mSell.setLong(1, nextId());
+        return mSell.executeUpdate();
+    }
+
+    // insert one made-up book
+    private int insert(int i) throws SQLException {
+        mInsert.setString(1, "Book " + i);
+        mInsert.setString(2, "9");
+        mInsert.setInt(3, Integer.MAX_VALUE);
+        mInsert.setString(4, "Penguin");
+        mInsert.setString(5, "555-5555");
+        return mInsert.executeUpdate();
+    }
+
+    // the _id of the next book to read or write
+    private long nextId() {
+        return mNext++ % bookCount + 1;
+    }
+}
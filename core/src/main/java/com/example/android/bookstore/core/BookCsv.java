@@ -0,0 +1,276 @@
+package com.example.android.bookstore.core;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+import static com.example.android.bookstore.core.BookSchema.*;
+
+/**
+ * {@link BookCsv} reads and writes the books as CSV, the way they are moved between stores:
+ * one header line with the column names, then one line per book. Fields that hold a comma,
+ * a quote or a line break are quoted, and a quote inside them is doubled (RFC 4180). The _id
+ * isn't written, it only means something in the database the book came from.
+ *
+ * Both sides stream: the {@link Writer} writes each field as it gets it, and the
+ * {@link Reader} only holds the record it is on, so a file of any size takes the same memory.
+ */
+public final class BookCsv {
+
+    // the columns of a book in a CSV file, in the order they are written
+    public static final String[] COLUMNS = {
+            COLUMN_PRODUCT_NAME,
+            COLUMN_PRICE,
+            COLUMN_QUANTITY,
+            COLUMN_SUPPLIER_NAME,
+            COLUMN_SUPPLIER_PHONE_NUMBER
+    };
+
+    // to prevent someone from accidentally instantiating the csv class,
+    // give it an empty constructor.
+    private BookCsv() {}
+
+    /**
+     * returns the index of every book column in a header record, in the order of
+     * {@link #COLUMNS}, or -1 for a column the header doesn't have. the names are matched
+     * ignoring case and surrounding spaces, and unknown columns are ignored.
+     *
+     * @throws IllegalArgumentException if the header has none of the book columns
+     */
+    public static int[] mapHeader(Reader header) {
+        int[] indexes = new int[COLUMNS.length];
+        boolean found = false;
+        for (int i = 0; i < COLUMNS.length; i++) {
+            indexes[i] = -1;
+            for (int field = 0; field < header.fieldCount(); field++) {
+                if (COLUMNS[i].equalsIgnoreCase(header.field(field).trim())) {
+                    indexes[i] = field;
+                    found = true;
+                    break;
+                }
+            }
+        }
+        if (!found) {
+            throw new IllegalArgumentException("CSV header has no book columns on line "
+                    + header.lineNumber());
+        }
+        return indexes;
+    }
+
+    /**
+     * writes records to a character stream. every record ends with CRLF. the caller buffers
+     * and closes the stream.
+     */
+    public static final class Writer {
+
+        private final Appendable mOut;
+
+        // true until the first field of the current record is written
+        private boolean mStartOfRecord = true;
+
+        public Writer(Appendable out) {
+            mOut = out;
+        }
+
+        // write the header record of the book columns
+        public Writer writeHeader() throws IOException {
+            for (String column : COLUMNS) {
+                field(column);
+            }
+            return endRecord();
+        }
+
+        // write one field of the current record. null is written as an empty field
+        public Writer field(String value) throws IOException {
+            separate();
+            if (value == null) {
+                return this;
+            }
+            if (!needsQuotes(value)) {
+                mOut.append(value);
+                return this;
+            }
+            mOut.append('"');
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == '"') {
+                    mOut.append('"');
+                }
+                mOut.append(c);
+            }
+            mOut.append('"');
+            return this;
+        }
+
+        // write one number field of the current record
+        public Writer field(long value) throws IOException {
+            separate();
+            mOut.append(Long.toString(value));
+            return this;
+        }
+
+        // end the current record
+        public Writer endRecord() throws IOException {
+            mOut.append("\r\n");
+            mStartOfRecord = true;
+            return this;
+        }
+
+        // write the comma before every field but the first of a record
+        private void separate() throws IOException {
+            if (!mStartOfRecord) {
+                mOut.append(',');
+            }
+            mStartOfRecord = false;
+        }
+
+        private static boolean needsQuotes(String value) {
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == ',' || c == '"' || c == '\r' || c == '\n') {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * reads records from a character stream one at a time. it reads through its own buffer,
+     * so the stream doesn't need one. bad quoting is read as well as it can be rather than
+     * failing the whole file: it is up to the caller to reject the values it gets.
+     */
+    public static final class Reader {
+
+        private static final int BUFFER_SIZE = 8192;
+
+        private static final int END = -1;
+
+        private final java.io.Reader mIn;
+
+        private final char[] mBuffer = new char[BUFFER_SIZE];
+        private int mPosition;
+        private int mLimit;
+
+        // the fields of the current record, and the one being read
+        private final ArrayList<String> mFields = new ArrayList<>();
+        private final StringBuilder mField = new StringBuilder();
+
+        // the line the reader is on, and the line the current record started on
+        private long mLine = 1;
+        private long mRecordLine;
+
+        public Reader(java.io.Reader in) {
+            mIn = in;
+        }
+
+        /**
+         * read the next record.
+         *
+         * @return false at the end of the stream
+         */
+        public boolean next() throws IOException {
+            mFields.clear();
+            int c = read();
+            if (c == '\uFEFF' && mLine == 1 && mRecordLine == 0) {
+                // byte order mark at the start of the file
+                c = read();
+            }
+            if (c == END) {
+                return false;
+            }
+            mRecordLine = mLine;
+
+            mField.setLength(0);
+            boolean quoted = false;
+            boolean inQuotes = false;
+            while (true) {
+                if (inQuotes) {
+                    if (c == END) {
+                        // the file ended inside a quoted field, keep what it has
+                        mFields.add(mField.toString());
+                        return true;
+                    }
+                    if (c == '"') {
+                        if (peek() == '"') {
+                            read();
+                            mField.append('"');
+                        } else {
+                            inQuotes = false;
+                        }
+                    } else {
+                        if (c == '\n') {
+                            mLine++;
+                        }
+                        mField.append((char) c);
+                    }
+                } else if (c == END || c == '\n' || c == '\r') {
+                    if (c == '\r' && peek() == '\n') {
+                        read();
+                    }
+                    if (c != END) {
+                        mLine++;
+                    }
+                    mFields.add(mField.toString());
+                    return true;
+                } else if (c == ',') {
+                    mFields.add(mField.toString());
+                    mField.setLength(0);
+                    quoted = false;
+                } else if (c == '"' && !quoted && mField.length() == 0) {
+                    quoted = true;
+                    inQuotes = true;
+                } else {
+                    mField.append((char) c);
+                }
+                c = read();
+            }
+        }
+
+        // returns the number of fields of the current record
+        public int fieldCount() {
+            return mFields.size();
+        }
+
+        // returns a field of the current record
+        public String field(int index) {
+            return mFields.get(index);
+        }
+
+        // returns true if the current record is an empty line
+        public boolean isBlank() {
+            return mFields.size() == 1 && mFields.get(0).isEmpty();
+        }
+
+        // returns the line number the current record started on, from 1
+        public long lineNumber() {
+            return mRecordLine;
+        }
+
+        private int read() throws IOException {
+            if (!fill()) {
+                return END;
+            }
+            return mBuffer[mPosition++];
+        }
+
+        private int peek() throws IOException {
+            if (!fill()) {
+                return END;
+            }
+            return mBuffer[mPosition];
+        }
+
+        // make sure the buffer has a character left. returns false at the end of the stream
+        private boolean fill() throws IOException {
+            while (mPosition == mLimit) {
+                int count = mIn.read(mBuffer, 0, BUFFER_SIZE);
+                if (count < 0) {
+                    return false;
+                }
+                mPosition = 0;
+                mLimit = count;
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package com.example.android.bookstore.core;
+
+import static com.example.android.bookstore.core.BookSchema.*;
+
+/**
+ * {@link BookQueries} holds the SQL of the reads and writes the app runs against the books
+ * table: the single-book statements, the keyset conditions of the list pages and the
+ * full-text search. The app's BookProvider binds them on the device, and the benchmarks of
+ * this module bind the same text on the JVM.
+ */
+public final class BookQueries {
+
+    // selection for one book by its _id
+    public static final String SELECTION_ID = COLUMN_ID + " = ?";
+
+    // a price and a quantity argument, turned into numbers. arguments are bound as text,
+    // and SQLite only converts them for a plain column, not for an expression like PRICE_KEY
+    // or +quantity, where text would compare greater than every number.
+    private static final String PRICE_ARGUMENT = "(? + 0.0)";
+    private static final String QUANTITY_ARGUMENT = "(? + 0)";
+
+    // insert statement, one placeholder per column in the order of the table
+    public static final String SQL_INSERT = "INSERT INTO " + TABLE_BOOKS + " ("
+            + COLUMN_PRODUCT_NAME + ", "
+            + COLUMN_PRICE + ", "
+            + COLUMN_QUANTITY + ", "
+            + COLUMN_SUPPLIER_NAME + ", "
+            + COLUMN_SUPPLIER_PHONE_NUMBER + ") VALUES (?, ?, ?, ?, ?)";
+
+    // writes every column of one book. the _id is the last placeholder.
+    public static final String SQL_UPDATE_BY_ID = "UPDATE " + TABLE_BOOKS + " SET "
+            + COLUMN_PRODUCT_NAME + " = ?, "
+            + COLUMN_PRICE + " = ?, "
+            + COLUMN_QUANTITY + " = ?, "
+            + COLUMN_SUPPLIER_NAME + " = ?, "
+            + COLUMN_SUPPLIER_PHONE_NUMBER + " = ?"
+            + " WHERE " + SELECTION_ID;
+
+    public static final String SQL_DELETE_BY_ID = "DELETE FROM " + TABLE_BOOKS
+            + " WHERE " + SELECTION_ID;
+
+    // takes one copy of a book out of stock, but only if there is one left
+    public static final String SQL_SELL = "UPDATE " + TABLE_BOOKS
+            + " SET " + COLUMN_QUANTITY + " = " + COLUMN_QUANTITY + " - 1"
+            + " WHERE " + SELECTION_ID + " AND " + COLUMN_QUANTITY + " > 0";
+
+    // adds a number of copies to a book, or takes them out of stock with a negative number.
+    // the stock never goes below zero. the arguments are the number and the _id.
+    public static final String SQL_ADJUST_QUANTITY = "UPDATE " + TABLE_BOOKS
+            + " SET " + COLUMN_QUANTITY + " = MAX(0, " + COLUMN_QUANTITY + " + ?)"
+            + " WHERE " + SELECTION_ID;
+
+    public static final String SQL_QUANTITY_BY_ID = "SELECT " + COLUMN_QUANTITY
+            + " FROM " + TABLE_BOOKS + " WHERE " + SELECTION_ID;
+
+    // one page of the CSV export: the columns of {@link BookCsv#COLUMNS} and then the _id,
+    // which is where the next page starts. the arguments are the _id of the last book of
+    // the previous page (-1 for the first page) and the page size.
+    public static final String SQL_EXPORT_PAGE = "SELECT "
+            + COLUMN_PRODUCT_NAME + ", "
+            + COLUMN_PRICE + ", "
+            + COLUMN_QUANTITY + ", "
+            + COLUMN_SUPPLIER_NAME + ", "
+            + COLUMN_SUPPLIER_PHONE_NUMBER + ", "
+            + COLUMN_ID
+            + " FROM " + TABLE_BOOKS + " WHERE " + COLUMN_ID + " > ?"
+            + " ORDER BY " + COLUMN_ID + " LIMIT ?";
+
+    // order of the pages sorted by id, and the condition that skips the earlier pages.
+    // the argument is the _id of the last book of the previous page.
+    public static final String ORDER_BY_ID = COLUMN_ID;
+    public static final String KEYSET_AFTER_ID = COLUMN_ID + " > ?";
+
+    // order of the pages sorted by title, ignoring case. titles are not unique, so _id breaks
+    // the ties. the first term of the condition lets SQLite seek on the title, the second one
+    // drops the books with the same title that were already on the previous page. the
+    // arguments are the title, the title again and the _id of the last book of the previous
+    // page. the title index is in this order, so SQLite reads it instead of sorting.
+    public static final String ORDER_BY_TITLE = TITLE_KEY + ", " + COLUMN_ID;
+    public static final String KEYSET_AFTER_TITLE = keysetAfter(TITLE_KEY, "?");
+
+    // order of the pages sorted by price, the cheapest first, and the condition that skips
+    // the earlier pages, like the title ones. the price arguments are added to 0.0 like the
+    // prices, so a price bound as text compares as a number.
+    public static final String ORDER_BY_PRICE = PRICE_KEY + ", " + COLUMN_ID;
+    public static final String KEYSET_AFTER_PRICE = keysetAfter(PRICE_KEY, PRICE_ARGUMENT);
+
+    // order of the pages sorted by quantity, the fewest copies first, and the condition that
+    // skips the earlier pages, like the title ones
+    public static final String ORDER_BY_QUANTITY = COLUMN_QUANTITY + ", " + COLUMN_ID;
+    public static final String KEYSET_AFTER_QUANTITY = keysetAfter(COLUMN_QUANTITY, QUANTITY_ARGUMENT);
+
+    // the books table joined with the search matches. rank 0 for the books matched by their
+    // title, 1 for the rest. the title matches are a subset of the matches on any column,
+    // so each book keeps its lowest rank. the two MATCH arguments are the title-only terms
+    // and the any-column terms of searchTerms, in that order.
+    public static final String SEARCH_TABLES = TABLE_BOOKS
+            + " JOIN (SELECT docid, MIN(rank) AS rank FROM ("
+            + "SELECT docid, 0 AS rank FROM " + TABLE_BOOKS_SEARCH
+            + " WHERE " + TABLE_BOOKS_SEARCH + " MATCH ?"
+            + " UNION ALL "
+            + "SELECT docid, 1 AS rank FROM " + TABLE_BOOKS_SEARCH
+            + " WHERE " + TABLE_BOOKS_SEARCH + " MATCH ?"
+            + ") GROUP BY docid) AS matches ON "
+            + TABLE_BOOKS + "." + COLUMN_ID + " = matches.docid";
+
+    // default order of the search results: best rank first, then by title
+    public static final String SEARCH_ORDER_BY = "matches.rank, "
+            + TABLE_BOOKS + "." + COLUMN_PRODUCT_NAME;
+
+    // order of the low-stock list: the fewest copies first, then by title. the same order as
+    // the low-stock index, so SQLite reads the index instead of sorting.
+    public static final String ORDER_BY_LOW_STOCK = COLUMN_QUANTITY + ", " + COLUMN_PRODUCT_NAME;
+
+    // the statistics as the app reads them, with the total value in the currency instead
+    // of cents. used as the table of a query.
+    public static final String STATS_TABLE = "(SELECT "
+            + COLUMN_TITLE_COUNT + ", "
+            + COLUMN_TOTAL_UNITS + ", "
+            + COLUMN_TOTAL_VALUE_CENTS + " / 100.0 AS " + COLUMN_TOTAL_VALUE + ", "
+            + COLUMN_LOW_STOCK_COUNT
+            + " FROM " + TABLE_BOOK_STATS + ")";
+
+    // to prevent someone from accidentally instantiating the queries class,
+    // give it an empty constructor.
+    private BookQueries() {}
+
+    /**
+     * returns the SELECT statement that reads one book by its _id.
+     *
+     * @param projection the columns to read, or null for every column
+     */
+    public static String selectById(String[] projection) {
+        StringBuilder builder = new StringBuilder("SELECT ");
+        if (projection == null) {
+            builder.append('*');
+        } else {
+            for (int i = 0; i < projection.length; i++) {
+                builder.append(i == 0 ? "" : ", ").append(projection[i]);
+            }
+        }
+        return builder.append(" FROM ").append(TABLE_BOOKS)
+                .append(" WHERE ").append(SELECTION_ID).toString();
+    }
+
+    /**
+     * returns the selection of the books with fewer copies than a threshold, which is its
+     * one argument. up to {@link BookSchema#LOW_STOCK_INDEX_LIMIT} the selection carries the
+     * term of the low-stock index, so SQLite can use it: the threshold is bound at run time,
+     * and SQLite can't tell from "quantity < ?" alone that it is under the limit.
+     */
+    public static String lowStockSelection(int threshold) {
+        if (threshold <= LOW_STOCK_INDEX_LIMIT) {
+            return LOW_STOCK_INDEX_TERM + " AND " + COLUMN_QUANTITY + " < ?";
+        }
+        return COLUMN_QUANTITY + " < ?";
+    }
+
+    /**
+     * returns the condition of a price range of a page, which has an argument for each bound
+     * it has, the lowest first. both bounds are inclusive.
+     *
+     * @param sortedByPrice whether the page is sorted by price. if it isn't, the condition
+     *                      keeps SQLite from reading the price index, see {@link #range}
+     */
+    public static String priceRange(boolean hasMin, boolean hasMax, boolean sortedByPrice) {
+        return range(PRICE_KEY, PRICE_ARGUMENT, hasMin, hasMax, sortedByPrice);
+    }
+
+    /**
+     * returns the condition of a quantity range of a page, like {@link #priceRange}.
+     */
+    public static String quantityRange(boolean hasMin, boolean hasMax, boolean sortedByQuantity) {
+        return range(COLUMN_QUANTITY, QUANTITY_ARGUMENT, hasMin, hasMax, sortedByQuantity);
+    }
+
+    // the condition of a range of a sort key. a page is read in the order of the index of its
+    // sort key and stops after its limit, so a range of the same key seeks in that index. a
+    // range of another key must not use its own index: SQLite would then have to sort every
+    // book in the range before it returns the first one. the unary + keeps it off that index,
+    // and the range is checked on the books as the sort index reads them.
+    private static String range(String key, String argument, boolean hasMin, boolean hasMax,
+                                boolean seek) {
+        if (!hasMin && !hasMax) {
+            throw new IllegalArgumentException("A range needs a bound");
+        }
+        String term = seek ? key : "+" + key;
+        if (hasMin && hasMax) {
+            return term + " >= " + argument + " AND " + term + " <= " + argument;
+        }
+        return term + (hasMin ? " >= " : " <= ") + argument;
+    }
+
+    // the keyset condition of a sort key, see KEYSET_AFTER_TITLE
+    private static String keysetAfter(String key, String argument) {
+        return key + " >= " + argument + " AND (" + key + " > " + argument
+                + " OR " + COLUMN_ID + " > ?)";
+    }
+
+    /**
+     * turn the words of a search query into the two MATCH arguments of {@link #SEARCH_TABLES}.
+     * every word becomes a prefix term, so it matches as a whole word or as the start of one.
+     * anything that isn't a letter or a digit separates words, which also keeps the FTS query
+     * syntax out of the terms.
+     *
+     * @return the title-only terms and the any-column terms, or null if the query has no words
+     */
+    public static String[] searchTerms(String query) {
+        StringBuilder anyColumn = new StringBuilder();
+        StringBuilder titleOnly = new StringBuilder();
+        int start = -1;
+        for (int i = 0; i <= query.length(); i++) {
+            boolean wordChar = i < query.length() && Character.isLetterOrDigit(query.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                String word = query.substring(start, i);
+                anyColumn.append(word).append("* ");
+                titleOnly.append(COLUMN_PRODUCT_NAME).append(':').append(word).append("* ");
+                start = -1;
+            }
+        }
+        if (anyColumn.length() == 0) {
+            return null;
+        }
+        return new String[] { titleOnly.toString().trim(), anyColumn.toString().trim() };
+    }
+}
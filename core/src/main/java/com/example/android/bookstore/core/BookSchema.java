@@ -0,0 +1,393 @@
+package com.example.android.bookstore.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * {@link BookSchema} is the schema of the bookstore database as plain SQL: the books table,
+ * its indexes, the search table and the statements that upgrade an older database. The app's
+ * BookDbHelper runs these statements on the device, and the benchmarks of this module run
+ * them on an embedded SQLite on the JVM, so both work on exactly the same schema.
+ */
+public final class BookSchema {
+
+    // database version. If database schema is changed, increment database version
+    // version 2: quantity is an INTEGER column and the books table has secondary indexes
+    // version 3: full-text search table for titles and suppliers
+    // version 4: inventory statistics kept up to date by triggers
+    // version 5: partial index of the books that are running low
+    // version 6: indexes of the case-insensitive title order and of the price as a number
+    public static final int VERSION = 6;
+
+    // the books table and its columns
+    public static final String TABLE_BOOKS = "books";
+    public static final String COLUMN_ID = "_id";
+    public static final String COLUMN_PRODUCT_NAME = "product";
+    public static final String COLUMN_PRICE = "price";
+    public static final String COLUMN_QUANTITY = "quantity";
+    public static final String COLUMN_SUPPLIER_NAME = "supplier";
+    public static final String COLUMN_SUPPLIER_PHONE_NUMBER = "phone";
+
+    // full-text search table for the title and supplier columns
+    public static final String TABLE_BOOKS_SEARCH = "books_fts";
+
+    // one-row table with the inventory statistics, and its columns
+    public static final String TABLE_BOOK_STATS = "book_stats";
+    public static final String COLUMN_TITLE_COUNT = "title_count";
+    public static final String COLUMN_TOTAL_UNITS = "total_units";
+    public static final String COLUMN_TOTAL_VALUE_CENTS = "total_value_cents";
+    public static final String COLUMN_LOW_STOCK_COUNT = "low_stock_count";
+
+    // the total value in the currency instead of cents, as BookQueries.STATS_TABLE reads it
+    public static final String COLUMN_TOTAL_VALUE = "total_value";
+
+    // a book with fewer copies than this counts as low on stock in the statistics
+    public static final int LOW_STOCK_THRESHOLD = 5;
+
+    // index names
+    public static final String INDEX_BOOKS_LIST = "idx_books_list";
+    public static final String INDEX_BOOKS_SUPPLIER = "idx_books_supplier";
+    public static final String INDEX_BOOKS_QUANTITY = "idx_books_quantity";
+    public static final String INDEX_BOOKS_LOW_STOCK = "idx_books_low_stock";
+    public static final String INDEX_BOOKS_TITLE = "idx_books_title";
+    public static final String INDEX_BOOKS_PRICE = "idx_books_price";
+
+    // the low-stock index only holds the books with fewer copies than this. a low-stock
+    // query with a threshold up to this can use it.
+    public static final int LOW_STOCK_INDEX_LIMIT = 20;
+
+    // the condition of the low-stock index. a query only uses a partial index if its WHERE
+    // clause has this exact term in it, so the low-stock query repeats it.
+    public static final String LOW_STOCK_INDEX_TERM = COLUMN_QUANTITY + " < " + LOW_STOCK_INDEX_LIMIT;
+
+    // the title as it is sorted for people: ignoring case, so "the Giver" comes next to
+    // "The Giver" instead of after every title that starts with a capital letter
+    public static final String TITLE_KEY = COLUMN_PRODUCT_NAME + " COLLATE NOCASE";
+
+    // the price as a number. prices are stored as text, which sorts "10" before "9". a query
+    // only uses the price index if it has this exact expression in it. SQLite doesn't match
+    // an index on CAST(price AS REAL) to a range on it, so the price is added to 0.0 instead,
+    // which converts it the same way.
+    public static final String PRICE_KEY = "(" + COLUMN_PRICE + " + 0.0)";
+
+    // SQL statement to create the books table
+    static final String SQL_CREATE_BOOKS_TABLE = "CREATE TABLE " + TABLE_BOOKS + " ("
+            + COLUMN_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+            + COLUMN_PRODUCT_NAME + " TEXT NOT NULL, "
+            + COLUMN_PRICE + " TEXT NOT NULL, "
+            + COLUMN_QUANTITY + " INTEGER NOT NULL DEFAULT 0, "
+            + COLUMN_SUPPLIER_NAME + " TEXT NOT NULL, "
+            + COLUMN_SUPPLIER_PHONE_NUMBER + " TEXT NOT NULL);";
+
+    // covering index for the list: sorted by title, and holds every column of the list
+    // projection (_id is the rowid, which every index carries), so the list never has
+    // to read the table itself.
+    static final String SQL_CREATE_LIST_INDEX = "CREATE INDEX IF NOT EXISTS "
+            + INDEX_BOOKS_LIST + " ON " + TABLE_BOOKS + " ("
+            + COLUMN_PRODUCT_NAME + ", "
+            + COLUMN_PRICE + ", "
+            + COLUMN_QUANTITY + ");";
+
+    // index for filtering and grouping by supplier
+    static final String SQL_CREATE_SUPPLIER_INDEX = "CREATE INDEX IF NOT EXISTS "
+            + INDEX_BOOKS_SUPPLIER + " ON " + TABLE_BOOKS + " ("
+            + COLUMN_SUPPLIER_NAME + ");";
+
+    // index for finding books that are running low
+    static final String SQL_CREATE_QUANTITY_INDEX = "CREATE INDEX IF NOT EXISTS "
+            + INDEX_BOOKS_QUANTITY + " ON " + TABLE_BOOKS + " ("
+            + COLUMN_QUANTITY + ");";
+
+    // index of the titles ignoring case, for the list sorted by title. the _id is the rowid,
+    // which every index ends with, so the pages sorted by title and then _id are read in
+    // index order.
+    static final String SQL_CREATE_TITLE_INDEX = "CREATE INDEX IF NOT EXISTS "
+            + INDEX_BOOKS_TITLE + " ON " + TABLE_BOOKS + " (" + TITLE_KEY + ");";
+
+    // index of the price as a number, for the list sorted by price and for price ranges.
+    // indexes on expressions came in SQLite 3.9.0, which Android has since API 24. before
+    // that the price order is sorted for every page.
+    static final String SQL_CREATE_PRICE_INDEX = "CREATE INDEX IF NOT EXISTS "
+            + INDEX_BOOKS_PRICE + " ON " + TABLE_BOOKS + " (" + PRICE_KEY + ");";
+
+    // index of the books that are running low, most urgent first, holding every column of
+    // the list so the low-stock list never reads the table itself. only the few books under
+    // the limit are in it, so it stays small however big the catalog gets, and writes to
+    // books that are well stocked don't touch it.
+    static final String SQL_CREATE_LOW_STOCK_INDEX = "CREATE INDEX IF NOT EXISTS "
+            + INDEX_BOOKS_LOW_STOCK + " ON " + TABLE_BOOKS + " ("
+            + COLUMN_QUANTITY + ", "
+            + COLUMN_PRODUCT_NAME + ", "
+            + COLUMN_PRICE + ") WHERE " + LOW_STOCK_INDEX_TERM + ";";
+
+    // the same index over every book, for SQLite before 3.8.0, which has no partial indexes.
+    // the low-stock query still reads it in order, it just isn't as small.
+    static final String SQL_CREATE_LOW_STOCK_INDEX_FULL = SQL_CREATE_LOW_STOCK_INDEX.substring(0,
+            SQL_CREATE_LOW_STOCK_INDEX.indexOf(" WHERE ")) + ";";
+
+    // full-text index of the title and supplier of every book. the docid of a row is the
+    // _id of its book. triggers on the books table keep it in sync.
+    static final String SQL_CREATE_SEARCH_TABLE = "CREATE VIRTUAL TABLE "
+            + TABLE_BOOKS_SEARCH + " USING fts4("
+            + COLUMN_PRODUCT_NAME + ", "
+            + COLUMN_SUPPLIER_NAME + ");";
+
+    // copy a new book into the search table
+    static final String SQL_CREATE_SEARCH_INSERT_TRIGGER = "CREATE TRIGGER IF NOT EXISTS "
+            + TABLE_BOOKS_SEARCH + "_ai AFTER INSERT ON " + TABLE_BOOKS + " BEGIN"
+            + " INSERT INTO " + TABLE_BOOKS_SEARCH + " (docid, "
+            + COLUMN_PRODUCT_NAME + ", " + COLUMN_SUPPLIER_NAME + ")"
+            + " VALUES (new." + COLUMN_ID + ", new." + COLUMN_PRODUCT_NAME
+            + ", new." + COLUMN_SUPPLIER_NAME + ");"
+            + " END;";
+
+    // copy a changed title or supplier into the search table. other columns don't touch it.
+    static final String SQL_CREATE_SEARCH_UPDATE_TRIGGER = "CREATE TRIGGER IF NOT EXISTS "
+            + TABLE_BOOKS_SEARCH + "_au AFTER UPDATE OF "
+            + COLUMN_PRODUCT_NAME + ", " + COLUMN_SUPPLIER_NAME
+            + " ON " + TABLE_BOOKS + " BEGIN"
+            + " UPDATE " + TABLE_BOOKS_SEARCH + " SET "
+            + COLUMN_PRODUCT_NAME + " = new." + COLUMN_PRODUCT_NAME + ", "
+            + COLUMN_SUPPLIER_NAME + " = new." + COLUMN_SUPPLIER_NAME
+            + " WHERE docid = old." + COLUMN_ID + ";"
+            + " END;";
+
+    // remove a deleted book from the search table
+    static final String SQL_CREATE_SEARCH_DELETE_TRIGGER = "CREATE TRIGGER IF NOT EXISTS "
+            + TABLE_BOOKS_SEARCH + "_ad AFTER DELETE ON " + TABLE_BOOKS + " BEGIN"
+            + " DELETE FROM " + TABLE_BOOKS_SEARCH + " WHERE docid = old." + COLUMN_ID + ";"
+            + " END;";
+
+    // the statistics table. the CHECK keeps it to the one row with id 0.
+    static final String SQL_CREATE_STATS_TABLE = "CREATE TABLE " + TABLE_BOOK_STATS + " ("
+            + "id INTEGER PRIMARY KEY CHECK (id = 0), "
+            + COLUMN_TITLE_COUNT + " INTEGER NOT NULL DEFAULT 0, "
+            + COLUMN_TOTAL_UNITS + " INTEGER NOT NULL DEFAULT 0, "
+            + COLUMN_TOTAL_VALUE_CENTS + " INTEGER NOT NULL DEFAULT 0, "
+            + COLUMN_LOW_STOCK_COUNT + " INTEGER NOT NULL DEFAULT 0);";
+
+    // the statistics of a full scan of the books table, in the columns of the statistics table
+    static final String SQL_SCAN_STATS = "SELECT COUNT(*), "
+            + "IFNULL(SUM(" + COLUMN_QUANTITY + "), 0), "
+            + "IFNULL(SUM(" + valueCents("") + "), 0), "
+            + "IFNULL(SUM(" + lowStock("") + "), 0)"
+            + " FROM " + TABLE_BOOKS;
+
+    /**
+     * recompute the statistics from a full scan of the books table. used to fill the table
+     * when it is created and to repair it if it ever drifts from the books.
+     */
+    public static final String SQL_REBUILD_STATS = "INSERT OR REPLACE INTO " + TABLE_BOOK_STATS
+            + " (id, " + COLUMN_TITLE_COUNT + ", " + COLUMN_TOTAL_UNITS + ", "
+            + COLUMN_TOTAL_VALUE_CENTS + ", " + COLUMN_LOW_STOCK_COUNT + ") "
+            + SQL_SCAN_STATS.replaceFirst("SELECT ", "SELECT 0, ");
+
+    /**
+     * count the rows where the statistics table disagrees with a full scan of the books
+     * table: 0 if they are consistent, 1 if they have drifted or the row is missing.
+     */
+    public static final String SQL_CHECK_STATS = "SELECT COUNT(*) FROM ("
+            + SQL_SCAN_STATS + " EXCEPT SELECT "
+            + COLUMN_TITLE_COUNT + ", " + COLUMN_TOTAL_UNITS + ", "
+            + COLUMN_TOTAL_VALUE_CENTS + ", " + COLUMN_LOW_STOCK_COUNT
+            + " FROM " + TABLE_BOOK_STATS + ")";
+
+    // add a new book to the statistics
+    static final String SQL_CREATE_STATS_INSERT_TRIGGER = "CREATE TRIGGER IF NOT EXISTS "
+            + TABLE_BOOK_STATS + "_ai AFTER INSERT ON " + TABLE_BOOKS + " BEGIN"
+            + " UPDATE " + TABLE_BOOK_STATS + " SET "
+            + COLUMN_TITLE_COUNT + " = " + COLUMN_TITLE_COUNT + " + 1, "
+            + COLUMN_TOTAL_UNITS + " = " + COLUMN_TOTAL_UNITS + " + new." + COLUMN_QUANTITY + ", "
+            + COLUMN_TOTAL_VALUE_CENTS + " = " + COLUMN_TOTAL_VALUE_CENTS + " + " + valueCents("new.") + ", "
+            + COLUMN_LOW_STOCK_COUNT + " = " + COLUMN_LOW_STOCK_COUNT + " + " + lowStock("new.") + ";"
+            + " END;";
+
+    // swap the old price and quantity of a book for the new ones. other columns don't
+    // touch the statistics.
+    static final String SQL_CREATE_STATS_UPDATE_TRIGGER = "CREATE TRIGGER IF NOT EXISTS "
+            + TABLE_BOOK_STATS + "_au AFTER UPDATE OF "
+            + COLUMN_PRICE + ", " + COLUMN_QUANTITY + " ON " + TABLE_BOOKS + " BEGIN"
+            + " UPDATE " + TABLE_BOOK_STATS + " SET "
+            + COLUMN_TOTAL_UNITS + " = " + COLUMN_TOTAL_UNITS
+            + " - old." + COLUMN_QUANTITY + " + new." + COLUMN_QUANTITY + ", "
+            + COLUMN_TOTAL_VALUE_CENTS + " = " + COLUMN_TOTAL_VALUE_CENTS
+            + " - " + valueCents("old.") + " + " + valueCents("new.") + ", "
+            + COLUMN_LOW_STOCK_COUNT + " = " + COLUMN_LOW_STOCK_COUNT
+            + " - " + lowStock("old.") + " + " + lowStock("new.") + ";"
+            + " END;";
+
+    // take a deleted book out of the statistics
+    static final String SQL_CREATE_STATS_DELETE_TRIGGER = "CREATE TRIGGER IF NOT EXISTS "
+            + TABLE_BOOK_STATS + "_ad AFTER DELETE ON " + TABLE_BOOKS + " BEGIN"
+            + " UPDATE " + TABLE_BOOK_STATS + " SET "
+            + COLUMN_TITLE_COUNT + " = " + COLUMN_TITLE_COUNT + " - 1, "
+            + COLUMN_TOTAL_UNITS + " = " + COLUMN_TOTAL_UNITS + " - old." + COLUMN_QUANTITY + ", "
+            + COLUMN_TOTAL_VALUE_CENTS + " = " + COLUMN_TOTAL_VALUE_CENTS + " - " + valueCents("old.") + ", "
+            + COLUMN_LOW_STOCK_COUNT + " = " + COLUMN_LOW_STOCK_COUNT + " - " + lowStock("old.") + ";"
+            + " END;";
+
+    // every column of the books table, in table order
+    private static final String ALL_COLUMNS = COLUMN_ID + ", "
+            + COLUMN_PRODUCT_NAME + ", "
+            + COLUMN_PRICE + ", "
+            + COLUMN_QUANTITY + ", "
+            + COLUMN_SUPPLIER_NAME + ", "
+            + COLUMN_SUPPLIER_PHONE_NUMBER;
+
+    // name the books table is moved to while it is rebuilt
+    private static final String TABLE_BOOKS_OLD = TABLE_BOOKS + "_old";
+
+    // to prevent someone from accidentally instantiating the schema class,
+    // give it an empty constructor.
+    private BookSchema() {}
+
+    /**
+     * check if a version of SQLite, as sqlite_version() returns it, supports partial indexes.
+     * they came in 3.8.0, which Android has since API 21.
+     */
+    public static boolean supportsPartialIndexes(String sqliteVersion) {
+        return isAtLeast(sqliteVersion, 8);
+    }
+
+    /**
+     * check if a version of SQLite, as sqlite_version() returns it, supports indexes on
+     * expressions. they came in 3.9.0, which Android has since API 24.
+     */
+    public static boolean supportsExpressionIndexes(String sqliteVersion) {
+        return isAtLeast(sqliteVersion, 9);
+    }
+
+    // check if a version of SQLite is at least 3.minor
+    private static boolean isAtLeast(String sqliteVersion, int minor) {
+        String[] parts = sqliteVersion.split("\\.");
+        try {
+            int major = Integer.parseInt(parts[0]);
+            int versionMinor = parts.length > 1 ? Integer.parseInt(parts[1]) : 0;
+            return major > 3 || (major == 3 && versionMinor >= minor);
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * returns the statements that create the current schema in an empty database, in the
+     * order they must run.
+     *
+     * @param partialIndexes    whether the SQLite that runs them supports partial indexes
+     * @param expressionIndexes whether it supports indexes on expressions
+     */
+    public static String[] createStatements(boolean partialIndexes, boolean expressionIndexes) {
+        List<String> statements = new ArrayList<>();
+        Collections.addAll(statements,
+                SQL_CREATE_BOOKS_TABLE,
+                SQL_CREATE_LIST_INDEX,
+                SQL_CREATE_SUPPLIER_INDEX,
+                SQL_CREATE_QUANTITY_INDEX,
+                partialIndexes ? SQL_CREATE_LOW_STOCK_INDEX : SQL_CREATE_LOW_STOCK_INDEX_FULL,
+                SQL_CREATE_TITLE_INDEX);
+        if (expressionIndexes) {
+            statements.add(SQL_CREATE_PRICE_INDEX);
+        }
+        Collections.addAll(statements,
+                SQL_CREATE_SEARCH_TABLE,
+                SQL_CREATE_SEARCH_INSERT_TRIGGER,
+                SQL_CREATE_SEARCH_UPDATE_TRIGGER,
+                SQL_CREATE_SEARCH_DELETE_TRIGGER,
+                SQL_CREATE_STATS_TABLE,
+                SQL_REBUILD_STATS,
+                SQL_CREATE_STATS_INSERT_TRIGGER,
+                SQL_CREATE_STATS_UPDATE_TRIGGER,
+                SQL_CREATE_STATS_DELETE_TRIGGER);
+        return statements.toArray(new String[statements.size()]);
+    }
+
+    /**
+     * returns the statements that upgrade a database of the given version to the current
+     * schema, in the order they must run. they are meant to run in one transaction.
+     *
+     * @param oldVersion        the version of the database, from 1 to {@link #VERSION}
+     * @param partialIndexes    whether the SQLite that runs them supports partial indexes
+     * @param expressionIndexes whether it supports indexes on expressions
+     */
+    public static String[] upgradeStatements(int oldVersion, boolean partialIndexes,
+                                             boolean expressionIndexes) {
+        if (oldVersion < 1 || oldVersion > VERSION) {
+            throw new IllegalArgumentException("Cannot upgrade from version " + oldVersion);
+        }
+
+        // used code from: https://thebhwgroup.com/blog/how-android-sqlite-onupgrade
+        List<String> statements = new ArrayList<>();
+        if (oldVersion < 2) {
+            // version 1 declared quantity as "INTERGER". it contains "INT", so the column
+            // already has integer affinity, and only the declared type name is wrong. SQLite
+            // can't change the type of a column, so the table is rebuilt with the right name
+            // and the rows are copied over.
+            Collections.addAll(statements, rebuildBooksTableStatements());
+            Collections.addAll(statements,
+                    SQL_CREATE_LIST_INDEX, SQL_CREATE_SUPPLIER_INDEX, SQL_CREATE_QUANTITY_INDEX);
+        }
+        if (oldVersion < 3) {
+            // add the search table and fill it with the books that are already there
+            Collections.addAll(statements, SQL_CREATE_SEARCH_TABLE,
+                    "INSERT INTO " + TABLE_BOOKS_SEARCH + " (docid, "
+                            + COLUMN_PRODUCT_NAME + ", " + COLUMN_SUPPLIER_NAME + ")"
+                            + " SELECT " + COLUMN_ID + ", " + COLUMN_PRODUCT_NAME + ", "
+                            + COLUMN_SUPPLIER_NAME + " FROM " + TABLE_BOOKS,
+                    SQL_CREATE_SEARCH_INSERT_TRIGGER,
+                    SQL_CREATE_SEARCH_UPDATE_TRIGGER,
+                    SQL_CREATE_SEARCH_DELETE_TRIGGER);
+        }
+        if (oldVersion < 4) {
+            // add the statistics and count the books that are already there
+            Collections.addAll(statements, SQL_CREATE_STATS_TABLE, SQL_REBUILD_STATS,
+                    SQL_CREATE_STATS_INSERT_TRIGGER,
+                    SQL_CREATE_STATS_UPDATE_TRIGGER,
+                    SQL_CREATE_STATS_DELETE_TRIGGER);
+        }
+        if (oldVersion < 5) {
+            statements.add(partialIndexes
+                    ? SQL_CREATE_LOW_STOCK_INDEX : SQL_CREATE_LOW_STOCK_INDEX_FULL);
+        }
+        if (oldVersion < 6) {
+            statements.add(SQL_CREATE_TITLE_INDEX);
+            if (expressionIndexes) {
+                statements.add(SQL_CREATE_PRICE_INDEX);
+            }
+        }
+        return statements.toArray(new String[statements.size()]);
+    }
+
+    // the value of a book's stock in cents. prices are stored as text, so they are converted
+    // here. whole cents keep the running total exact, where adding and taking away REAL
+    // values would slowly drift.
+    private static String valueCents(String row) {
+        return "CAST(ROUND(CAST(" + row + COLUMN_PRICE + " AS REAL) * 100) AS INTEGER) * "
+                + row + COLUMN_QUANTITY;
+    }
+
+    // 1 if a book counts as low on stock, 0 otherwise
+    private static String lowStock(String row) {
+        return "(" + row + COLUMN_QUANTITY + " < " + LOW_STOCK_THRESHOLD + ")";
+    }
+
+    // rebuild the books table with the current definition, keeping every row, its _id,
+    // and the AUTOINCREMENT counter. triggers and indexes go with the old table, so the
+    // caller has to create them again.
+    private static String[] rebuildBooksTableStatements() {
+        return new String[] {
+                "ALTER TABLE " + TABLE_BOOKS + " RENAME TO " + TABLE_BOOKS_OLD,
+                SQL_CREATE_BOOKS_TABLE,
+                "INSERT INTO " + TABLE_BOOKS + " (" + ALL_COLUMNS + ") SELECT "
+                        + ALL_COLUMNS + " FROM " + TABLE_BOOKS_OLD,
+
+                // carry the AUTOINCREMENT counter over, so ids of deleted books aren't handed
+                // out again
+                "DELETE FROM sqlite_sequence WHERE name = '" + TABLE_BOOKS + "'",
+                "INSERT INTO sqlite_sequence (name, seq) SELECT '" + TABLE_BOOKS + "', seq"
+                        + " FROM sqlite_sequence WHERE name = '" + TABLE_BOOKS_OLD + "'",
+
+                "DROP TABLE " + TABLE_BOOKS_OLD
+        };
+    }
+}
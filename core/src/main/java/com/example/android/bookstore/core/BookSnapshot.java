@@ -0,0 +1,193 @@
+package com.example.android.bookstore.core;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * {@link BookSnapshot} is a compact binary copy of the first rows of the book list: the _id,
+ * title, price and quantity of each book, in list order. The app writes one whenever the
+ * first page of the list changes, and on the next launch it maps the file into memory and
+ * shows the rows before the database is even open.
+ *
+ * The file is a magic number, the format version and the number of rows, then per row the
+ * _id (8 bytes), the quantity (4 bytes) and the title and price as UTF-8, each after its
+ * length in bytes (4 bytes, -1 for null). All numbers are big-endian.
+ */
+public final class BookSnapshot {
+
+    // first bytes of a snapshot file, "BKSN"
+    public static final int MAGIC = 0x424B534E;
+
+    // version of the format. a file of another version is ignored
+    public static final int FORMAT_VERSION = 1;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    // to prevent someone from accidentally instantiating the snapshot class,
+    // give it an empty constructor.
+    private BookSnapshot() {}
+
+    /**
+     * writes the rows of a snapshot to a stream. the number of rows is written first, so it
+     * must be known up front. the caller buffers and closes the stream.
+     */
+    public static final class Writer {
+
+        private final DataOutputStream mOut;
+
+        // rows still to be written
+        private int mRemaining;
+
+        /**
+         * construct a new {@link Writer} and write the header.
+         *
+         * @param count the number of rows that will be written
+         */
+        public Writer(DataOutputStream out, int count) throws IOException {
+            if (count < 0) {
+                throw new IllegalArgumentException("Snapshot row count must not be negative " + count);
+            }
+            mOut = out;
+            mRemaining = count;
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(count);
+        }
+
+        // write the next row
+        public Writer write(long id, String title, String price, int quantity) throws IOException {
+            if (mRemaining == 0) {
+                throw new IllegalStateException("Snapshot has more rows than its count");
+            }
+            mRemaining--;
+            mOut.writeLong(id);
+            mOut.writeInt(quantity);
+            writeString(title);
+            writeString(price);
+            return this;
+        }
+
+        // check that every row was written, and flush the stream
+        public void finish() throws IOException {
+            if (mRemaining != 0) {
+                throw new IllegalStateException("Snapshot is missing " + mRemaining + " rows");
+            }
+            mOut.flush();
+        }
+
+        private void writeString(String value) throws IOException {
+            if (value == null) {
+                mOut.writeInt(-1);
+                return;
+            }
+            byte[] bytes = value.getBytes(UTF_8);
+            mOut.writeInt(bytes.length);
+            mOut.write(bytes);
+        }
+    }
+
+    /**
+     * reads the rows of a snapshot out of a buffer, e.g. a file mapped into memory. a file
+     * that is cut short or isn't a snapshot throws an IllegalArgumentException, so a broken
+     * file is never shown.
+     */
+    public static final class Reader {
+
+        private final ByteBuffer mBuffer;
+
+        private final int mCount;
+
+        // rows not read yet
+        private int mRemaining;
+
+        // the current row
+        private long mId;
+        private int mQuantity;
+        private String mTitle;
+        private String mPrice;
+
+        /**
+         * construct a new {@link Reader} and check the header.
+         *
+         * @throws IllegalArgumentException if the buffer doesn't start with a snapshot header
+         */
+        public Reader(ByteBuffer buffer) {
+            mBuffer = buffer;
+            try {
+                if (buffer.getInt() != MAGIC) {
+                    throw new IllegalArgumentException("Not a book snapshot");
+                }
+                int version = buffer.getInt();
+                if (version != FORMAT_VERSION) {
+                    throw new IllegalArgumentException("Unknown book snapshot version " + version);
+                }
+                mCount = buffer.getInt();
+            } catch (BufferUnderflowException e) {
+                throw new IllegalArgumentException("Book snapshot is cut short", e);
+            }
+            if (mCount < 0) {
+                throw new IllegalArgumentException("Invalid book snapshot row count " + mCount);
+            }
+            mRemaining = mCount;
+        }
+
+        // returns the number of rows in the snapshot
+        public int count() {
+            return mCount;
+        }
+
+        /**
+         * move to the next row.
+         *
+         * @return false after the last row
+         * @throws IllegalArgumentException if the snapshot is cut short
+         */
+        public boolean next() {
+            if (mRemaining == 0) {
+                return false;
+            }
+            try {
+                mId = mBuffer.getLong();
+                mQuantity = mBuffer.getInt();
+                mTitle = readString();
+                mPrice = readString();
+            } catch (BufferUnderflowException e) {
+                throw new IllegalArgumentException("Book snapshot is cut short", e);
+            }
+            mRemaining--;
+            return true;
+        }
+
+        public long id() {
+            return mId;
+        }
+
+        public String title() {
+            return mTitle;
+        }
+
+        public String price() {
+            return mPrice;
+        }
+
+        public int quantity() {
+            return mQuantity;
+        }
+
+        private String readString() {
+            int length = mBuffer.getInt();
+            if (length == -1) {
+                return null;
+            }
+            if (length < 0 || length > mBuffer.remaining()) {
+                throw new IllegalArgumentException("Invalid string length in book snapshot " + length);
+            }
+            byte[] bytes = new byte[length];
+            mBuffer.get(bytes);
+            return new String(bytes, UTF_8);
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package com.example.android.bookstore.core;
+
+import static com.example.android.bookstore.core.BookSchema.*;
+
+/**
+ * {@link BookValidator} checks the values of a book before they go into the books table. It is
+ * shared by every write path of the app's BookProvider. The values can be held in anything a
+ * {@link ValueReader} can read, e.g. ContentValues in the app or a Map on the JVM.
+ *
+ * The result is an int with one bit per error, so one call reports every failing column, and
+ * {@link #VALID} (0) when there is nothing wrong. Checking a valid book allocates nothing,
+ * which matters when a bulk import checks thousands of rows: a bad row just costs its error
+ * bits instead of an exception.
+ */
+public final class BookValidator {
+
+    // the values are valid
+    public static final int VALID = 0;
+
+    // error codes. each one is a single bit, so they can be combined.
+    public static final int ERROR_TITLE_MISSING = 1;
+    public static final int ERROR_PRICE_MISSING = 1 << 1;
+    public static final int ERROR_QUANTITY_NEGATIVE = 1 << 2;
+    public static final int ERROR_PHONE_MISSING = 1 << 3;
+    public static final int ERROR_PHONE_FORMAT = 1 << 4;
+
+    // every error code, in the order they are described
+    private static final int[] ERRORS = {
+            ERROR_TITLE_MISSING,
+            ERROR_PRICE_MISSING,
+            ERROR_QUANTITY_NEGATIVE,
+            ERROR_PHONE_MISSING,
+            ERROR_PHONE_FORMAT
+    };
+
+    /**
+     * reads the value of a column out of a row of type T. implementations should be
+     * stateless, so one instance can be shared and checking a row allocates nothing.
+     */
+    public interface ValueReader<T> {
+
+        // check if the row has a value (which may be null) for the column
+        boolean containsKey(T row, String column);
+
+        // returns the value of the column as a string, or null
+        String getAsString(T row, String column);
+
+        // returns the value of the column as an integer, or null if it is missing or
+        // not a number
+        Integer getAsInteger(T row, String column);
+    }
+
+    // to prevent someone from accidentally instantiating the validator class,
+    // give it an empty constructor.
+    private BookValidator() {}
+
+    /**
+     * check the values of a new book. the title, price and phone number are required.
+     *
+     * @return {@link #VALID}, or the error codes of every failing column
+     */
+    public static <T> int validateInsert(T values, ValueReader<T> reader) {
+        int errors = VALID;
+
+        // check that the product name is not null
+        if (reader.getAsString(values, COLUMN_PRODUCT_NAME) == null) {
+            errors |= ERROR_TITLE_MISSING;
+        }
+
+        // check that there is a price
+        if (reader.getAsString(values, COLUMN_PRICE) == null) {
+            errors |= ERROR_PRICE_MISSING;
+        }
+
+        // quantity is optional, it defaults to 0
+        errors |= checkQuantity(values, reader);
+
+        // supplier is not required so no need to check. any value is valid
+
+        // check that phone number is valid
+        errors |= checkPhone(values, reader);
+
+        return errors;
+    }
+
+    /**
+     * check the values of an update. only the columns that are in the values are checked,
+     * the others keep what they have in the table.
+     *
+     * @return {@link #VALID}, or the error codes of every failing column
+     */
+    public static <T> int validateUpdate(T values, ValueReader<T> reader) {
+        int errors = VALID;
+
+        if (reader.containsKey(values, COLUMN_PRODUCT_NAME)
+                && reader.getAsString(values, COLUMN_PRODUCT_NAME) == null) {
+            errors |= ERROR_TITLE_MISSING;
+        }
+
+        if (reader.containsKey(values, COLUMN_PRICE)
+                && reader.getAsString(values, COLUMN_PRICE) == null) {
+            errors |= ERROR_PRICE_MISSING;
+        }
+
+        errors |= checkQuantity(values, reader);
+
+        if (reader.containsKey(values, COLUMN_SUPPLIER_PHONE_NUMBER)) {
+            errors |= checkPhone(values, reader);
+        }
+
+        return errors;
+    }
+
+    // returns the column an error code is about
+    public static String columnOf(int error) {
+        switch (error) {
+            case ERROR_TITLE_MISSING:
+                return COLUMN_PRODUCT_NAME;
+            case ERROR_PRICE_MISSING:
+                return COLUMN_PRICE;
+            case ERROR_QUANTITY_NEGATIVE:
+                return COLUMN_QUANTITY;
+            case ERROR_PHONE_MISSING:
+            case ERROR_PHONE_FORMAT:
+                return COLUMN_SUPPLIER_PHONE_NUMBER;
+            default:
+                throw new IllegalArgumentException("Unknown error code " + error);
+        }
+    }
+
+    // returns a message describing the given error codes, e.g. for an exception.
+    // only called when something failed, so it is free to allocate.
+    public static String describe(int errors) {
+        StringBuilder message = new StringBuilder();
+        for (int error : ERRORS) {
+            if ((errors & error) == 0) {
+                continue;
+            }
+            if (message.length() > 0) {
+                message.append("; ");
+            }
+            switch (error) {
+                case ERROR_TITLE_MISSING:
+                    message.append("Book requires a title");
+                    break;
+                case ERROR_PRICE_MISSING:
+                    message.append("Book requires valid price");
+                    break;
+                case ERROR_QUANTITY_NEGATIVE:
+                    message.append("Book requires valid quantity");
+                    break;
+                default:
+                    message.append("Book requires valid phone number");
+                    break;
+            }
+        }
+        return message.toString();
+    }
+
+    /**
+     * check that a phone number only has digits and dashes, in any order. it is the same
+     * rule as the regex "^[0-9\\-]*$", without creating a Matcher for every check.
+     */
+    public static boolean isPhoneNumber(CharSequence phone) {
+        for (int i = 0, length = phone.length(); i < length; i++) {
+            char c = phone.charAt(i);
+            if ((c < '0' || c > '9') && c != '-') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // check that the quantity, if there is one, is not negative
+    private static <T> int checkQuantity(T values, ValueReader<T> reader) {
+        Integer quantity = reader.getAsInteger(values, COLUMN_QUANTITY);
+        if (quantity != null && quantity < 0) {
+            return ERROR_QUANTITY_NEGATIVE;
+        }
+        return VALID;
+    }
+
+    // check that there is a phone number and that it is valid
+    private static <T> int checkPhone(T values, ValueReader<T> reader) {
+        String phone = reader.getAsString(values, COLUMN_SUPPLIER_PHONE_NUMBER);
+        if (phone == null) {
+            return ERROR_PHONE_MISSING;
+        }
+        if (!isPhoneNumber(phone)) {
+            return ERROR_PHONE_FORMAT;
+        }
+        return VALID;
+    }
+}
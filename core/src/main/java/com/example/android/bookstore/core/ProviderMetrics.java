@@ -0,0 +1,255 @@
+package com.example.android.bookstore.core;
+
+import java.io.PrintWriter;
+
+/**
+ * {@link ProviderMetrics} counts how long the operations of a content provider take and how
+ * many rows they return or change, for every URI the provider matches. Each URI and
+ * operation has a latency histogram with buckets that double in width, from 1 microsecond
+ * to over an hour, so a percentile is only as exact as its bucket, but recording one
+ * operation is a few additions without any allocation.
+ *
+ * While metrics are disabled, {@link #start} returns 0 and {@link #record} ignores
+ * operations that started at 0, so all an operation costs is reading one volatile field.
+ *
+ * All methods are thread safe.
+ */
+public final class ProviderMetrics {
+
+    // number of latency buckets. bucket 0 holds the operations under 1 microsecond, and
+    // bucket i the ones from 2^(i-1) up to 2^i microseconds. the last one holds the rest.
+    public static final int BUCKET_COUNT = 33;
+
+    // the names of the uris and of the operations, for dump
+    private final String[] mUriNames;
+    private final String[] mOperationNames;
+
+    // the stats of every uri and operation, indexed by uri * operations + operation
+    private final Stats[] mStats;
+
+    private volatile boolean mEnabled;
+
+    /**
+     * construct a new instance of {@link ProviderMetrics}.
+     *
+     * @param uriNames       the names of the uris, the index of a name is the uri index
+     *                       handed to {@link #record}
+     * @param operationNames the names of the operations, likewise
+     */
+    public ProviderMetrics(String[] uriNames, String[] operationNames) {
+        mUriNames = uriNames.clone();
+        mOperationNames = operationNames.clone();
+        mStats = new Stats[uriNames.length * operationNames.length];
+        for (int i = 0; i < mStats.length; i++) {
+            mStats[i] = new Stats();
+        }
+    }
+
+    public boolean isEnabled() {
+        return mEnabled;
+    }
+
+    // turn the metrics on or off. the counts so far are kept, see reset
+    public void setEnabled(boolean enabled) {
+        mEnabled = enabled;
+    }
+
+    // returns the start time of an operation to hand to record, or 0 while disabled
+    public long start() {
+        if (!mEnabled) {
+            return 0;
+        }
+        return System.nanoTime();
+    }
+
+    /**
+     * count one operation that ended now.
+     *
+     * @param uri       the index of the uri, an index out of range is ignored
+     * @param operation the index of the operation
+     * @param start     what {@link #start} returned when the operation started
+     * @param rows      the rows the operation returned or changed, or -1 if it failed
+     */
+    public void record(int uri, int operation, long start, int rows) {
+        if (start == 0 || uri < 0 || uri >= mUriNames.length
+                || operation < 0 || operation >= mOperationNames.length) {
+            return;
+        }
+        mStats[uri * mOperationNames.length + operation].record(System.nanoTime() - start, rows);
+    }
+
+    // returns the stats of one uri and operation
+    public Stats get(int uri, int operation) {
+        return mStats[uri * mOperationNames.length + operation];
+    }
+
+    public int getUriCount() {
+        return mUriNames.length;
+    }
+
+    public int getOperationCount() {
+        return mOperationNames.length;
+    }
+
+    public String getUriName(int uri) {
+        return mUriNames[uri];
+    }
+
+    public String getOperationName(int operation) {
+        return mOperationNames[operation];
+    }
+
+    // forget every operation counted so far
+    public void reset() {
+        for (Stats stats : mStats) {
+            stats.reset();
+        }
+    }
+
+    /**
+     * write one line for every uri and operation that has been counted: the number of
+     * operations and failures, the rows, and the mean, median, 90th and 99th percentile
+     * and longest latency in milliseconds.
+     */
+    public void dump(PrintWriter writer) {
+        writer.println("Provider metrics " + (mEnabled ? "(enabled)" : "(disabled)"));
+        boolean any = false;
+        for (int uri = 0; uri < mUriNames.length; uri++) {
+            for (int operation = 0; operation < mOperationNames.length; operation++) {
+                Stats stats = get(uri, operation);
+                synchronized (stats) {
+                    if (stats.mCount == 0) {
+                        continue;
+                    }
+                    any = true;
+                    writer.println("  " + mUriNames[uri] + " " + mOperationNames[operation]
+                            + ": count=" + stats.mCount
+                            + " failed=" + stats.mFailedCount
+                            + " rows=" + stats.mRowCount
+                            + " maxRows=" + stats.mMaxRows
+                            + " mean=" + millis(stats.getMeanNanos())
+                            + " p50=" + millis(stats.getPercentileNanos(50))
+                            + " p90=" + millis(stats.getPercentileNanos(90))
+                            + " p99=" + millis(stats.getPercentileNanos(99))
+                            + " max=" + millis(stats.mMaxNanos));
+                }
+            }
+        }
+        if (!any) {
+            writer.println("  no operations");
+        }
+    }
+
+    // format nanoseconds as milliseconds with three decimals
+    private static String millis(long nanos) {
+        long micros = nanos / 1000;
+        String fraction = String.valueOf(1000 + micros % 1000).substring(1);
+        return (micros / 1000) + "." + fraction;
+    }
+
+    // returns the bucket of a latency, see BUCKET_COUNT
+    static int bucketOf(long nanos) {
+        long micros = nanos / 1000;
+        if (micros <= 0) {
+            return 0;
+        }
+        return Math.min(64 - Long.numberOfLeadingZeros(micros), BUCKET_COUNT - 1);
+    }
+
+    // returns the longest latency of a bucket in nanoseconds
+    static long bucketLimitNanos(int bucket) {
+        return (1L << bucket) * 1000;
+    }
+
+    /**
+     * the counts of one uri and operation. the getters read a consistent copy when the
+     * caller holds the lock of the stats.
+     */
+    public static final class Stats {
+
+        private final long[] mBuckets = new long[BUCKET_COUNT];
+
+        private long mCount;
+        private long mFailedCount;
+        private long mTotalNanos;
+        private long mMaxNanos;
+        private long mRowCount;
+        private long mMaxRows;
+
+        synchronized void record(long nanos, int rows) {
+            mBuckets[bucketOf(nanos)]++;
+            mCount++;
+            mTotalNanos += nanos;
+            mMaxNanos = Math.max(mMaxNanos, nanos);
+            if (rows < 0) {
+                mFailedCount++;
+            } else {
+                mRowCount += rows;
+                mMaxRows = Math.max(mMaxRows, rows);
+            }
+        }
+
+        synchronized void reset() {
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                mBuckets[i] = 0;
+            }
+            mCount = 0;
+            mFailedCount = 0;
+            mTotalNanos = 0;
+            mMaxNanos = 0;
+            mRowCount = 0;
+            mMaxRows = 0;
+        }
+
+        // returns the number of operations, failed ones included
+        public synchronized long getCount() {
+            return mCount;
+        }
+
+        public synchronized long getFailedCount() {
+            return mFailedCount;
+        }
+
+        // returns the rows all the operations returned or changed
+        public synchronized long getRowCount() {
+            return mRowCount;
+        }
+
+        // returns the most rows one operation returned or changed
+        public synchronized long getMaxRows() {
+            return mMaxRows;
+        }
+
+        public synchronized long getMeanNanos() {
+            return mCount == 0 ? 0 : mTotalNanos / mCount;
+        }
+
+        public synchronized long getMaxNanos() {
+            return mMaxNanos;
+        }
+
+        /**
+         * returns the latency that the given percent of the operations took at most: the
+         * upper end of the bucket the percentile falls in, but never more than the longest
+         * operation.
+         */
+        public synchronized long getPercentileNanos(int percent) {
+            if (percent < 0 || percent > 100) {
+                throw new IllegalArgumentException("Percentile must be between 0 and 100 " + percent);
+            }
+            if (mCount == 0) {
+                return 0;
+            }
+            // the rank of the operation at the percentile, from 1
+            long rank = Math.max(1, (mCount * percent + 99) / 100);
+            long seen = 0;
+            for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+                seen += mBuckets[bucket];
+                if (seen >= rank) {
+                    return Math.min(bucketLimitNanos(bucket), mMaxNanos);
+                }
+            }
+            return mMaxNanos;
+        }
+    }
+}
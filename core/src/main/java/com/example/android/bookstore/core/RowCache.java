@@ -0,0 +1,191 @@
+package com.example.android.bookstore.core;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * {@link RowCache} keeps the most recently used rows of a table in memory, keyed by their
+ * _id, so reading the same row again doesn't go to the database. It holds as many rows as
+ * fit in its size, which is counted in (estimated) bytes rather than rows, so a few long
+ * rows can't take up more memory than many short ones. When it is full, the row that was
+ * used the longest time ago is evicted.
+ *
+ * A read that misses loads the row from the database and then puts it into the cache. A
+ * write to the table can land between the two, and then the row the read loaded is already
+ * out of date. To catch that, every invalidation moves the cache on to a new generation,
+ * and {@link #put} only keeps the row if the cache is still in the generation the read
+ * started in.
+ *
+ * All methods are thread safe.
+ */
+public final class RowCache {
+
+    // estimated cost of a row besides its values: the array, the map entry and the key
+    private static final int ROW_OVERHEAD_BYTES = 64;
+
+    // estimated cost of a value of each type
+    private static final int REFERENCE_BYTES = 8;
+    private static final int NUMBER_BYTES = 16;
+    private static final int STRING_OVERHEAD_BYTES = 40;
+
+    // rows by _id, in access order: the first one is the least recently used
+    private final LinkedHashMap<Long, Object[]> mRows = new LinkedHashMap<>(16, 0.75f, true);
+
+    // sum of the sizes of the rows in the cache, and the most it may be
+    private long mSize;
+    private long mMaxSize;
+
+    // bumped by every invalidation, see put
+    private long mGeneration;
+
+    private long mHitCount;
+    private long mMissCount;
+    private long mEvictionCount;
+
+    /**
+     * construct a new instance of {@link RowCache}.
+     *
+     * @param maxSize the most bytes the rows may take up, 0 to keep nothing
+     */
+    public RowCache(long maxSize) {
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("Cache size must not be negative " + maxSize);
+        }
+        mMaxSize = maxSize;
+    }
+
+    /**
+     * returns the row with the given _id, or null if it isn't in the cache. the caller must
+     * not change the row.
+     */
+    public synchronized Object[] get(long id) {
+        Object[] row = mRows.get(id);
+        if (row == null) {
+            mMissCount++;
+        } else {
+            mHitCount++;
+        }
+        return row;
+    }
+
+    /**
+     * returns the current generation. read it before loading a row from the database and
+     * hand it to {@link #put} afterwards.
+     */
+    public synchronized long generation() {
+        return mGeneration;
+    }
+
+    /**
+     * put a row that was loaded from the database into the cache, unless the cache was
+     * invalidated since the load started. the cache keeps the row, so the caller must not
+     * change it afterwards.
+     *
+     * @param generation the {@link #generation} from before the row was loaded
+     * @return true if the row was kept
+     */
+    public synchronized boolean put(long id, Object[] row, long generation) {
+        if (generation != mGeneration) {
+            return false;
+        }
+        long size = sizeOf(row);
+        if (size > mMaxSize) {
+            // would push everything else out and still not fit
+            return false;
+        }
+        Object[] previous = mRows.put(id, row);
+        if (previous != null) {
+            mSize -= sizeOf(previous);
+        }
+        mSize += size;
+        trimToSize(mMaxSize);
+        return true;
+    }
+
+    // drop the row with the given _id, because it was changed or deleted
+    public synchronized void invalidate(long id) {
+        mGeneration++;
+        Object[] previous = mRows.remove(id);
+        if (previous != null) {
+            mSize -= sizeOf(previous);
+        }
+    }
+
+    // drop every row, because an unknown set of rows was changed or deleted
+    public synchronized void invalidateAll() {
+        mGeneration++;
+        mRows.clear();
+        mSize = 0;
+    }
+
+    /**
+     * change the most bytes the rows may take up. shrinking the cache evicts the least
+     * recently used rows until the rest fit.
+     */
+    public synchronized void setMaxSize(long maxSize) {
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("Cache size must not be negative " + maxSize);
+        }
+        mMaxSize = maxSize;
+        trimToSize(maxSize);
+    }
+
+    public synchronized long getMaxSize() {
+        return mMaxSize;
+    }
+
+    // returns the estimated bytes taken up by the rows in the cache
+    public synchronized long getSize() {
+        return mSize;
+    }
+
+    // returns the number of rows in the cache
+    public synchronized int getRowCount() {
+        return mRows.size();
+    }
+
+    // returns the number of reads that found their row
+    public synchronized long getHitCount() {
+        return mHitCount;
+    }
+
+    // returns the number of reads that had to go to the database
+    public synchronized long getMissCount() {
+        return mMissCount;
+    }
+
+    // returns the number of rows dropped to make room, not counting invalidations
+    public synchronized long getEvictionCount() {
+        return mEvictionCount;
+    }
+
+    // evict the least recently used rows until the rest fit in the given size
+    private void trimToSize(long maxSize) {
+        Iterator<Map.Entry<Long, Object[]>> iterator = mRows.entrySet().iterator();
+        while (mSize > maxSize && iterator.hasNext()) {
+            Object[] row = iterator.next().getValue();
+            iterator.remove();
+            mSize -= sizeOf(row);
+            mEvictionCount++;
+        }
+    }
+
+    /**
+     * returns the estimated bytes a row takes up in memory: strings count two bytes per
+     * character, blobs their length, and numbers a boxed value each.
+     */
+    public static long sizeOf(Object[] row) {
+        long size = ROW_OVERHEAD_BYTES + (long) REFERENCE_BYTES * row.length;
+        for (Object value : row) {
+            if (value instanceof String) {
+                size += STRING_OVERHEAD_BYTES + 2L * ((String) value).length();
+            } else if (value instanceof byte[]) {
+                size += NUMBER_BYTES + ((byte[]) value).length;
+            } else if (value != null) {
+                size += NUMBER_BYTES;
+            }
+        }
+        return size;
+    }
+}
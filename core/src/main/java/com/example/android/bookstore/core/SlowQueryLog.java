@@ -0,0 +1,185 @@
+package com.example.android.bookstore.core;
+
+import java.io.PrintWriter;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * {@link SlowQueryLog} keeps the last statements that took longer than a threshold: their
+ * SQL with the arguments left as ?, the number of arguments, how long they took and the
+ * query plan SQLite chose for them. It holds a fixed number of entries and overwrites the
+ * oldest one when it is full, so it takes the same memory however many slow statements
+ * there are. A plan that scans the books table instead of searching an index shows which
+ * caller needs a new index.
+ *
+ * All methods are thread safe.
+ */
+public final class SlowQueryLog {
+
+    // the slow statements, oldest first from mNext once the buffer has wrapped around
+    private final Entry[] mEntries;
+
+    // the slot the next entry goes in
+    private int mNext;
+
+    // slow statements recorded since the log was made, more than the buffer holds
+    private long mTotalCount;
+
+    // statements that take at least this long are slow, negative to record none
+    private volatile long mThresholdNanos;
+
+    /**
+     * construct a new instance of {@link SlowQueryLog}.
+     *
+     * @param capacity        the most entries it keeps
+     * @param thresholdMillis statements that take at least this long are slow, 0 for every
+     *                        statement and -1 for none
+     */
+    public SlowQueryLog(int capacity, long thresholdMillis) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Slow query log capacity must be positive " + capacity);
+        }
+        mEntries = new Entry[capacity];
+        setThresholdMillis(thresholdMillis);
+    }
+
+    // set how long a statement has to take to be slow, 0 for every statement and -1 for none
+    public void setThresholdMillis(long thresholdMillis) {
+        mThresholdNanos = thresholdMillis < 0 ? -1 : thresholdMillis * 1000000L;
+    }
+
+    // returns true if a statement that took this long is slow
+    public boolean isSlow(long nanos) {
+        long threshold = mThresholdNanos;
+        return threshold >= 0 && nanos >= threshold;
+    }
+
+    /**
+     * add a slow statement, replacing the oldest one if the log is full.
+     *
+     * @param sql   the statement with its arguments left as ?
+     * @param nanos how long it took
+     * @param plan  the lines of its query plan, or null if there is none
+     */
+    public synchronized void add(String sql, long nanos, String plan) {
+        mEntries[mNext] = new Entry(sql, countArguments(sql), nanos, plan, System.currentTimeMillis());
+        mNext = (mNext + 1) % mEntries.length;
+        mTotalCount++;
+    }
+
+    /**
+     * returns the plan of the latest entry with the same SQL, or null if there is none. the
+     * plan of a statement doesn't change until the schema does, so a statement that is slow
+     * again doesn't need to be explained again.
+     */
+    public synchronized String findPlan(String sql) {
+        for (int i = 1; i <= mEntries.length; i++) {
+            Entry entry = mEntries[(mNext - i + mEntries.length) % mEntries.length];
+            if (entry == null) {
+                break;
+            }
+            if (entry.sql.equals(sql)) {
+                return entry.plan;
+            }
+        }
+        return null;
+    }
+
+    // returns the entries in the log, the newest first
+    public synchronized List<Entry> getEntries() {
+        List<Entry> entries = new ArrayList<>(mEntries.length);
+        for (int i = 1; i <= mEntries.length; i++) {
+            Entry entry = mEntries[(mNext - i + mEntries.length) % mEntries.length];
+            if (entry == null) {
+                break;
+            }
+            entries.add(entry);
+        }
+        return entries;
+    }
+
+    // returns the number of slow statements recorded, including the ones overwritten since
+    public synchronized long getTotalCount() {
+        return mTotalCount;
+    }
+
+    // forget every entry
+    public synchronized void clear() {
+        for (int i = 0; i < mEntries.length; i++) {
+            mEntries[i] = null;
+        }
+        mNext = 0;
+        mTotalCount = 0;
+    }
+
+    // write the entries, the newest first, each with its plan indented under it
+    public void dump(PrintWriter writer) {
+        List<Entry> entries = getEntries();
+        long threshold = mThresholdNanos;
+        writer.println("Slow queries: " + getTotalCount() + " recorded, last " + entries.size()
+                + (threshold < 0 ? ", off" : ", threshold " + threshold / 1000000L + "ms"));
+        SimpleDateFormat format = new SimpleDateFormat("MM-dd HH:mm:ss.SSS", Locale.US);
+        for (Entry entry : entries) {
+            writer.println("  " + format.format(new Date(entry.timeMillis)) + " "
+                    + entry.nanos / 1000 + "us args=" + entry.argumentCount + " " + entry.sql);
+            if (entry.plan != null) {
+                for (String line : entry.plan.split("\n")) {
+                    writer.println("      " + line);
+                }
+            }
+        }
+    }
+
+    /**
+     * returns the number of ? arguments of a statement. a ? inside a string literal or a
+     * quoted name doesn't count.
+     */
+    public static int countArguments(String sql) {
+        int count = 0;
+        char quote = 0;
+        for (int i = 0; i < sql.length(); i++) {
+            char c = sql.charAt(i);
+            if (quote != 0) {
+                // a doubled quote is an escaped one, and leaves the quotes open
+                if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '\'' || c == '"' || c == '`') {
+                quote = c;
+            } else if (c == '[') {
+                quote = ']';
+            } else if (c == '?') {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // one slow statement
+    public static final class Entry {
+
+        // the statement with its arguments left as ?, and the number of them
+        public final String sql;
+        public final int argumentCount;
+
+        // how long it took
+        public final long nanos;
+
+        // the lines of the query plan, or null
+        public final String plan;
+
+        // when it ended, in milliseconds since the epoch
+        public final long timeMillis;
+
+        Entry(String sql, int argumentCount, long nanos, String plan, long timeMillis) {
+            this.sql = sql;
+            this.argumentCount = argumentCount;
+            this.nanos = nanos;
+            this.plan = plan;
+            this.timeMillis = timeMillis;
+        }
+    }
+}
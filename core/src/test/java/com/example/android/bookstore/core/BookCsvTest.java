@@ -0,0 +1,93 @@
+package com.example.android.bookstore.core;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test for {@link BookCsv}, which will execute on the development machine (host).
+ */
+public class BookCsvTest {
+
+    private static BookCsv.Reader reader(String csv) {
+        return new BookCsv.Reader(new StringReader(csv));
+    }
+
+    @Test
+    public void writesHeaderAndQuotesOnlyWhenNeeded() throws IOException {
+        StringBuilder out = new StringBuilder();
+        new BookCsv.Writer(out).writeHeader()
+                .field("The Giver").field("9.99").field(4).field("Penguin, House").field(null).endRecord()
+                .field("Say \"hi\"").field("1").field(0).field("Line\nbreak").field("555").endRecord();
+
+        assertEquals("product,price,quantity,supplier,phone\r\n"
+                + "The Giver,9.99,4,\"Penguin, House\",\r\n"
+                + "\"Say \"\"hi\"\"\",1,0,\"Line\nbreak\",555\r\n", out.toString());
+    }
+
+    @Test
+    public void readsWhatTheWriterWrote() throws IOException {
+        String[] values = { "Say \"hi\"", "", "a,b", "two\r\nlines", "plain" };
+        StringBuilder out = new StringBuilder();
+        BookCsv.Writer writer = new BookCsv.Writer(out);
+        for (String value : values) {
+            writer.field(value);
+        }
+        writer.endRecord().field("next").endRecord();
+
+        BookCsv.Reader reader = reader(out.toString());
+        assertTrue(reader.next());
+        assertEquals(values.length, reader.fieldCount());
+        for (int i = 0; i < values.length; i++) {
+            assertEquals(values[i], reader.field(i));
+        }
+        assertEquals(1, reader.lineNumber());
+
+        // the quoted line break counts as a line
+        assertTrue(reader.next());
+        assertEquals("next", reader.field(0));
+        assertEquals(3, reader.lineNumber());
+        assertFalse(reader.next());
+    }
+
+    @Test
+    public void readsLineEndingsAndBlankLines() throws IOException {
+        BookCsv.Reader reader = reader("\uFEFFa,b\n\r\nc,d\re");
+        assertTrue(reader.next());
+        assertEquals("a", reader.field(0));
+        assertTrue(reader.next());
+        assertTrue(reader.isBlank());
+        assertTrue(reader.next());
+        assertEquals("d", reader.field(1));
+        assertEquals(3, reader.lineNumber());
+        assertTrue(reader.next());
+        assertEquals("e", reader.field(0));
+        assertFalse(reader.next());
+    }
+
+    @Test
+    public void keepsWhatItCanOfBadQuoting() throws IOException {
+        BookCsv.Reader reader = reader("ab\"c,\"open");
+        assertTrue(reader.next());
+        assertEquals("ab\"c", reader.field(0));
+        assertEquals("open", reader.field(1));
+        assertFalse(reader.next());
+    }
+
+    @Test
+    public void mapsHeaderByName() throws IOException {
+        BookCsv.Reader reader = reader(" Phone ,notes,PRODUCT,quantity\n");
+        assertTrue(reader.next());
+        assertArrayEquals(new int[] { 2, -1, 3, -1, 0 }, BookCsv.mapHeader(reader));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void headerWithoutBookColumnsFails() throws IOException {
+        BookCsv.Reader reader = reader("The Giver,9.99,4\n");
+        assertTrue(reader.next());
+        BookCsv.mapHeader(reader);
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.android.bookstore.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test for {@link BookQueries} and {@link BookSchema}, which will execute on the
+ * development machine (host).
+ */
+public class BookQueriesTest {
+
+    @Test
+    public void selectByIdUsesProjection() {
+        assertEquals("SELECT * FROM books WHERE _id = ?", BookQueries.selectById(null));
+        assertEquals("SELECT _id, product FROM books WHERE _id = ?",
+                BookQueries.selectById(new String[] { "_id", "product" }));
+    }
+
+    @Test
+    public void searchTermsArePrefixes() {
+        String[] terms = BookQueries.searchTerms("giver pen");
+        assertArrayEquals(new String[] { "product:giver* product:pen*", "giver* pen*" }, terms);
+    }
+
+    @Test
+    public void searchTermsDropQuerySyntax() {
+        String[] terms = BookQueries.searchTerms("\"the\" -giver* OR");
+        assertArrayEquals(new String[] { "product:the* product:giver* product:OR*",
+                "the* giver* OR*" }, terms);
+    }
+
+    @Test
+    public void searchWithoutWordsHasNoTerms() {
+        assertNull(BookQueries.searchTerms(""));
+        assertNull(BookQueries.searchTerms(" *-\" "));
+    }
+
+    @Test
+    public void lowStockSelectionUsesIndexUpToLimit() {
+        assertEquals("quantity < 20 AND quantity < ?", BookQueries.lowStockSelection(5));
+        assertEquals("quantity < 20 AND quantity < ?",
+                BookQueries.lowStockSelection(BookSchema.LOW_STOCK_INDEX_LIMIT));
+        assertEquals("quantity < ?", BookQueries.lowStockSelection(100));
+    }
+
+    @Test
+    public void partialIndexesNeedSqlite38() {
+        assertTrue(BookSchema.supportsPartialIndexes("3.8.0"));
+        assertTrue(BookSchema.supportsPartialIndexes("3.22.0"));
+        assertFalse(BookSchema.supportsPartialIndexes("3.7.11"));
+        assertFalse(BookSchema.supportsPartialIndexes("unknown"));
+    }
+
+    @Test
+    public void expressionIndexesNeedSqlite39() {
+        assertTrue(BookSchema.supportsExpressionIndexes("3.9.2"));
+        assertFalse(BookSchema.supportsExpressionIndexes("3.8.10"));
+    }
+
+    @Test
+    public void rangeOfSortKeySeeksInItsIndex() {
+        assertEquals("(price + 0.0) >= (? + 0.0) AND (price + 0.0) <= (? + 0.0)",
+                BookQueries.priceRange(true, true, true));
+        assertEquals("quantity <= (? + 0)", BookQueries.quantityRange(false, true, true));
+    }
+
+    @Test
+    public void rangeOfOtherKeyStaysOffItsIndex() {
+        assertEquals("+(price + 0.0) >= (? + 0.0)", BookQueries.priceRange(true, false, false));
+        assertEquals("+quantity >= (? + 0) AND +quantity <= (? + 0)",
+                BookQueries.quantityRange(true, true, false));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rangeNeedsBound() {
+        BookQueries.priceRange(false, false, true);
+    }
+
+    @Test
+    public void upgradeFromVersion5AddsSortIndexes() {
+        assertEquals(2, BookSchema.upgradeStatements(5, true, true).length);
+        assertEquals(1, BookSchema.upgradeStatements(5, true, false).length);
+    }
+
+    @Test
+    public void upgradeFromCurrentVersionDoesNothing() {
+        assertEquals(0, BookSchema.upgradeStatements(BookSchema.VERSION, true, true).length);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void upgradeFromUnknownVersionFails() {
+        BookSchema.upgradeStatements(0, true, true);
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.android.bookstore.core;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test for {@link BookSnapshot}, which will execute on the development machine (host).
+ */
+public class BookSnapshotTest {
+
+    private static byte[] snapshot() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new BookSnapshot.Writer(new DataOutputStream(bytes), 2)
+                .write(1, "The Giver", "9.99", 4)
+                .write(7, "Se\u00f1or Caf\u00e9", null, 0)
+                .finish();
+        return bytes.toByteArray();
+    }
+
+    @Test
+    public void readsWhatTheWriterWrote() throws IOException {
+        BookSnapshot.Reader reader = new BookSnapshot.Reader(ByteBuffer.wrap(snapshot()));
+        assertEquals(2, reader.count());
+
+        assertTrue(reader.next());
+        assertEquals(1, reader.id());
+        assertEquals("The Giver", reader.title());
+        assertEquals("9.99", reader.price());
+        assertEquals(4, reader.quantity());
+
+        assertTrue(reader.next());
+        assertEquals(7, reader.id());
+        assertEquals("Se\u00f1or Caf\u00e9", reader.title());
+        assertNull(reader.price());
+        assertEquals(0, reader.quantity());
+
+        assertFalse(reader.next());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void writerChecksTheCount() throws IOException {
+        new BookSnapshot.Writer(new DataOutputStream(new ByteArrayOutputStream()), 2)
+                .write(1, "The Giver", "9.99", 4)
+                .finish();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void otherFilesAreRejected() {
+        new BookSnapshot.Reader(ByteBuffer.wrap("product,price\r\n".getBytes()));
+    }
+
+    @Test
+    public void fileCutShortIsRejected() throws IOException {
+        byte[] bytes = snapshot();
+        BookSnapshot.Reader reader = new BookSnapshot.Reader(
+                ByteBuffer.wrap(Arrays.copyOf(bytes, bytes.length - 3)));
+        assertTrue(reader.next());
+        try {
+            reader.next();
+            fail("read a row past the end of the file");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.example.android.bookstore.core;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.example.android.bookstore.core.BookSchema.*;
+import static org.junit.Assert.*;
+
+/**
+ * Unit test for {@link BookValidator}, which will execute on the development machine (host).
+ */
+public class BookValidatorTest {
+
+    // reads the values of a book out of a map, the way the app reads ContentValues
+    private static final BookValidator.ValueReader<Map<String, Object>> READER =
+            new BookValidator.ValueReader<Map<String, Object>>() {
+                @Override
+                public boolean containsKey(Map<String, Object> row, String column) {
+                    return row.containsKey(column);
+                }
+
+                @Override
+                public String getAsString(Map<String, Object> row, String column) {
+                    Object value = row.get(column);
+                    return value == null ? null : value.toString();
+                }
+
+                @Override
+                public Integer getAsInteger(Map<String, Object> row, String column) {
+                    Object value = row.get(column);
+                    if (value instanceof Number) {
+                        return ((Number) value).intValue();
+                    }
+                    try {
+                        return value == null ? null : Integer.valueOf(value.toString());
+                    } catch (NumberFormatException e) {
+                        return null;
+                    }
+                }
+            };
+
+    private static Map<String, Object> book() {
+        Map<String, Object> values = new HashMap<>();
+        values.put(COLUMN_PRODUCT_NAME, "The Giver");
+        values.put(COLUMN_PRICE, "9");
+        values.put(COLUMN_QUANTITY, 4);
+        values.put(COLUMN_SUPPLIER_NAME, "Penguin House");
+        values.put(COLUMN_SUPPLIER_PHONE_NUMBER, "999-555-5555");
+        return values;
+    }
+
+    @Test
+    public void validBookPasses() {
+        assertEquals(BookValidator.VALID, BookValidator.validateInsert(book(), READER));
+        assertEquals(BookValidator.VALID, BookValidator.validateUpdate(book(), READER));
+    }
+
+    @Test
+    public void insertReportsEveryError() {
+        Map<String, Object> values = book();
+        values.remove(COLUMN_PRODUCT_NAME);
+        values.remove(COLUMN_PRICE);
+        values.put(COLUMN_QUANTITY, -1);
+        values.put(COLUMN_SUPPLIER_PHONE_NUMBER, "555 CALL NOW");
+
+        int errors = BookValidator.validateInsert(values, READER);
+        assertEquals(BookValidator.ERROR_TITLE_MISSING | BookValidator.ERROR_PRICE_MISSING
+                | BookValidator.ERROR_QUANTITY_NEGATIVE | BookValidator.ERROR_PHONE_FORMAT, errors);
+        assertEquals("Book requires a title; Book requires valid price; "
+                + "Book requires valid quantity; Book requires valid phone number",
+                BookValidator.describe(errors));
+    }
+
+    @Test
+    public void insertRequiresPhone() {
+        Map<String, Object> values = book();
+        values.remove(COLUMN_SUPPLIER_PHONE_NUMBER);
+        assertEquals(BookValidator.ERROR_PHONE_MISSING, BookValidator.validateInsert(values, READER));
+    }
+
+    @Test
+    public void updateChecksOnlyGivenColumns() {
+        Map<String, Object> values = new HashMap<>();
+        values.put(COLUMN_QUANTITY, 3);
+        assertEquals(BookValidator.VALID, BookValidator.validateUpdate(values, READER));
+
+        values.put(COLUMN_PRODUCT_NAME, null);
+        assertEquals(BookValidator.ERROR_TITLE_MISSING, BookValidator.validateUpdate(values, READER));
+    }
+
+    @Test
+    public void columnOfEveryError() {
+        assertEquals(COLUMN_PRODUCT_NAME, BookValidator.columnOf(BookValidator.ERROR_TITLE_MISSING));
+        assertEquals(COLUMN_PRICE, BookValidator.columnOf(BookValidator.ERROR_PRICE_MISSING));
+        assertEquals(COLUMN_QUANTITY, BookValidator.columnOf(BookValidator.ERROR_QUANTITY_NEGATIVE));
+        assertEquals(COLUMN_SUPPLIER_PHONE_NUMBER, BookValidator.columnOf(BookValidator.ERROR_PHONE_FORMAT));
+    }
+
+    @Test
+    public void phoneNumberIsDigitsAndDashes() {
+        assertTrue(BookValidator.isPhoneNumber(""));
+        assertTrue(BookValidator.isPhoneNumber("999-555-5555"));
+        assertFalse(BookValidator.isPhoneNumber("(999) 555-5555"));
+        assertFalse(BookValidator.isPhoneNumber("555a"));
+    }
+}
@@ -0,0 +1,110 @@
+package com.example.android.bookstore.core;
+
+import org.junit.Test;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test for {@link ProviderMetrics}, which will execute on the development machine (host).
+ */
+public class ProviderMetricsTest {
+
+    private static ProviderMetrics metrics() {
+        ProviderMetrics metrics = new ProviderMetrics(
+                new String[] { "books", "book_id" }, new String[] { "query", "update" });
+        metrics.setEnabled(true);
+        return metrics;
+    }
+
+    @Test
+    public void disabledRecordsNothing() {
+        ProviderMetrics metrics = metrics();
+        metrics.setEnabled(false);
+        long start = metrics.start();
+        assertEquals(0, start);
+
+        metrics.record(0, 0, start, 10);
+        assertEquals(0, metrics.get(0, 0).getCount());
+    }
+
+    @Test
+    public void countsRowsAndFailuresPerUriAndOperation() {
+        ProviderMetrics metrics = metrics();
+        metrics.record(1, 1, metrics.start(), 1);
+        metrics.record(1, 1, metrics.start(), 0);
+        metrics.record(1, 1, metrics.start(), -1);
+        metrics.record(0, 0, metrics.start(), 40);
+
+        ProviderMetrics.Stats stats = metrics.get(1, 1);
+        assertEquals(3, stats.getCount());
+        assertEquals(1, stats.getFailedCount());
+        assertEquals(1, stats.getRowCount());
+        assertEquals(40, metrics.get(0, 0).getMaxRows());
+        assertEquals(0, metrics.get(0, 1).getCount());
+
+        // an unknown uri is ignored
+        metrics.record(2, 0, metrics.start(), 1);
+        metrics.record(-1, 0, metrics.start(), 1);
+    }
+
+    @Test
+    public void bucketsDoubleInWidth() {
+        assertEquals(0, ProviderMetrics.bucketOf(999));
+        assertEquals(1, ProviderMetrics.bucketOf(1000));
+        assertEquals(2, ProviderMetrics.bucketOf(2000));
+        assertEquals(2, ProviderMetrics.bucketOf(3999));
+        assertEquals(3, ProviderMetrics.bucketOf(4000));
+        assertEquals(ProviderMetrics.BUCKET_COUNT - 1, ProviderMetrics.bucketOf(Long.MAX_VALUE));
+
+        // every latency is at most the limit of its bucket
+        for (long nanos = 1000; nanos < 100000000L; nanos = nanos * 3 + 7) {
+            int bucket = ProviderMetrics.bucketOf(nanos);
+            assertTrue(nanos / 1000 <= ProviderMetrics.bucketLimitNanos(bucket) / 1000);
+            assertTrue(nanos / 1000 >= ProviderMetrics.bucketLimitNanos(bucket - 1) / 1000);
+        }
+    }
+
+    @Test
+    public void percentilesComeFromTheBuckets() {
+        ProviderMetrics.Stats stats = new ProviderMetrics(new String[] { "books" },
+                new String[] { "query" }).get(0, 0);
+
+        // 98 fast operations of 3 microseconds and two slow ones of 50 milliseconds
+        for (int i = 0; i < 98; i++) {
+            stats.record(3000, 1);
+        }
+        stats.record(50000000L, 1);
+        stats.record(50000000L, 1);
+
+        assertEquals(ProviderMetrics.bucketLimitNanos(2), stats.getPercentileNanos(50));
+        assertEquals(ProviderMetrics.bucketLimitNanos(2), stats.getPercentileNanos(98));
+        // the bucket of the slow ones reaches past them, so the longest operation caps it
+        assertEquals(50000000L, stats.getPercentileNanos(99));
+        assertEquals(50000000L, stats.getMaxNanos());
+        assertEquals((98 * 3000L + 2 * 50000000L) / 100, stats.getMeanNanos());
+    }
+
+    @Test
+    public void resetForgetsEverything() {
+        ProviderMetrics metrics = metrics();
+        metrics.record(0, 0, metrics.start(), 5);
+        metrics.reset();
+        assertEquals(0, metrics.get(0, 0).getCount());
+        assertEquals(0, metrics.get(0, 0).getPercentileNanos(99));
+    }
+
+    @Test
+    public void dumpListsCountedOperations() {
+        ProviderMetrics metrics = metrics();
+        metrics.record(1, 0, metrics.start(), 1);
+
+        StringWriter out = new StringWriter();
+        metrics.dump(new PrintWriter(out));
+        String dump = out.toString();
+        assertTrue(dump, dump.contains("book_id query: count=1 failed=0 rows=1"));
+        assertFalse(dump, dump.contains("books query"));
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.android.bookstore.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test for {@link RowCache}, which will execute on the development machine (host).
+ */
+public class RowCacheTest {
+
+    private static Object[] row(long id) {
+        return new Object[] { id, "Book " + id, "9", 4L, "Penguin", "555-5555" };
+    }
+
+    @Test
+    public void countsHitsAndMisses() {
+        RowCache cache = new RowCache(10000);
+        assertNull(cache.get(1));
+        assertTrue(cache.put(1, row(1), cache.generation()));
+        assertEquals("Book 1", cache.get(1)[1]);
+
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(RowCache.sizeOf(row(1)), cache.getSize());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed() {
+        long rowSize = RowCache.sizeOf(row(1));
+        RowCache cache = new RowCache(rowSize * 2);
+        cache.put(1, row(1), cache.generation());
+        cache.put(2, row(2), cache.generation());
+
+        // reading 1 makes 2 the least recently used
+        cache.get(1);
+        cache.put(3, row(3), cache.generation());
+
+        assertNull(cache.get(2));
+        assertNotNull(cache.get(1));
+        assertNotNull(cache.get(3));
+        assertEquals(1, cache.getEvictionCount());
+        assertEquals(2, cache.getRowCount());
+    }
+
+    @Test
+    public void sizeCountsBytesNotRows() {
+        Object[] longRow = row(1);
+        longRow[1] = new String(new char[1000]);
+        RowCache cache = new RowCache(RowCache.sizeOf(row(2)) * 3);
+
+        // too big to ever fit
+        assertFalse(cache.put(1, longRow, cache.generation()));
+        assertEquals(0, cache.getRowCount());
+    }
+
+    @Test
+    public void invalidateDropsRow() {
+        RowCache cache = new RowCache(10000);
+        cache.put(1, row(1), cache.generation());
+        cache.put(2, row(2), cache.generation());
+
+        cache.invalidate(1);
+        assertNull(cache.get(1));
+        assertNotNull(cache.get(2));
+
+        cache.invalidateAll();
+        assertNull(cache.get(2));
+        assertEquals(0, cache.getSize());
+        assertEquals(0, cache.getEvictionCount());
+    }
+
+    @Test
+    public void loadRacingWithWriteIsNotKept() {
+        RowCache cache = new RowCache(10000);
+
+        // a read starts, a write invalidates the row, then the read tries to put the
+        // row it loaded before the write
+        long generation = cache.generation();
+        cache.invalidate(1);
+        assertFalse(cache.put(1, row(1), generation));
+        assertNull(cache.get(1));
+    }
+
+    @Test
+    public void shrinkingEvicts() {
+        long rowSize = RowCache.sizeOf(row(1));
+        RowCache cache = new RowCache(rowSize * 3);
+        cache.put(1, row(1), cache.generation());
+        cache.put(2, row(2), cache.generation());
+        cache.put(3, row(3), cache.generation());
+
+        cache.setMaxSize(rowSize);
+        assertEquals(1, cache.getRowCount());
+        assertNotNull(cache.get(3));
+        assertEquals(2, cache.getEvictionCount());
+    }
+}
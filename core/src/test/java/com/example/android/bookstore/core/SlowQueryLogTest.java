@@ -0,0 +1,77 @@
+package com.example.android.bookstore.core;
+
+import org.junit.Test;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test for {@link SlowQueryLog}, which will execute on the development machine (host).
+ */
+public class SlowQueryLogTest {
+
+    @Test
+    public void thresholdDecidesWhatIsSlow() {
+        SlowQueryLog log = new SlowQueryLog(4, 50);
+        assertFalse(log.isSlow(49999999L));
+        assertTrue(log.isSlow(50000000L));
+
+        log.setThresholdMillis(0);
+        assertTrue(log.isSlow(0));
+
+        log.setThresholdMillis(-1);
+        assertFalse(log.isSlow(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void keepsTheNewestEntries() {
+        SlowQueryLog log = new SlowQueryLog(3, 0);
+        for (int i = 0; i < 5; i++) {
+            log.add("SELECT " + i, i, null);
+        }
+
+        List<SlowQueryLog.Entry> entries = log.getEntries();
+        assertEquals(3, entries.size());
+        assertEquals("SELECT 4", entries.get(0).sql);
+        assertEquals("SELECT 2", entries.get(2).sql);
+        assertEquals(5, log.getTotalCount());
+
+        log.clear();
+        assertTrue(log.getEntries().isEmpty());
+        assertEquals(0, log.getTotalCount());
+    }
+
+    @Test
+    public void findsThePlanOfTheSameStatement() {
+        SlowQueryLog log = new SlowQueryLog(4, 0);
+        log.add("SELECT * FROM books ORDER BY price", 1, "SCAN TABLE books");
+        log.add("SELECT * FROM books WHERE _id = ?", 1, "SEARCH TABLE books USING INTEGER PRIMARY KEY");
+
+        assertEquals("SCAN TABLE books", log.findPlan("SELECT * FROM books ORDER BY price"));
+        assertNull(log.findPlan("SELECT * FROM books"));
+    }
+
+    @Test
+    public void countsArgumentsOutsideQuotes() {
+        assertEquals(0, SlowQueryLog.countArguments("SELECT * FROM books"));
+        assertEquals(2, SlowQueryLog.countArguments("SELECT * FROM books WHERE _id > ? LIMIT ?"));
+        assertEquals(1, SlowQueryLog.countArguments("SELECT '?', \"a?\", [b?] FROM books WHERE product = ?"));
+        assertEquals(1, SlowQueryLog.countArguments("SELECT 'it''s ?' FROM books WHERE _id = ?"));
+    }
+
+    @Test
+    public void dumpShowsThePlanUnderTheStatement() {
+        SlowQueryLog log = new SlowQueryLog(4, 50);
+        log.add("SELECT * FROM books WHERE price = ?", 75000000L, "SCAN TABLE books\nUSE TEMP B-TREE FOR ORDER BY");
+
+        StringWriter out = new StringWriter();
+        log.dump(new PrintWriter(out));
+        String dump = out.toString();
+        assertTrue(dump, dump.contains("1 recorded, last 1, threshold 50ms"));
+        assertTrue(dump, dump.contains("75000us args=1 SELECT * FROM books WHERE price = ?"));
+        assertTrue(dump, dump.contains("      USE TEMP B-TREE FOR ORDER BY"));
+    }
+}